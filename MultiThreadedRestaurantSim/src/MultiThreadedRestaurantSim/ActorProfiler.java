@@ -0,0 +1,171 @@
+package MultiThreadedRestaurantSim;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Opt-in accounting of what the simulation's actors spend.  Customers and
+ * cooks wait by polling, so for each polling loop it counts the attempts
+ * and the ones that succeeded; the rest is spin.  It also samples the CPU
+ * time and allocated bytes of every customer, cook and cooking thread, so
+ * a run's cost can be put per order.
+ *
+ * Each actor keeps its own Account, which only its thread updates, so
+ * counting a poll is two increments of a field.  Accounts are added to the
+ * run's totals when their thread finishes.  When accounting is off, actors
+ * have no Account and the calls do nothing but check for null.
+ */
+public class ActorProfiler {
+
+    /** The kinds of thread accounted for. */
+    enum Kind { customer, cook, cooking }
+
+    /** The polling loops counted. */
+    enum Loop { enterRestaurant, checkOrderStatus, orderAvailable, makeFood, checkCookingStatus }
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile boolean enabled = false;
+
+    /**
+     * Turns accounting on or off for actors created afterwards.
+     */
+    public static void setEnabled(boolean enable) {
+        if (enable) {
+            if (threads.isThreadCpuTimeSupported()) {
+                threads.setThreadCpuTimeEnabled(true);
+            }
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * What one actor spent.  Only its own thread touches it until it is
+     * added to the totals.
+     */
+    static class Account {
+        private final Kind kind;
+        private final long[] attempts = new long[Loop.values().length];
+        private final long[] successes = new long[Loop.values().length];
+        private long cpuNs;
+        private long allocatedBytes;
+
+        private Account(Kind kind) {
+            this.kind = kind;
+        }
+    }
+
+    // Totals of the finished actors of the current run, by kind and by loop
+    private static final int[] actors = new int[Kind.values().length];
+    private static final long[] cpuNs = new long[Kind.values().length];
+    private static final long[] allocatedBytes = new long[Kind.values().length];
+    private static final long[] attempts = new long[Loop.values().length];
+    private static final long[] successes = new long[Loop.values().length];
+
+    /**
+     * Returns a new account for an actor, or null when not accounting.
+     */
+    static Account account(Kind kind) {
+        return enabled ? new Account(kind) : null;
+    }
+
+    /**
+     * Called first thing on the actor's thread.  Samples start from here,
+     * so what the thread spent before is not counted.
+     */
+    static void begin(Account account) {
+        if (account == null) {
+            return;
+        }
+        account.cpuNs = -threads.getCurrentThreadCpuTime();
+        account.allocatedBytes = -threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Counts one attempt of a polling loop, and returns whether it succeeded.
+     */
+    static boolean poll(Account account, Loop loop, boolean success) {
+        if (account != null) {
+            account.attempts[loop.ordinal()]++;
+            if (success) {
+                account.successes[loop.ordinal()]++;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Called last thing on the actor's thread.  Adds the account to the totals.
+     */
+    static void end(Account account) {
+        if (account == null) {
+            return;
+        }
+        account.cpuNs += threads.getCurrentThreadCpuTime();
+        account.allocatedBytes += threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        add(account);
+    }
+
+    private synchronized static void add(Account account) {
+        int k = account.kind.ordinal();
+        actors[k]++;
+        cpuNs[k] += account.cpuNs;
+        allocatedBytes[k] += account.allocatedBytes;
+        for (int l = 0; l < attempts.length; l++) {
+            attempts[l] += account.attempts[l];
+            successes[l] += account.successes[l];
+        }
+    }
+
+    /**
+     * Clears the totals, before a run.
+     */
+    synchronized static void reset() {
+        for (int k = 0; k < actors.length; k++) {
+            actors[k] = 0;
+            cpuNs[k] = 0;
+            allocatedBytes[k] = 0;
+        }
+        for (int l = 0; l < attempts.length; l++) {
+            attempts[l] = 0;
+            successes[l] = 0;
+        }
+    }
+
+    /**
+     * Formats the totals as tables of polls and of cost per kind of actor,
+     * with the cost per completed order.  Call once the actors have finished.
+     */
+    synchronized static String summarize(int ordersCompleted) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s %12s %12s %8s%n", "polling loop", "attempts", "successes", "spin %"));
+        for (Loop loop : Loop.values()) {
+            long tries = attempts[loop.ordinal()];
+            long hits = successes[loop.ordinal()];
+            sb.append(String.format("%-20s %12d %12d %8.2f%n", loop, tries, hits,
+                    tries > 0 ? 100.0 * (tries - hits) / tries : 0));
+        }
+
+        sb.append(String.format("%-20s %12s %12s %12s%n", "actor", "threads", "cpu ms", "allocated MB"));
+        long totalCpuNs = 0;
+        long totalBytes = 0;
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            sb.append(String.format("%-20s %12d %12.1f %12.1f%n", kind, actors[k], cpuNs[k] / 1e6, allocatedBytes[k] / 1e6));
+            totalCpuNs += cpuNs[k];
+            totalBytes += allocatedBytes[k];
+        }
+        if (ordersCompleted > 0) {
+            sb.append(String.format("Per completed order: %.3f ms CPU, %.1f KB allocated (%d orders)%n",
+                    totalCpuNs / 1e6 / ordersCompleted, totalBytes / 1e3 / ordersCompleted, ordersCompleted));
+        }
+        return sb.toString();
+    }
+}
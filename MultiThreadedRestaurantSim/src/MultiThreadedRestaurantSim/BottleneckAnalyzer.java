@@ -0,0 +1,627 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Works out what limited a finished simulation run from its event log.
+ *
+ * For each resource class (tables, cooks, and every Machine) it computes
+ * utilization: the time-average of units in use over the units available.
+ * For each order it splits the customer's latency, from going to the
+ * restaurant to receiving the order, into consecutive phases:
+ *
+ *   table   - waiting outside for a free table,
+ *   queue   - seated, waiting for a cook to claim the order,
+ *   slot    - claimed, until the order's last item got a machine slot,
+ *   cooking - the last item cooking on its machine,
+ *   handoff - from the last item coming off the machine to the customer receiving the order.
+ *
+ * The last item to come off a machine is the order's critical path.  The
+ * analysis is a single pass over the log, with per-order state kept in
+ * arrays indexed by order number.
+ *
+ * When the kitchen has multi-step recipes, each step is also reported as
+ * a stage of the pipeline: how busy it kept its station, and how long
+ * items waited for it once the steps it waits on were done (or, for a
+ * first step, once the order was claimed).
+ */
+public class BottleneckAnalyzer {
+
+    public enum Phase { table, queue, slot, cooking, handoff }
+
+    /**
+     * Utilization of one resource class over the run.
+     */
+    public static class Utilization {
+        public final String name;
+        public final int units;
+        public final double utilization;
+
+        Utilization(String name, int units, double utilization) {
+            this.name = name;
+            this.units = units;
+            this.utilization = utilization;
+        }
+    }
+
+    /**
+     * One recipe step over the run.
+     */
+    public static class Stage {
+        public final String name;
+        public final String station;
+        public final int items;
+        // Share of the slots of the station's machines the step kept busy
+        public final double utilization;
+        public final double meanWaitMs;
+
+        Stage(String name, String station, int items, double utilization, double meanWaitMs) {
+            this.name = name;
+            this.station = station;
+            this.items = items;
+            this.utilization = utilization;
+            this.meanWaitMs = meanWaitMs;
+        }
+    }
+
+    /**
+     * The result of analyzing one run.
+     */
+    public static class Report {
+        public final double spanMs;
+        public final int ordersAnalyzed;
+        // Tables first, then cooks, then machines by id
+        public final List<Utilization> utilizations;
+        public final Utilization binding;
+        // Share of the cooks' time on shift in each Cook.State, indexed by its ordinal; completed is 0
+        public final double[] cookStateShares;
+        // Mean time per phase over all orders, indexed by Phase.ordinal()
+        public final double[] meanPhaseMs;
+        // The slowest order, its phases, and the machine its last item cooked on
+        public final int criticalOrder;
+        public final double[] criticalPhaseMs;
+        public final String criticalMachine;
+        // Recipe steps in food and step order; empty unless some recipe has more than one step
+        public final List<Stage> stages;
+
+        Report(double spanMs, int ordersAnalyzed, List<Utilization> utilizations, Utilization binding,
+               double[] cookStateShares, double[] meanPhaseMs, int criticalOrder, double[] criticalPhaseMs, String criticalMachine,
+               List<Stage> stages) {
+            this.spanMs = spanMs;
+            this.ordersAnalyzed = ordersAnalyzed;
+            this.utilizations = utilizations;
+            this.binding = binding;
+            this.cookStateShares = cookStateShares;
+            this.meanPhaseMs = meanPhaseMs;
+            this.criticalOrder = criticalOrder;
+            this.criticalPhaseMs = criticalPhaseMs;
+            this.criticalMachine = criticalMachine;
+            this.stages = stages;
+        }
+
+        public double meanLatencyMs() {
+            double total = 0;
+            for (double ms : meanPhaseMs) {
+                total += ms;
+            }
+            return total;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Resource utilization over %.1f ms, %d orders:%n", spanMs, ordersAnalyzed));
+            for (Utilization u : utilizations) {
+                sb.append(String.format("  %-14s %5d x %6.1f%%%n", u.name, u.units, 100 * u.utilization));
+            }
+            if (binding != null) {
+                sb.append(String.format("Binding constraint: %s (%.1f%% utilized)%n", binding.name, 100 * binding.utilization));
+            }
+            sb.append("Cook time:");
+            for (Cook.State state : Cook.State.values()) {
+                if (state != Cook.State.completed) {
+                    sb.append(String.format(" %s %.1f%%", state, 100 * cookStateShares[state.ordinal()]));
+                }
+            }
+            sb.append(String.format("%n"));
+            double mean = meanLatencyMs();
+            sb.append(String.format("Mean order latency %.1f ms:", mean));
+            for (Phase phase : Phase.values()) {
+                double ms = meanPhaseMs[phase.ordinal()];
+                sb.append(String.format(" %s %.1f ms (%.0f%%)", phase, ms, mean > 0 ? 100 * ms / mean : 0));
+            }
+            sb.append(String.format("%n"));
+            if (criticalOrder > 0) {
+                double total = 0;
+                for (double ms : criticalPhaseMs) {
+                    total += ms;
+                }
+                sb.append(String.format("Critical path: order %d, %.1f ms =", criticalOrder, total));
+                for (Phase phase : Phase.values()) {
+                    sb.append(String.format(" %s %.1f", phase, criticalPhaseMs[phase.ordinal()]));
+                    if (phase == Phase.cooking && criticalMachine != null) {
+                        sb.append(" (").append(criticalMachine).append(")");
+                    }
+                }
+                sb.append(String.format("%n"));
+            }
+            if (!stages.isEmpty()) {
+                sb.append(String.format("Recipe stages:%n"));
+                for (Stage stage : stages) {
+                    sb.append(String.format("  %-20s on %-14s %5d items %6.1f%% utilized, mean wait %.1f ms%n",
+                            stage.name, stage.station, stage.items, 100 * stage.utilization, stage.meanWaitMs));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    // Time-weighted count of units in use
+    private static class Occupancy {
+        private int inUse = 0;
+        private long lastNs = 0;
+        private double area = 0;
+
+        void change(long timeNs, int delta) {
+            area += (double) inUse * (timeNs - lastNs);
+            inUse += delta;
+            lastNs = timeNs;
+        }
+
+        double utilization(long endNs, int units, long spanNs) {
+            change(endNs, 0);
+            return units > 0 && spanNs > 0 ? area / ((double) units * spanNs) : 0;
+        }
+    }
+
+    // Each cook's Cook.State as the log moves it, from its orders on hand and items on machines, by cook id
+    private static class CookStates {
+        int[] ordersOnHand;
+        int[] itemsCooking;
+        // Cooks on shift in each state, by ordinal
+        final Occupancy[] in = new Occupancy[Cook.State.values().length];
+
+        CookStates(int numCooks) {
+            ordersOnHand = new int[numCooks];
+            itemsCooking = new int[numCooks];
+            for (int s = 0; s < in.length; s++) {
+                in[s] = new Occupancy();
+            }
+        }
+
+        // A cook starting or ending its shift, in whatever state it is in
+        void staff(int id, long t, int delta) {
+            ensure(id);
+            in[Cook.State.of(ordersOnHand[id], itemsCooking[id]).ordinal()].change(t, delta);
+        }
+
+        void change(int id, long t, int orders, int items) {
+            ensure(id);
+            Cook.State before = Cook.State.of(ordersOnHand[id], itemsCooking[id]);
+            ordersOnHand[id] += orders;
+            itemsCooking[id] += items;
+            Cook.State after = Cook.State.of(ordersOnHand[id], itemsCooking[id]);
+            if (after != before) {
+                in[before.ordinal()].change(t, -1);
+                in[after.ordinal()].change(t, 1);
+            }
+        }
+
+        private void ensure(int id) {
+            if (id >= ordersOnHand.length) {
+                int size = Math.max(id + 1, ordersOnHand.length * 2);
+                ordersOnHand = Arrays.copyOf(ordersOnHand, size);
+                itemsCooking = Arrays.copyOf(itemsCooking, size);
+            }
+        }
+
+        // Time-average of cooks in the state
+        double average(Cook.State state, long endNs, long spanNs) {
+            return in[state.ordinal()].utilization(endNs, 1, spanNs);
+        }
+    }
+
+    // Totals for one recipe step
+    private static class StageTimes {
+        int items = 0;
+        long busyNs = 0;
+        int waited = 0;
+        long waitNs = 0;
+    }
+
+    private static final double NS_PER_MS = 1e6;
+
+    // Kinds of item record an order keeps, in the top bits of the record's key
+    private static final long STEP_STARTED = 1L << 48;
+    private static final long STEP_FINISHED = 2L << 48;
+    private static final long MACHINE_STARTED = 3L << 48;
+
+    // Identifies a kind of record of a step of an item; an order's items of one food share it
+    private static long itemKey(long kind, Food food, Kitchen.Step step) {
+        return kind | ((long) food.id << 16) | (step != null ? step.index : 0);
+    }
+
+    // The same on one machine, as a station's machines each start and finish their own items
+    private static long itemKey(long kind, Machine machine, Food food, Kitchen.Step step) {
+        return itemKey(kind, food, step) | ((long) (machine.id + 1) << 32);
+    }
+
+    // Per-order timestamps, indexed by order number
+    private static class OrderTimes {
+        long[] started, entered, claimed, lastStarted, lastDone, received;
+        // Machine id + 1 of the order's last item, 0 if it had none, and cook id + 1 of the cook that claimed it
+        int[] lastMachine, cook;
+        // Record + 1 of the first and last of the order's item records, 0 if it has none
+        int[] firstRecord, lastRecord;
+
+        // Item records of every order, chained per order oldest first: an item
+        // starting or finishing a step, or starting on a machine, by its key
+        long[] recordKey, recordTime;
+        // Record + 1 of the next record of the order, or of the free list, 0 at the end
+        int[] recordNext;
+        int records;
+        int freeRecord;
+
+        OrderTimes(int size) {
+            started = new long[size];
+            entered = new long[size];
+            claimed = new long[size];
+            lastStarted = new long[size];
+            lastDone = new long[size];
+            received = new long[size];
+            lastMachine = new int[size];
+            cook = new int[size];
+            firstRecord = new int[size];
+            lastRecord = new int[size];
+            recordKey = new long[size];
+            recordTime = new long[size];
+            recordNext = new int[size];
+        }
+
+        // Returns the order number, growing the arrays to hold it if needed
+        int ensure(int orderNum) {
+            if (orderNum >= started.length) {
+                int size = Math.max(orderNum + 1, started.length * 2);
+                started = Arrays.copyOf(started, size);
+                entered = Arrays.copyOf(entered, size);
+                claimed = Arrays.copyOf(claimed, size);
+                lastStarted = Arrays.copyOf(lastStarted, size);
+                lastDone = Arrays.copyOf(lastDone, size);
+                received = Arrays.copyOf(received, size);
+                lastMachine = Arrays.copyOf(lastMachine, size);
+                cook = Arrays.copyOf(cook, size);
+                firstRecord = Arrays.copyOf(firstRecord, size);
+                lastRecord = Arrays.copyOf(lastRecord, size);
+            }
+            return orderNum;
+        }
+
+        // Adds a record to the end of the order's chain
+        void add(int o, long key, long t) {
+            int r = freeRecord - 1;
+            if (r >= 0) {
+                freeRecord = recordNext[r];
+            } else {
+                if (records == recordKey.length) {
+                    int size = Math.max(16, records * 2);
+                    recordKey = Arrays.copyOf(recordKey, size);
+                    recordTime = Arrays.copyOf(recordTime, size);
+                    recordNext = Arrays.copyOf(recordNext, size);
+                }
+                r = records++;
+            }
+            recordKey[r] = key;
+            recordTime[r] = t;
+            recordNext[r] = 0;
+            if (lastRecord[o] == 0) {
+                firstRecord[o] = r + 1;
+            } else {
+                recordNext[lastRecord[o] - 1] = r + 1;
+            }
+            lastRecord[o] = r + 1;
+        }
+
+        // The k-th oldest of the order's records with the key, the newest if k is -1, or -1 if it has none
+        int find(int o, long key, int k) {
+            int found = -1;
+            for (int r = firstRecord[o] - 1; r >= 0; r = recordNext[r] - 1) {
+                if (recordKey[r] == key) {
+                    found = r;
+                    if (k-- == 0) {
+                        return r;
+                    }
+                }
+            }
+            return k < 0 ? found : -1;
+        }
+
+        // How many of the order's records have the key
+        int count(int o, long key) {
+            int count = 0;
+            for (int r = firstRecord[o] - 1; r >= 0; r = recordNext[r] - 1) {
+                if (recordKey[r] == key) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // Takes a record out of the order's onto the free list
+        void remove(int o, int record) {
+            int before = -1;
+            for (int r = firstRecord[o] - 1; r != record; r = recordNext[r] - 1) {
+                before = r;
+            }
+            if (before < 0) {
+                firstRecord[o] = recordNext[record];
+            } else {
+                recordNext[before] = recordNext[record];
+            }
+            if (lastRecord[o] == record + 1) {
+                lastRecord[o] = before + 1;
+            }
+            recordNext[record] = freeRecord;
+            freeRecord = record + 1;
+        }
+
+        // Frees the records of an order that is done
+        void release(int o) {
+            if (lastRecord[o] != 0) {
+                recordNext[lastRecord[o] - 1] = freeRecord;
+                freeRecord = firstRecord[o];
+                firstRecord[o] = 0;
+                lastRecord[o] = 0;
+            }
+        }
+
+        // Splits an order's latency into consecutive phases, in milliseconds
+        void phases(int o, double[] phases) {
+            phases[Phase.table.ordinal()] = (entered[o] - started[o]) / NS_PER_MS;
+            phases[Phase.queue.ordinal()] = (claimed[o] - entered[o]) / NS_PER_MS;
+            if (lastMachine[o] == 0) {
+                // An empty order never touches a machine
+                phases[Phase.slot.ordinal()] = 0;
+                phases[Phase.cooking.ordinal()] = 0;
+                phases[Phase.handoff.ordinal()] = (received[o] - claimed[o]) / NS_PER_MS;
+            } else {
+                phases[Phase.slot.ordinal()] = (lastStarted[o] - claimed[o]) / NS_PER_MS;
+                phases[Phase.cooking.ordinal()] = (lastDone[o] - lastStarted[o]) / NS_PER_MS;
+                phases[Phase.handoff.ordinal()] = (received[o] - lastDone[o]) / NS_PER_MS;
+            }
+        }
+    }
+
+    /**
+     * Analyzes the event log of a finished run, as returned by runSimulation.
+     */
+    public static Report analyze(List<SimulationEvent> events) {
+        SimulationEvent first = events.get(0);
+        if (first.event != SimulationEvent.EventType.SimulationStarting) {
+            throw new IllegalArgumentException("Event log does not start with SimulationStarting");
+        }
+        int numCustomers = first.simParams[0];
+        int numCooks = first.simParams[1];
+        int numTables = first.simParams[2];
+
+        OrderTimes orders = new OrderTimes(numCustomers + 1);
+
+        Occupancy tables = new Occupancy();
+        // A cook is busy while claimed or cooking
+        CookStates cooks = new CookStates(numCooks);
+        // Cooks on shift, which an elastic run changes as it goes
+        Occupancy staffed = new Occupancy();
+        boolean elastic = first.simParams.length > 5;
+        List<Machine> machines = new ArrayList<Machine>();
+        List<Occupancy> machineLoads = new ArrayList<Occupancy>();
+        // Per recipe step, its totals; the items starting and finishing it are kept as records of their orders
+        HashMap<Kitchen.Step, StageTimes> stageTimes = new HashMap<Kitchen.Step, StageTimes>();
+        boolean multiStep = false;
+
+        long startNs = first.timeNs();
+        long endNs = startNs;
+        for (SimulationEvent e : events) {
+            long t = e.timeNs();
+            endNs = Math.max(endNs, t);
+            switch (e.event) {
+                case CustomerStarting:
+                    orders.started[orders.ensure(e.customer.orderNum())] = t;
+                    break;
+                case CustomerEnteredRestaurant:
+                    orders.entered[orders.ensure(e.customer.orderNum())] = t;
+                    tables.change(t, 1);
+                    break;
+                case CustomerPlacedOrder: {
+                    // A takeout order never waits for a table, so its queue starts with the order
+                    int o = orders.ensure(e.orderNumber);
+                    if (orders.entered[o] == 0) {
+                        orders.entered[o] = t;
+                    }
+                    break;
+                }
+                case CustomerLeavingRestaurant:
+                    tables.change(t, -1);
+                    break;
+                case CustomerReceivedOrder: {
+                    int o = orders.ensure(e.orderNumber);
+                    orders.received[o] = t;
+                    orders.release(o);
+                    break;
+                }
+                case CookReceivedOrder: {
+                    int o = orders.ensure(e.orderNumber);
+                    orders.claimed[o] = t;
+                    orders.cook[o] = e.cook.id + 1;
+                    cooks.change(e.cook.id, t, 1, 0);
+                    break;
+                }
+                case CookCompletedOrder:
+                    cooks.change(e.cook.id, t, -1, 0);
+                    break;
+                case CookStarting:
+                    staffed.change(t, 1);
+                    cooks.staff(e.cook.id, t, 1);
+                    break;
+                case CookEnding:
+                    staffed.change(t, -1);
+                    cooks.staff(e.cook.id, t, -1);
+                    break;
+                case CookStartedFood: {
+                    cooks.change(e.cook.id, t, 0, 1);
+                    if (e.step == null) {
+                        break;
+                    }
+                    multiStep |= !e.step.only();
+                    // The k-th item into a step is the one let in by the k-th finish of each step it waits on
+                    int o = orders.ensure(e.orderNumber);
+                    long key = itemKey(STEP_STARTED, e.food, e.step);
+                    int k = orders.count(o, key);
+                    orders.add(o, key, t);
+                    long ready = orders.claimed[o];
+                    for (Kitchen.Step before : e.step.after) {
+                        int finish = orders.find(o, itemKey(STEP_FINISHED, e.food, before), k);
+                        if (finish >= 0) {
+                            ready = Math.max(ready, orders.recordTime[finish]);
+                        }
+                    }
+                    StageTimes stage = stageTimes.computeIfAbsent(e.step, s -> new StageTimes());
+                    stage.waited++;
+                    stage.waitNs += t - ready;
+                    break;
+                }
+                case CookFinishedFood:
+                    cooks.change(e.cook.id, t, 0, -1);
+                    if (e.step != null && e.step.next.length > 0) {
+                        orders.add(orders.ensure(e.orderNumber), itemKey(STEP_FINISHED, e.food, e.step), t);
+                    }
+                    break;
+                case MachineStarting:
+                    while (machines.size() <= e.machine.id) {
+                        machines.add(null);
+                        machineLoads.add(new Occupancy());
+                    }
+                    machines.set(e.machine.id, e.machine);
+                    break;
+                case MachineStartingFood: {
+                    machineLoads.get(e.machine.id).change(t, 1);
+                    orders.add(orders.ensure(e.orderNumber), itemKey(MACHINE_STARTED, e.machine, e.food, e.step), t);
+                    break;
+                }
+                case MachineDoneFood: {
+                    machineLoads.get(e.machine.id).change(t, -1);
+                    // Items on a machine come off first in first out
+                    int o = orders.ensure(e.orderNumber);
+                    int start = orders.find(o, itemKey(MACHINE_STARTED, e.machine, e.food, e.step), 0);
+                    long itemStart = t;
+                    if (start >= 0) {
+                        itemStart = orders.recordTime[start];
+                        orders.remove(o, start);
+                    }
+                    if (e.step != null) {
+                        StageTimes stage = stageTimes.computeIfAbsent(e.step, s -> new StageTimes());
+                        stage.items++;
+                        stage.busyNs += t - itemStart;
+                    }
+                    if (orders.lastMachine[o] == 0 || t >= orders.lastDone[o]) {
+                        orders.lastDone[o] = t;
+                        orders.lastStarted[o] = itemStart;
+                        orders.lastMachine[o] = e.machine.id + 1;
+                    }
+                    break;
+                }
+                case MachineLostFood: {
+                    // A fault took the item off its machine, the latest started first, so it never came off
+                    machineLoads.get(e.machine.id).change(t, -1);
+                    int o = orders.ensure(e.orderNumber);
+                    int start = orders.find(o, itemKey(MACHINE_STARTED, e.machine, e.food, e.step), -1);
+                    if (start >= 0) {
+                        orders.remove(o, start);
+                    }
+                    // Its cook starts it over
+                    if (orders.cook[o] > 0) {
+                        cooks.change(orders.cook[o] - 1, t, 0, -1);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        long spanNs = endNs - startNs;
+
+        List<Utilization> utilizations = new ArrayList<Utilization>();
+        utilizations.add(new Utilization("tables", numTables, tables.utilization(endNs, numTables, spanNs)));
+        // Cooks on shift on average, and the share of their time in each state
+        double onShift = staffed.utilization(endNs, 1, spanNs);
+        double[] cookStateShares = new double[Cook.State.values().length];
+        for (Cook.State state : Cook.State.values()) {
+            cookStateShares[state.ordinal()] = onShift > 0 ? cooks.average(state, endNs, spanNs) / onShift : 0;
+        }
+        double busy = cooks.average(Cook.State.claimed, endNs, spanNs) + cooks.average(Cook.State.cooking, endNs, spanNs);
+        if (elastic) {
+            // Busy over on shift, shown against the most cooks the run could have
+            utilizations.add(new Utilization("cooks", first.simParams[5], onShift > 0 ? busy / onShift : 0));
+        } else {
+            utilizations.add(new Utilization("cooks", numCooks, numCooks > 0 ? busy / numCooks : 0));
+        }
+        for (int m = 0; m < machines.size(); m++) {
+            Machine machine = machines.get(m);
+            if (machine != null) {
+                utilizations.add(new Utilization(machine.toString(), machine.capacity(),
+                        machineLoads.get(m).utilization(endNs, machine.capacity(), spanNs)));
+            }
+        }
+        Utilization binding = null;
+        for (Utilization u : utilizations) {
+            if (binding == null || u.utilization > binding.utilization) {
+                binding = u;
+            }
+        }
+
+        // Phase breakdown for every order the customer received
+        double[] phaseSums = new double[Phase.values().length];
+        double[] phases = new double[Phase.values().length];
+        double[] criticalPhases = new double[Phase.values().length];
+        int criticalOrder = 0;
+        long criticalLatency = -1;
+        int ordersAnalyzed = 0;
+        for (int o = 1; o < orders.received.length; o++) {
+            if (orders.received[o] == 0) {
+                continue;
+            }
+            ordersAnalyzed++;
+            orders.phases(o, phases);
+            for (int p = 0; p < phases.length; p++) {
+                phaseSums[p] += phases[p];
+            }
+            long latency = orders.received[o] - orders.started[o];
+            if (latency > criticalLatency) {
+                criticalLatency = latency;
+                criticalOrder = o;
+                System.arraycopy(phases, 0, criticalPhases, 0, phases.length);
+            }
+        }
+        for (int p = 0; p < phaseSums.length; p++) {
+            phaseSums[p] = ordersAnalyzed > 0 ? phaseSums[p] / ordersAnalyzed : 0;
+        }
+        String criticalMachine = criticalOrder > 0 && orders.lastMachine[criticalOrder] > 0 ?
+                machines.get(orders.lastMachine[criticalOrder] - 1).toString() : null;
+
+        List<Stage> stages = new ArrayList<Stage>();
+        if (multiStep) {
+            List<Kitchen.Step> steps = new ArrayList<Kitchen.Step>(stageTimes.keySet());
+            steps.sort((a, b) -> a.food.id != b.food.id ? a.food.id - b.food.id : a.index - b.index);
+            for (Kitchen.Step step : steps) {
+                StageTimes stage = stageTimes.get(step);
+                int slots = step.station.capacity;
+                stages.add(new Stage(step.toString(), step.station.type, stage.items,
+                        slots > 0 && spanNs > 0 ? stage.busyNs / ((double) slots * spanNs) : 0,
+                        stage.waited > 0 ? stage.waitNs / NS_PER_MS / stage.waited : 0));
+            }
+        }
+
+        return new Report(spanNs / NS_PER_MS, ordersAnalyzed, utilizations, binding, cookStateShares,
+                phaseSums, criticalOrder, criticalPhases, criticalMachine, stages);
+    }
+}
@@ -0,0 +1,358 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches for the split of a fixed budget of machine slots across the
+ * standard kitchen's stations that gives the lowest p99 order latency,
+ * the time from a customer placing an order to receiving it.
+ *
+ * The search is a coordinate descent over the budget: from an even split,
+ * every move of step slots from one station to another is tried, and the
+ * best move is taken if it lowers p99.  When no move does, step is
+ * halved, and the search ends once moving a single slot helps no more.
+ * Every allocation is run on the same seeds, so they are compared on the
+ * same customers, and its p99 is over the orders of all those runs.
+ *
+ * Since the simulation is static, one JVM runs one simulation at a time,
+ * so candidates are run in child JVMs, up to parallel at once.  Results
+ * are cached by allocation, so one the search comes back to is not run
+ * again.  A run that does not validate disqualifies its allocation.
+ *
+ * The best allocation found and the even split are then run again on
+ * fresh seeds, as the search seeds favour whichever allocation happened
+ * to suit them, and their p99 and mean latency are given with 95%
+ * bootstrap confidence intervals over the orders of those runs.
+ */
+public class CapacityOptimizer {
+
+    /** Resamples drawn for a confidence interval. */
+    static final int BOOTSTRAP_SAMPLES = 2000;
+
+    final int budget;
+    final int numCustomers;
+    final int numCooks;
+    final int numTables;
+    final int parallel;
+
+    // Order latencies of each allocation run, by allocation and then seed
+    private final HashMap<String, HashMap<Long, double[]>> cache = new HashMap<String, HashMap<Long, double[]>>();
+    private int runs;
+
+    CapacityOptimizer(int budget, int numCustomers, int numCooks, int numTables, int parallel) {
+        if (budget < Kitchen.STANDARD_STATIONS.length) {
+            throw new IllegalArgumentException("Every station needs at least one slot of the budget");
+        }
+        this.budget = budget;
+        this.numCustomers = numCustomers;
+        this.numCooks = numCooks;
+        this.numTables = numTables;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Finds the allocation of the budget with the lowest p99 latency on
+     * the given seeds, printing the search as it goes.
+     */
+    int[] search(long[] seeds, PrintStream out) throws IOException, InterruptedException {
+        int stations = Kitchen.STANDARD_STATIONS.length;
+        int[] current = evenSplit();
+        evaluate(Arrays.asList(current), seeds);
+        double currentP99 = p99(current, seeds);
+        out.println(String.format("start %s p99 %.1f ms", Arrays.toString(current), currentP99));
+
+        int step = Math.max(1, budget / (2 * stations));
+        int round = 0;
+        while (step >= 1) {
+            round++;
+            List<int[]> moves = new ArrayList<int[]>();
+            for (int from = 0; from < stations; from++) {
+                if (current[from] - step < 1) {
+                    continue;
+                }
+                for (int to = 0; to < stations; to++) {
+                    if (to != from) {
+                        int[] move = current.clone();
+                        move[from] -= step;
+                        move[to] += step;
+                        moves.add(move);
+                    }
+                }
+            }
+            int ranBefore = runs;
+            evaluate(moves, seeds);
+            int[] best = null;
+            double bestP99 = Double.MAX_VALUE;
+            for (int[] move : moves) {
+                double p99 = p99(move, seeds);
+                if (p99 < bestP99) {
+                    best = move;
+                    bestP99 = p99;
+                }
+            }
+            out.println(String.format("round %d, step %d: %d moves, %d runs, best %s p99 %.1f ms",
+                    round, step, moves.size(), runs - ranBefore,
+                    best != null ? Arrays.toString(best) : "-", bestP99));
+            if (best != null && bestP99 < currentP99) {
+                current = best;
+                currentP99 = bestP99;
+            } else {
+                step /= 2;
+            }
+        }
+        return current;
+    }
+
+    // The budget split as evenly as it goes, the first stations taking what is left over
+    int[] evenSplit() {
+        int stations = Kitchen.STANDARD_STATIONS.length;
+        int[] even = new int[stations];
+        for (int s = 0; s < stations; s++) {
+            even[s] = budget / stations + (s < budget % stations ? 1 : 0);
+        }
+        return even;
+    }
+
+    /**
+     * Runs every allocation on every seed it has not been run on yet,
+     * up to parallel runs at once.
+     */
+    void evaluate(List<int[]> allocations, long[] seeds) throws IOException, InterruptedException {
+        List<int[]> toRun = new ArrayList<int[]>();
+        List<Long> toRunSeeds = new ArrayList<Long>();
+        for (int[] allocation : allocations) {
+            HashMap<Long, double[]> results = cache.computeIfAbsent(key(allocation), k -> new HashMap<Long, double[]>());
+            for (long seed : seeds) {
+                if (!results.containsKey(seed) && !contains(toRun, toRunSeeds, allocation, seed)) {
+                    toRun.add(allocation);
+                    toRunSeeds.add(seed);
+                }
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<double[]>> futures = new ArrayList<Future<double[]>>();
+            for (int r = 0; r < toRun.size(); r++) {
+                int[] allocation = toRun.get(r);
+                long seed = toRunSeeds.get(r);
+                futures.add(pool.submit(() -> runChild(allocation, seed)));
+            }
+            for (int r = 0; r < toRun.size(); r++) {
+                double[] latencies;
+                try {
+                    latencies = futures.get(r).get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    throw new IOException("Run of " + key(toRun.get(r)) + " failed", e.getCause());
+                }
+                cache.get(key(toRun.get(r))).put(toRunSeeds.get(r), latencies);
+                runs++;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static boolean contains(List<int[]> allocations, List<Long> seeds, int[] allocation, long seed) {
+        for (int r = 0; r < allocations.size(); r++) {
+            if (seeds.get(r) == seed && Arrays.equals(allocations.get(r), allocation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(int[] allocation) {
+        return Arrays.toString(allocation);
+    }
+
+    // Runs one simulation in a child JVM; null if it did not validate
+    private double[] runChild(int[] allocation, long seed) throws IOException, InterruptedException {
+        StringBuilder capacities = new StringBuilder();
+        for (int s = 0; s < allocation.length; s++) {
+            capacities.append(s > 0 ? "," : "").append(allocation[s]);
+        }
+        String[] fields;
+        try {
+            fields = ChildJvm.run(CapacityOptimizer.class, "latencies", 0, "--run", capacities.toString(),
+                    Integer.toString(numCustomers), Integer.toString(numCooks), Integer.toString(numTables),
+                    Long.toString(seed));
+        } catch (IOException e) {
+            throw new IOException("Run of " + key(allocation) + " with seed " + seed + " " + e.getMessage());
+        }
+        if (!Boolean.parseBoolean(fields[0])) {
+            return null;
+        }
+        double[] latencies = new double[fields.length - 1];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = Double.parseDouble(fields[i + 1]);
+        }
+        return latencies;
+    }
+
+    // The order latencies of an allocation's runs on the seeds, or null if any did not validate
+    private double[] pooled(int[] allocation, long[] seeds) {
+        HashMap<Long, double[]> results = cache.get(key(allocation));
+        List<double[]> runs = new ArrayList<double[]>();
+        int total = 0;
+        for (long seed : seeds) {
+            double[] latencies = results.get(seed);
+            if (latencies == null) {
+                return null;
+            }
+            runs.add(latencies);
+            total += latencies.length;
+        }
+        double[] pooled = new double[total];
+        int next = 0;
+        for (double[] latencies : runs) {
+            System.arraycopy(latencies, 0, pooled, next, latencies.length);
+            next += latencies.length;
+        }
+        return pooled;
+    }
+
+    private double p99(int[] allocation, long[] seeds) {
+        double[] latencies = pooled(allocation, seeds);
+        return latencies != null ? percentile(latencies, 0.99) : Double.MAX_VALUE;
+    }
+
+    // Nearest-rank percentile
+    static double percentile(double[] values, double p) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    /**
+     * A 95% bootstrap percentile interval of the p99 (p = 0.99) or the
+     * mean (p < 0) of values, drawn with rnd.
+     */
+    static double[] confidenceInterval(double[] values, double p, Random rnd) {
+        double[] estimates = new double[BOOTSTRAP_SAMPLES];
+        double[] resample = new double[values.length];
+        for (int b = 0; b < BOOTSTRAP_SAMPLES; b++) {
+            for (int i = 0; i < values.length; i++) {
+                resample[i] = values[rnd.nextInt(values.length)];
+            }
+            estimates[b] = p < 0 ? mean(resample) : percentile(resample, p);
+        }
+        return new double[] { percentile(estimates, 0.025), percentile(estimates, 0.975) };
+    }
+
+    /**
+     * Placed-to-received latency of every order of a run, in ms.
+     */
+    static double[] orderLatencies(List<SimulationEvent> events) {
+        HashMap<Integer, Long> placed = new HashMap<Integer, Long>();
+        List<Double> latencies = new ArrayList<Double>();
+        synchronized (events) {
+            for (SimulationEvent e : events) {
+                if (e.event == SimulationEvent.EventType.CustomerPlacedOrder) {
+                    placed.put(e.orderNumber, e.timeNs());
+                } else if (e.event == SimulationEvent.EventType.CustomerReceivedOrder) {
+                    latencies.add((e.timeNs() - placed.get(e.orderNumber)) / 1e6);
+                }
+            }
+        }
+        double[] result = new double[latencies.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = latencies.get(i);
+        }
+        return result;
+    }
+
+    // Runs one simulation for a parent optimizer and prints its result as one line
+    private static void runOne(String[] args) {
+        String[] fields = args[1].split(",");
+        int[] capacities = new int[fields.length];
+        for (int s = 0; s < fields.length; s++) {
+            capacities[s] = Integer.parseInt(fields[s]);
+        }
+        int numCustomers = Integer.parseInt(args[2]);
+        int numCooks = Integer.parseInt(args[3]);
+        int numTables = Integer.parseInt(args[4]);
+        long seed = Long.parseLong(args[5]);
+
+        Simulation.setSeed(seed);
+        Simulation.QuietRun run = Simulation.runQuietly(Kitchen.standard(capacities), numCustomers, numCooks, numTables, true);
+        StringBuilder line = new StringBuilder("latencies ").append(run.valid);
+        for (double latency : orderLatencies(run.events)) {
+            line.append(' ').append(String.format("%.3f", latency));
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Searches for the best allocation of the budget, then compares it with
+     * the even split on fresh seeds.
+     *
+     * usage: java CapacityOptimizer [budget] [customers] [cooks] [tables] [seeds] [confirm-seeds] [parallel]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--run")) {
+            runOne(args);
+            return;
+        }
+        int budget = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int numCustomers = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int numCooks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int numTables = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int numSeeds = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+        int confirmSeeds = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+        int parallel = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+        PrintStream out = System.out;
+        out.println(String.format("%d slots over %s; %d customers, %d cooks, %d tables; %d seeds, %d at once",
+                budget, String.join(", ", Kitchen.STANDARD_STATIONS), numCustomers, numCooks, numTables,
+                numSeeds, parallel));
+        CapacityOptimizer optimizer = new CapacityOptimizer(budget, numCustomers, numCooks, numTables, parallel);
+        long[] seeds = new long[numSeeds];
+        for (int i = 0; i < numSeeds; i++) {
+            seeds[i] = i + 1;
+        }
+        int[] best = optimizer.search(seeds, out);
+        out.println(String.format("searched with %d runs over %d allocations", optimizer.runs, optimizer.cache.size()));
+
+        long[] fresh = new long[confirmSeeds];
+        for (int i = 0; i < confirmSeeds; i++) {
+            fresh[i] = numSeeds + i + 1;
+        }
+        int[] even = optimizer.evenSplit();
+        optimizer.evaluate(Arrays.asList(best, even), fresh);
+        out.println(String.format("On %d fresh seeds, with 95%% confidence intervals:", confirmSeeds));
+        out.println(String.format("%6s %18s %26s %26s", "", "allocation", "p99 ms", "mean ms"));
+        Random rnd = new Random(0);
+        String[] names = { "best", "even" };
+        int[][] allocations = { best, even };
+        for (int a = 0; a < allocations.length; a++) {
+            double[] latencies = optimizer.pooled(allocations[a], fresh);
+            if (latencies == null) {
+                out.println(String.format("%6s %18s %26s", names[a], key(allocations[a]), "did not validate"));
+                continue;
+            }
+            double[] p99 = confidenceInterval(latencies, 0.99, rnd);
+            double[] mean = confidenceInterval(latencies, -1, rnd);
+            out.println(String.format("%6s %18s %8.1f [%7.1f, %7.1f] %8.1f [%7.1f, %7.1f]",
+                    names[a], key(allocations[a]), percentile(latencies, 0.99), p99[0], p99[1],
+                    mean(latencies), mean[0], mean[1]));
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A snapshot of a run, taken at a quiescent point, that a run can be
+ * resumed from in place of simulating the day up to it.  To take one, the
+ * simulation closes the front door and the order queue: customers in line
+ * stay in line, and cooks claim no more orders.  Cooks finish the orders
+ * they have, their customers pick them up and leave, and once every cook
+ * and machine is idle and every seated customer's order waits in the
+ * queue, the state of the run is no more than:
+ *
+ *   - the run's parameters and seed,
+ *   - the events logged so far,
+ *   - the order and stage of each customer: not yet arrived, in line,
+ *     seated with its order queued, or gone,
+ *   - the orders in the queue, in queue order.
+ *
+ * No food is cooking and no cook has an order on hand at that point, so
+ * there is nothing in flight to capture.  The simulation then opens
+ * again and the run goes on.
+ *
+ * A checkpoint is saved compactly: the events are encoded as variable
+ * length integers, with times as deltas, and the whole file is gzipped.
+ * Resuming a run rebuilds the events against the new run's cooks,
+ * customers and machines, refills the order queue, and starts only the
+ * customers not yet gone, with the clock picking up where the
+ * checkpoint left it, so the resumed log validates as one run.
+ *
+ * fork() branches one checkpoint into several variants of the rest of
+ * the day, such as more cooks or a higher cook order limit, each resumed
+ * in a child JVM of its own and run in parallel, since a JVM can only run
+ * one simulation at a time.
+ *
+ * Only runs in the standard kitchen, without limited patience, seating,
+ * hot holding, elastic cooks or a schedule, can be checkpointed.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x52534350;
+    private static final int VERSION = 1;
+
+    final int[] stationCapacities;
+    final int numCustomers;
+    final int numCooks;
+    final int numTables;
+    final int cookOrderLimit;
+    final long seed;
+    /** Nanoseconds into the run the checkpoint was taken. */
+    final long timeNs;
+    // Each customer's order as food ids, and how far along its visit is
+    private final int[][] orders;
+    private final Customer.Stage[] stages;
+    // Whether each cook had logged its start
+    private final boolean[] cooksStarted;
+    // Orders waiting for a cook, in queue order
+    private final int[] queued;
+    // The run's events up to the checkpoint, encoded
+    private final int eventCount;
+    private final byte[] eventData;
+
+    private Checkpoint(int[] stationCapacities, int numCustomers, int numCooks, int numTables, int cookOrderLimit,
+                       long seed, long timeNs, int[][] orders, Customer.Stage[] stages, boolean[] cooksStarted,
+                       int[] queued, int eventCount, byte[] eventData) {
+        this.stationCapacities = stationCapacities;
+        this.numCustomers = numCustomers;
+        this.numCooks = numCooks;
+        this.numTables = numTables;
+        this.cookOrderLimit = cookOrderLimit;
+        this.seed = seed;
+        this.timeNs = timeNs;
+        this.orders = orders;
+        this.stages = stages;
+        this.cooksStarted = cooksStarted;
+        this.queued = queued;
+        this.eventCount = eventCount;
+        this.eventData = eventData;
+    }
+
+    /**
+     * Captures a drained run.  Customers' stages and which cooks started
+     * are read off the events, which are encoded right away.
+     */
+    static Checkpoint capture(int[] stationCapacities, int numCustomers, int numCooks, int numTables,
+                              int cookOrderLimit, long seed, long timeNs, List<SimulationEvent> events,
+                              Customer[] customers, int[] queued) {
+        int[][] orders = new int[customers.length][];
+        for (int c = 0; c < customers.length; c++) {
+            orders[c] = foodIds(customers[c].order());
+        }
+        Customer.Stage[] stages = new Customer.Stage[customers.length];
+        Arrays.fill(stages, Customer.Stage.arriving);
+        boolean[] cooksStarted = new boolean[numCooks];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            long lastNs = 0;
+            for (SimulationEvent e : events) {
+                switch (e.event) {
+                    case CustomerStarting:
+                        stages[e.customer.orderNum() - 1] = Customer.Stage.inLine;
+                        break;
+                    case CustomerPlacedOrder:
+                        stages[e.customer.orderNum() - 1] = Customer.Stage.seated;
+                        break;
+                    case CustomerLeavingRestaurant:
+                    case CustomerBalked:
+                        stages[e.customer.orderNum() - 1] = Customer.Stage.gone;
+                        break;
+                    case CookStarting:
+                        cooksStarted[e.cook.id] = true;
+                        break;
+                    default:
+                        break;
+                }
+                writeEvent(out, e, lastNs);
+                lastNs = e.timeNs();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Encoding events in memory failed", e);
+        }
+        return new Checkpoint(stationCapacities, numCustomers, numCooks, numTables, cookOrderLimit, seed, timeNs,
+                orders, stages, cooksStarted, queued, events.size(), bytes.toByteArray());
+    }
+
+    private static int[] foodIds(List<Food> foods) {
+        int[] ids = new int[foods.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = foods.get(i).id;
+        }
+        return ids;
+    }
+
+    // An event as variable length fields; ids are stored plus one, so a missing one is 0
+    private static void writeEvent(DataOutput out, SimulationEvent e, long lastNs) throws IOException {
+        out.writeByte(e.event.ordinal());
+        writeVar(out, e.timeNs() - lastNs);
+        writeVar(out, e.threadId());
+        writeVar(out, e.cook != null ? e.cook.id + 1 : 0);
+        writeVar(out, e.customer != null ? e.customer.orderNum() : 0);
+        writeVar(out, e.machine != null ? e.machine.id + 1 : 0);
+        writeVar(out, e.food != null ? e.food.id + 1 : 0);
+        writeVar(out, e.step != null ? e.step.index + 1 : 0);
+        writeSigned(out, e.orderNumber);
+        writeVar(out, e.simParams != null ? e.simParams.length + 1 : 0);
+        if (e.simParams != null) {
+            for (int param : e.simParams) {
+                writeSigned(out, param);
+            }
+        }
+        writeVar(out, e.orderFood != null ? e.orderFood.size() + 1 : 0);
+        if (e.orderFood != null) {
+            for (Food food : e.orderFood) {
+                writeVar(out, food.id);
+            }
+        }
+    }
+
+    private static void writeVar(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static void writeSigned(DataOutput out, long value) throws IOException {
+        writeVar(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readVar(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long readSigned(DataInput in) throws IOException {
+        long value = readVar(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Creates the checkpoint's customers for a resumed run, in order, so
+     * each gets back its order number.  Order numbers must have been reset.
+     */
+    Customer[] customers(Kitchen kitchen) {
+        Customer[] customers = new Customer[orders.length];
+        for (int c = 0; c < customers.length; c++) {
+            List<Food> order = new ArrayList<Food>(orders[c].length);
+            for (int id : orders[c]) {
+                order.add(kitchen.foods[id]);
+            }
+            customers[c] = new Customer("Customer " + c, order);
+            customers[c].stage = stages[c];
+        }
+        return customers;
+    }
+
+    boolean cookStarted(int id) {
+        return cooksStarted[id];
+    }
+
+    int[] queued() {
+        return queued;
+    }
+
+    /**
+     * Rebuilds the events up to the checkpoint against a resumed run's
+     * machines, cooks and customers.  A resumed run with more cooks reports
+     * numCooks at its start.
+     */
+    List<SimulationEvent> events(Kitchen kitchen, Machine[] machines, Cook[] cooks, Customer[] customers, int numCooksIn) {
+        List<SimulationEvent> events = new ArrayList<SimulationEvent>(eventCount);
+        SimulationEvent.EventType[] types = SimulationEvent.EventType.values();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(eventData))) {
+            long timeNs = 0;
+            for (int i = 0; i < eventCount; i++) {
+                SimulationEvent.EventType type = types[in.readByte()];
+                timeNs += readVar(in);
+                long threadId = readVar(in);
+                int cook = (int) readVar(in);
+                int customer = (int) readVar(in);
+                int machine = (int) readVar(in);
+                int food = (int) readVar(in);
+                int step = (int) readVar(in);
+                int orderNumber = (int) readSigned(in);
+                int[] simParams = null;
+                int paramCount = (int) readVar(in);
+                if (paramCount > 0) {
+                    simParams = new int[paramCount - 1];
+                    for (int p = 0; p < simParams.length; p++) {
+                        simParams[p] = (int) readSigned(in);
+                    }
+                    if (type == SimulationEvent.EventType.SimulationStarting) {
+                        simParams[1] = numCooksIn;
+                    }
+                }
+                List<Food> orderFood = null;
+                int orderSize = (int) readVar(in);
+                if (orderSize > 0) {
+                    orderFood = new ArrayList<Food>(orderSize - 1);
+                    for (int f = 0; f < orderSize - 1; f++) {
+                        orderFood.add(kitchen.foods[(int) readVar(in)]);
+                    }
+                }
+                Food eventFood = food > 0 ? kitchen.foods[food - 1] : null;
+                events.add(SimulationEvent.restored(type,
+                        cook > 0 ? cooks[cook - 1] : null,
+                        customer > 0 ? customers[customer - 1] : null,
+                        machine > 0 ? machines[machine - 1] : null,
+                        eventFood,
+                        orderFood,
+                        orderNumber,
+                        simParams,
+                        step > 0 ? kitchen.recipe(eventFood)[step - 1] : null,
+                        timeNs, threadId));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Decoding events in memory failed", e);
+        }
+        return events;
+    }
+
+    /**
+     * Resumes the checkpointed run with addedCooks more cooks, from a
+     * JVM's own state; the current cook order limit and seed apply.
+     */
+    public List<SimulationEvent> resume(int addedCooks) {
+        return Simulation.resume(this, addedCooks);
+    }
+
+    /**
+     * Writes the checkpoint, gzipped:
+     *
+     *   magic, version, station capacities, customers, cooks, tables,
+     *   cook order limit, seed, time
+     *   per customer: stage, order size, food ids
+     *   per cook: whether it started
+     *   queued orders
+     *   event count, encoded events
+     */
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(path))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVar(out, stationCapacities.length);
+            for (int capacity : stationCapacities) {
+                writeVar(out, capacity);
+            }
+            writeVar(out, numCustomers);
+            writeVar(out, numCooks);
+            writeVar(out, numTables);
+            writeVar(out, cookOrderLimit);
+            out.writeLong(seed);
+            writeVar(out, timeNs);
+            for (int c = 0; c < orders.length; c++) {
+                out.writeByte(stages[c].ordinal());
+                writeVar(out, orders[c].length);
+                for (int id : orders[c]) {
+                    writeVar(out, id);
+                }
+            }
+            for (boolean started : cooksStarted) {
+                out.writeBoolean(started);
+            }
+            writeVar(out, queued.length);
+            for (int orderNum : queued) {
+                writeVar(out, orderNum);
+            }
+            writeVar(out, eventCount);
+            writeVar(out, eventData.length);
+            out.write(eventData);
+        }
+    }
+
+    /**
+     * Loads a saved checkpoint.
+     */
+    public static Checkpoint load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(path))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + ": not a checkpoint of this version");
+            }
+            int[] stationCapacities = new int[(int) readVar(in)];
+            for (int s = 0; s < stationCapacities.length; s++) {
+                stationCapacities[s] = (int) readVar(in);
+            }
+            int numCustomers = (int) readVar(in);
+            int numCooks = (int) readVar(in);
+            int numTables = (int) readVar(in);
+            int cookOrderLimit = (int) readVar(in);
+            long seed = in.readLong();
+            long timeNs = readVar(in);
+            int[][] orders = new int[numCustomers][];
+            Customer.Stage[] stages = new Customer.Stage[numCustomers];
+            for (int c = 0; c < numCustomers; c++) {
+                stages[c] = Customer.Stage.values()[in.readByte()];
+                orders[c] = new int[(int) readVar(in)];
+                for (int i = 0; i < orders[c].length; i++) {
+                    orders[c][i] = (int) readVar(in);
+                }
+            }
+            boolean[] cooksStarted = new boolean[numCooks];
+            for (int k = 0; k < numCooks; k++) {
+                cooksStarted[k] = in.readBoolean();
+            }
+            int[] queued = new int[(int) readVar(in)];
+            for (int i = 0; i < queued.length; i++) {
+                queued[i] = (int) readVar(in);
+            }
+            int eventCount = (int) readVar(in);
+            byte[] eventData = new byte[(int) readVar(in)];
+            in.readFully(eventData);
+            return new Checkpoint(stationCapacities, numCustomers, numCooks, numTables, cookOrderLimit, seed, timeNs,
+                    orders, stages, cooksStarted, queued, eventCount, eventData);
+        }
+    }
+
+    /** A change to the scenario the rest of a checkpointed day runs in. */
+    public static class Variant {
+        final String name;
+        final int addedCooks;
+        // Cook order limit, or 0 to keep the checkpointed run's
+        final int cookOrderLimit;
+
+        public Variant(String name, int addedCooks, int cookOrderLimit) {
+            if (addedCooks < 0 || cookOrderLimit < 0) {
+                throw new IllegalArgumentException("A variant cannot take cooks away or set a negative limit");
+            }
+            this.name = name;
+            this.addedCooks = addedCooks;
+            this.cookOrderLimit = cookOrderLimit;
+        }
+    }
+
+    /** How the rest of the day went in a variant. */
+    public static class Outcome {
+        Variant variant;
+        boolean valid;
+        /** Time to load the checkpoint and set the run up from it. */
+        double restoreMs;
+        /** Time from the checkpoint to the end of the run. */
+        double remainingMs;
+        /** Orders completed after the checkpoint, and their mean time from being placed. */
+        int ordersCompleted;
+        double meanLatencyMs;
+    }
+
+    /**
+     * Resumes the checkpoint saved at path once per variant, up to parallel
+     * at a time, each in a child JVM, and returns the outcomes in the
+     * order of the variants.
+     */
+    public static List<Outcome> fork(String path, List<Variant> variants, int parallel)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>();
+            for (Variant variant : variants) {
+                futures.add(pool.submit(() -> runChild(path, variant)));
+            }
+            List<Outcome> outcomes = new ArrayList<Outcome>();
+            for (int v = 0; v < variants.size(); v++) {
+                try {
+                    outcomes.add(futures.get(v).get());
+                } catch (java.util.concurrent.ExecutionException e) {
+                    throw new IOException("Variant " + variants.get(v).name + " failed", e.getCause());
+                }
+            }
+            return outcomes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Resumes a variant in a child JVM
+    private static Outcome runChild(String path, Variant variant) throws IOException, InterruptedException {
+        String[] fields;
+        try {
+            fields = ChildJvm.run(Checkpoint.class, "outcome", 0, "--resume", path,
+                    Integer.toString(variant.addedCooks), Integer.toString(variant.cookOrderLimit));
+        } catch (IOException e) {
+            throw new IOException("Variant " + variant.name + " " + e.getMessage());
+        }
+        Outcome outcome = new Outcome();
+        outcome.variant = variant;
+        outcome.valid = Boolean.parseBoolean(fields[0]);
+        outcome.restoreMs = Double.parseDouble(fields[1]);
+        outcome.remainingMs = Double.parseDouble(fields[2]);
+        outcome.ordersCompleted = Integer.parseInt(fields[3]);
+        outcome.meanLatencyMs = Double.parseDouble(fields[4]);
+        return outcome;
+    }
+
+    // Resumes a checkpoint in this JVM and prints its outcome as one line
+    private static void resumeOne(String[] args) throws IOException {
+        String path = args[1];
+        int addedCooks = Integer.parseInt(args[2]);
+        int limit = Integer.parseInt(args[3]);
+
+        long start = System.nanoTime();
+        Checkpoint checkpoint = load(path);
+        long loadNs = System.nanoTime() - start;
+        Simulation.setSeed(checkpoint.seed);
+        Simulation.setCookOrderLimit(limit > 0 ? limit : checkpoint.cookOrderLimit);
+        Simulation.QuietRun run = Simulation.runQuietly(() -> checkpoint.resume(addedCooks));
+        List<SimulationEvent> events = run.events;
+        double restoreMs = (loadNs + Simulation.restoreNs()) / 1e6;
+        HashMap<Integer, Long> placed = new HashMap<Integer, Long>();
+        long latencyNs = 0;
+        int completed = 0;
+        for (SimulationEvent e : events) {
+            if (e.event == SimulationEvent.EventType.CustomerPlacedOrder) {
+                placed.put(e.orderNumber, e.timeNs());
+            } else if (e.event == SimulationEvent.EventType.CookCompletedOrder && e.timeNs() > checkpoint.timeNs) {
+                latencyNs += e.timeNs() - placed.get(e.orderNumber);
+                completed++;
+            }
+        }
+        double remainingMs = (events.get(events.size() - 1).timeNs() - checkpoint.timeNs) / 1e6;
+        System.out.println("outcome " + run.valid + " " + restoreMs + " " + remainingMs + " " + completed + " "
+                + (completed > 0 ? latencyNs / 1e6 / completed : 0));
+    }
+
+    /**
+     * Runs a day to a checkpoint at at-ms, saving it to file, and then
+     * forks the rest of the day from it: as it was, with one and two more
+     * cooks, and with cooks working on two orders at once.  Each variant
+     * reports how long the rest of its day took, the latency of the orders
+     * completed in it, and how long restoring took against simulating the
+     * day up to the checkpoint.
+     *
+     * usage: java Checkpoint [customers] [cooks] [tables] [capacity] [at-ms] [file] [parallel] [seed]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--resume")) {
+            resumeOne(args);
+            return;
+        }
+        int numCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int numCooks = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int numTables = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long atMs = args.length > 4 ? Long.parseLong(args[4]) : 3000;
+        String path = args.length > 5 ? args[5] : "restaurant.checkpoint";
+        int parallel = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 7 ? Long.parseLong(args[7]) : 1;
+
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, %d cooks, %d tables, machine capacity %d, seed %d, checkpoint at %d ms",
+                numCustomers, numCooks, numTables, capacity, seed, atMs));
+        Simulation.setSeed(seed);
+        Simulation.setCheckpoint(atMs, path);
+        boolean valid;
+        try {
+            valid = Simulation.runQuietly(Kitchen.standard(capacity), numCustomers, numCooks, numTables, true).valid;
+        } finally {
+            Simulation.setCheckpoint(0, null);
+        }
+        if (!new File(path).exists()) {
+            out.println("The run ended before the checkpoint; valid " + valid);
+            return;
+        }
+        Checkpoint checkpoint = load(path);
+        out.println(String.format("Checkpoint at %.1f ms of the run: %d events, %d customers waiting for a cook, "
+                        + "%d bytes on disk; the run was valid: %s",
+                checkpoint.timeNs / 1e6, checkpoint.eventCount, checkpoint.queued.length, new File(path).length(), valid));
+
+        List<Variant> variants = new ArrayList<Variant>();
+        variants.add(new Variant("as is", 0, 0));
+        variants.add(new Variant("+1 cook", 1, 0));
+        variants.add(new Variant("+2 cooks", 2, 0));
+        variants.add(new Variant("2 orders/cook", 0, 2));
+        out.println(String.format("%14s %12s %12s %12s %8s %12s %6s",
+                "variant", "restore ms", "reached ms", "rest ms", "orders", "latency ms", "valid"));
+        for (Outcome outcome : fork(path, variants, parallel)) {
+            out.println(String.format("%14s %12.1f %12.1f %12.1f %8d %12.1f %6s",
+                    outcome.variant.name, outcome.restoreMs, checkpoint.timeNs / 1e6, outcome.remainingMs,
+                    outcome.ordersCompleted, outcome.meanLatencyMs, outcome.valid));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a main class of the simulation in a child JVM, on this JVM's java
+ * and class path.  Since the simulation is static, a tool that wants runs
+ * side by side, or measured alone, makes each in a child of its own; the
+ * child reports its result as one line of its output starting with a tag,
+ * and everything else it prints is ignored.
+ */
+class ChildJvm {
+
+    private ChildJvm() {
+    }
+
+    /**
+     * Runs mainClass with args in a child JVM and returns the fields of the
+     * last line it printed that starts with tag, after the tag.  A child
+     * still running after timeoutS seconds is killed; 0 waits for as long
+     * as it takes.
+     *
+     * @throws IOException if the child timed out, exited with an error, or
+     *         never printed a line with the tag
+     */
+    static String[] run(Class<?> mainClass, String tag, long timeoutS, String... args)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                mainClass.getName()));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        // Read the child's output as it comes, so a full pipe never blocks it
+        List<String> lines = new ArrayList<String>();
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    synchronized (lines) {
+                        lines.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                // The child was killed
+            }
+        });
+        reader.start();
+        if (timeoutS > 0 && !process.waitFor(timeoutS, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            reader.join();
+            throw new IOException("timed out after " + timeoutS + " s");
+        }
+        int exit = process.waitFor();
+        reader.join();
+        synchronized (lines) {
+            String prefix = tag + " ";
+            for (int i = lines.size() - 1; i >= 0 && exit == 0; i--) {
+                if (lines.get(i).startsWith(prefix)) {
+                    return lines.get(i).substring(prefix.length()).split(" ");
+                }
+            }
+            throw new IOException("exited with " + exit + (lines.isEmpty() ? "" : ": " + lines.get(lines.size() - 1)));
+        }
+    }
+}
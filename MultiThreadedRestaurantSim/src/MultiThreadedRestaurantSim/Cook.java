@@ -1,74 +1,325 @@
-package MultiThreadedRestaurantSim;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-
-/**
- * Cooks are simulation actors that have at least one field, a name.
- * When running, a cook attempts to retrieve outstanding orders placed
- * by Eaters and process them.
- */
-public class Cook implements Runnable {
-	private final String name;
-
-	Cook(String name) {
-		this.name = name;
-	}
-
-	public String toString() {
-		return name;
-	}
-
-	/**
-	 * The cook tries to retrieve orders placed by Customers.
-	 * For each order, a List<Food>, the cook submits each Food item in the
-	 * List to an appropriate Machine, by calling makeFood().
-	 * Once all machines have produced the desired Food, the order is complete,
-	 * and the Customer is notified.  The cook can then go to process the next order.
-	 * If during its execution the cook is interrupted (i.e., some
-	 * other thread calls the interrupt() method on it, which could
-	 * raise InterruptedException if the cook is blocking), then it terminates.
-	 */
-	public void run() {
-
-		Simulation.logEvent(SimulationEvent.cookStarting(this));
-        Random rnd = new Random();
-		try {
-			while(!Thread.interrupted()) {
-                if (Simulation.orderAvailable(this)) {
-                    int orderNum = Simulation.cookGetOrderNum(this);
-                    List<Food> order = Simulation.cookGetOrder(this);
-                    List<Food> rawFoodList = new ArrayList<>();
-                    rawFoodList.addAll(order);
-                    Simulation.logEvent(SimulationEvent.cookReceivedOrder(this, new ArrayList<>(order), orderNum));
-                    while (rawFoodList.size() > 0) {
-                        Food rawFood = rawFoodList.remove(rnd.nextInt(rawFoodList.size()));
-                        if (!Simulation.machines.get(rawFood.name).makeFood(this, orderNum)) {
-                            rawFoodList.add(rawFood);
-                        }
-                        // Checks that all completed items are done
-                        // When cook sees an order item in the completed items, log as cookfinishedfood
-                        Food food = order.remove(rnd.nextInt(order.size()));
-                        if (!Simulation.checkCookingStatus(this, orderNum, food)) {
-                            order.add(food);
-                        }
-                    }
-                    while(order.size() > 0) {
-                        Food food = order.remove(rnd.nextInt(order.size()));
-                        if (!Simulation.checkCookingStatus(this, orderNum, food)) {
-                            order.add(food);
-                        }
-                    }
-
-                    // Update order num as complete to Sim
-                    Simulation.orderCompleted(this, orderNum);
-                }
-			}
-            Simulation.logEvent(SimulationEvent.cookEnding(this));
-		}
-		catch(InterruptedException e) {
-			Simulation.logEvent(SimulationEvent.cookEnding(this));
-		}
-	}
+package MultiThreadedRestaurantSim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cooks are simulation actors that have at least one field, a name.
+ * When running, a cook attempts to retrieve outstanding orders placed
+ * by Eaters and process them.  Each cook picks which item to work on
+ * next with its own Random, seeded from the simulation's master seed.
+ * A cook runs on its own thread, or as a state machine on an EventLoop.
+ */
+public class Cook extends EventLoop.Actor implements Runnable {
+	final int id;
+	private final String name;
+	private final Random rnd;
+	private final ActorProfiler.Account account = ActorProfiler.account(ActorProfiler.Kind.cook);
+	// Number of the order this cook last claimed; only its own thread touches it
+	int claimedOrder;
+	// Since when the cook has had no order on hand, or 0 while it has one; for the elastic cook pool
+	volatile long idleSinceNs = System.nanoTime();
+	// Set when the elastic cook pool lets the cook go; it takes no more orders and leaves once its orders are complete
+	private volatile boolean retiring;
+	// Set for a cook restored from a checkpoint, which logged its start in the checkpointed run
+	boolean resumed;
+	// Orders the cook has taken on; only the thread or loop running the cook touches them
+	private final List<ActiveOrder> active = new ArrayList<>();
+	// On the event loop, whether the cook has logged its start, and whether it waits for orders to come in
+	private boolean started;
+	boolean awaitingOrders;
+
+	/**
+	 * Where a cook is with its work: idle with no order on hand, claimed
+	 * with orders on hand but none of their items on a machine, cooking
+	 * with an item on a machine, and completed once it has ended.  The
+	 * event loop steps a cook by its state, LiveMetrics counts the cooks in
+	 * each, and BottleneckAnalyzer works the states out again from the log.
+	 */
+	enum State {
+		idle, claimed, cooking, completed;
+
+		// The state of a cook on shift with the given orders on hand and items on machines
+		static State of(int ordersOnHand, int itemsCooking) {
+			return ordersOnHand == 0 ? idle : itemsCooking == 0 ? claimed : cooking;
+		}
+	}
+
+	// Only the thread or loop running the cook sets it
+	private volatile State state = State.idle;
+
+	Cook(int id, Random rnd) {
+		this.id = id;
+		this.name = "Cook " + id;
+		this.rnd = rnd;
+	}
+
+	public String toString() {
+		return name;
+	}
+
+	State state() {
+		return state;
+	}
+
+	// Moves the cook to a state, counted in live metrics if they are served
+	private void setState(State next) {
+		if (next != state) {
+			Simulation.cookStateChanged(state, next);
+			state = next;
+		}
+	}
+
+	/**
+	 * Lets the cook go home: it takes no more orders, and ends once the
+	 * orders it has are complete.
+	 */
+	void retire() {
+		retiring = true;
+	}
+
+	/**
+	 * The cook tries to retrieve orders placed by Customers.
+	 * For each order, a List<Food>, the cook submits each step of each Food
+	 * item's recipe to the Machine of its station, by calling makeFood(), as
+	 * soon as the steps it waits on are done.
+	 * Once all machines have produced the desired Food, the order is complete,
+	 * and the Customer is notified.  A cook works on up to the simulation's
+	 * cook order limit of orders at once, taking on another while items of
+	 * the ones it has cook; with a limit of 1 it sees each order through
+	 * before taking the next.
+	 * If during its execution the cook is interrupted (i.e., some
+	 * other thread calls the interrupt() method on it, which could
+	 * raise InterruptedException if the cook is blocking), or is retired,
+	 * then it terminates once its orders are complete.
+	 */
+	public void run() {
+		ActorProfiler.begin(account);
+		try {
+			work();
+		} finally {
+			ActorProfiler.end(account);
+		}
+	}
+
+	// An order the cook has taken on, and how far along its items are
+	private static class ActiveOrder {
+		final int orderNum;
+		// Steps of the order's items that may start, and those on a machine, with the machine
+		final List<Kitchen.Step> readySteps = new ArrayList<>();
+		final List<Kitchen.Step> cookingSteps = new ArrayList<>();
+		final List<Machine> cookingMachines = new ArrayList<>();
+		// Per step, how many items have finished it and how many have been let into it
+		final HashMap<Kitchen.Step, Integer> finished = new HashMap<>();
+		final HashMap<Kitchen.Step, Integer> released = new HashMap<>();
+
+		ActiveOrder(int orderNum) {
+			this.orderNum = orderNum;
+		}
+
+		boolean done() {
+			return readySteps.isEmpty() && cookingSteps.isEmpty();
+		}
+	}
+
+	private void work() {
+
+		Simulation.cookStateChanged(null, state);
+		if (!resumed) {
+			Simulation.logEvent(SimulationEvent.cookStarting(this));
+		}
+		try {
+			// Only stop when interrupted or retired with no orders on hand
+			while (active.size() > 0 || (!retiring && !Thread.interrupted())) {
+                round(false);
+			}
+		}
+		catch(InterruptedException e) {
+			// Interrupted while waiting; the cook ends all the same
+		}
+		setState(State.completed);
+		Simulation.logEvent(SimulationEvent.cookEnding(this));
+	}
+
+	/**
+	 * Moves the cook on as far as it can go without waiting, for the event
+	 * loop, and parks it by its state once it has nothing to do.  An idle
+	 * cook waits for an order to come in, and a retired one is done.  A
+	 * claimed cook waits for a slot to free at a station it has a step
+	 * for, and a cooking one for that or an item to be done; either also
+	 * waits for an order while it has room for another.
+	 */
+	EventLoop.Next step() {
+		if (!started) {
+			started = true;
+			Simulation.cookStateChanged(null, state);
+			Simulation.logEvent(SimulationEvent.cookStarting(this));
+		}
+		try {
+			if (round(true)) {
+				return EventLoop.Next.yield;
+			}
+		} catch (InterruptedException e) {
+			throw new IllegalStateException("Cook interrupted on the event loop", e);
+		}
+		switch (state) {
+			case idle:
+				if (retiring) {
+					setState(State.completed);
+					Simulation.logEvent(SimulationEvent.cookEnding(this));
+					return EventLoop.Next.done;
+				}
+				break;
+			case claimed:
+			case cooking:
+				// Already waiting on the slots its ready steps need, and on its items' timers
+				break;
+			default:
+				return EventLoop.Next.done;
+		}
+		// An order placed while the cook looked is not missed
+		if (!retiring && active.size() < Simulation.cookOrderLimit() && Simulation.awaitOrders(this)) {
+			return EventLoop.Next.yield;
+		}
+		return EventLoop.Next.park;
+	}
+
+	// Claims an order if the cook has room for one, and moves the orders on hand along; returns whether anything was done
+	private boolean round(boolean everyStep) throws InterruptedException {
+		boolean progress = false;
+		if (!retiring && active.size() < Simulation.cookOrderLimit()
+				&& ActorProfiler.poll(account, ActorProfiler.Loop.orderAvailable, Simulation.orderAvailable(this))) {
+			active.add(takeOrder());
+			idleSinceNs = 0;
+			progress = true;
+		}
+		int itemsCooking = 0;
+		for (int i = 0; i < active.size(); i++) {
+			ActiveOrder order = active.get(i);
+			if (everyStep ? advanceAll(order) : advance(order)) {
+				progress = true;
+			}
+			if (order.done()) {
+				// Update order num as complete to Sim
+				active.remove(i--);
+				Simulation.orderCompleted(this, order.orderNum);
+				if (active.isEmpty()) {
+					idleSinceNs = System.nanoTime();
+				}
+			} else {
+				itemsCooking += order.cookingSteps.size();
+			}
+		}
+		setState(State.of(active.size(), itemsCooking));
+		return progress;
+	}
+
+	// Takes on the order just claimed, ready to start the first steps of its items
+	private ActiveOrder takeOrder() {
+		int orderNum = Simulation.cookGetOrderNum(this);
+		List<Food> items = Simulation.cookGetOrder(this);
+		Simulation.logEvent(SimulationEvent.cookReceivedOrder(this, new ArrayList<>(items), orderNum));
+		ActiveOrder order = new ActiveOrder(orderNum);
+		for (Food food : items) {
+			// An item taken from hot holding is done already
+			if (Simulation.takeHeldFood(this, food, orderNum)) {
+				continue;
+			}
+			for (Kitchen.Step step : Simulation.recipe(food)) {
+				if (step.after.length == 0) {
+					order.readySteps.add(step);
+				}
+			}
+		}
+		return order;
+	}
+
+	// Tries to start one step of the order, and to collect one; returns whether it did either
+	private boolean advance(ActiveOrder order) throws InterruptedException {
+		boolean progress = false;
+		if (order.readySteps.size() > 0) {
+			int pick = rnd.nextInt(order.readySteps.size());
+			Kitchen.Step step = order.readySteps.get(pick);
+			Machine machine = Simulation.chooseMachine(step, rnd);
+			// Route around a station that is down, to a ready step of another
+			for (int i = 1; machine == null && i < order.readySteps.size(); i++) {
+				step = order.readySteps.get((pick + i) % order.readySteps.size());
+				machine = Simulation.chooseMachine(step, rnd);
+			}
+			progress = machine != null && start(order, step, machine);
+		}
+		if (order.cookingSteps.size() > 0 && collect(order, rnd.nextInt(order.cookingSteps.size()))) {
+			progress = true;
+		}
+		return progress;
+	}
+
+	// Collects every step of the order that is done, and starts every one it can; returns whether it did any
+	private boolean advanceAll(ActiveOrder order) throws InterruptedException {
+		boolean progress = false;
+		for (int i = order.cookingSteps.size() - 1; i >= 0; i--) {
+			if (collect(order, i)) {
+				progress = true;
+			}
+		}
+		for (int i = 0; i < order.readySteps.size(); ) {
+			Kitchen.Step step = order.readySteps.get(i);
+			Machine machine = Simulation.chooseMachine(step, rnd);
+			if (machine != null && start(order, step, machine)) {
+				progress = true;
+			} else {
+				// Woken when a slot of the station frees; one that freed meanwhile is tried again
+				if (Simulation.awaitSlot(step, this)) {
+					progress = true;
+				}
+				i++;
+			}
+		}
+		return progress;
+	}
+
+	// Puts a ready step of the order on the machine, if it has a slot free
+	private boolean start(ActiveOrder order, Kitchen.Step step, Machine machine) throws InterruptedException {
+		if (!ActorProfiler.poll(account, ActorProfiler.Loop.makeFood, machine.makeFood(this, step, order.orderNum))) {
+			return false;
+		}
+		order.readySteps.remove(step);
+		order.cookingSteps.add(step);
+		order.cookingMachines.add(machine);
+		return true;
+	}
+
+	// Collects a step of the order off its machine if it is done, or learns it was lost
+	private boolean collect(ActiveOrder order, int cooking) {
+		Kitchen.Step step = order.cookingSteps.get(cooking);
+		// When cook sees a step in the completed items, log as cookfinishedfood
+		// and let the item into the steps waiting on it, so its next step can
+		// start while the machine works on another item
+		if (ActorProfiler.poll(account, ActorProfiler.Loop.checkCookingStatus,
+				Simulation.checkCookingStatus(this, order.orderNum, step, order.cookingMachines.get(cooking)))) {
+			order.cookingSteps.remove(cooking);
+			order.cookingMachines.remove(cooking);
+			order.finished.merge(step, 1, Integer::sum);
+			for (Kitchen.Step next : step.next) {
+				int through = Integer.MAX_VALUE;
+				for (Kitchen.Step before : next.after) {
+					through = Math.min(through, order.finished.getOrDefault(before, 0));
+				}
+				if (through > order.released.getOrDefault(next, 0)) {
+					order.released.merge(next, 1, Integer::sum);
+					order.readySteps.add(next);
+				}
+			}
+			return true;
+		} else if (Simulation.takeLostStep(order.orderNum, step, order.cookingMachines.get(cooking))) {
+			// A fault lost the item off the machine, so it starts over
+			order.cookingSteps.remove(cooking);
+			order.cookingMachines.remove(cooking);
+			order.readySteps.add(step);
+			return true;
+		}
+		return false;
+	}
 }
\ No newline at end of file
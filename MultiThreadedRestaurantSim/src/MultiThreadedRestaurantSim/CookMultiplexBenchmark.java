@@ -0,0 +1,46 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.PrintStream;
+
+/**
+ * Measures how much a cook gets done when it juggles several orders at
+ * once against seeing one order through at a time.  The same customers,
+ * from the same seed, are served by 1 to maxCooks cooks under each cook
+ * order limit, and each run reports its throughput in orders per second,
+ * per second per cook, and its mean order latency.
+ *
+ * usage: java CookMultiplexBenchmark [customers] [tables] [capacity] [max-cooks] [max-limit] [seed]
+ */
+public class CookMultiplexBenchmark {
+
+    public static void main(String[] args) {
+        int numCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int numTables = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int maxCooks = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int maxLimit = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, %d tables, machine capacity %d, seed %d",
+                numCustomers, numTables, capacity, seed));
+        out.println(String.format("%6s %6s %10s %14s %12s %12s %6s",
+                "cooks", "limit", "orders/s", "orders/s/cook", "latency ms", "span ms", "valid"));
+        try {
+            for (int numCooks = 1; numCooks <= maxCooks; numCooks *= 2) {
+                for (int limit = 1; limit <= maxLimit; limit *= 2) {
+                    Simulation.setCookOrderLimit(limit);
+                    Simulation.setSeed(seed);
+                    Simulation.QuietRun run = Simulation.runQuietly(Kitchen.standard(capacity), numCustomers, numCooks, numTables, true);
+                    BottleneckAnalyzer.Report report = BottleneckAnalyzer.analyze(run.events);
+                    double ordersPerSec = report.spanMs > 0 ? 1000 * report.ordersAnalyzed / report.spanMs : 0;
+                    out.println(String.format("%6d %6d %10.2f %14.2f %12.1f %12.1f %6s",
+                            numCooks, limit, ordersPerSec, ordersPerSec / numCooks,
+                            report.meanLatencyMs(), report.spanMs, run.valid));
+                }
+            }
+        } finally {
+            Simulation.setCookOrderLimit(1);
+        }
+    }
+}
@@ -1,67 +1,233 @@
-package MultiThreadedRestaurantSim;
-
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * Customers are simulation actors that have two fields: a name, and a list
- * of Food items that constitute the Customer's order.  When running, an
- * customer attempts to enter the restaurant (only successful if the
- * restaurant has a free table), place its order, and then leave the
- * restaurant when the order is complete.
- */
-public class Customer implements Runnable {
-	private final String name;
-	private final List<Food> order;
-	private final int orderNum;    
-	
-	private static int runningCounter = 0;
-
-	Customer(String name, List<Food> order) {
-		this.name = name;
-		this.order = new ArrayList<>();
-		this.order.addAll(order);
-		this.orderNum = ++runningCounter;
-	}
-
-	public String toString() {
-		return name;
-	}
-
-	/** 
-	 * The customer attempts to enter the restaurant
-	 * (only successful when the restaurant has a free table),
-	 * place its order, and then leave the restaurant
-	 * when the order is complete.
-	 */
-	public void run() {
-        Simulation.logEvent(SimulationEvent.customerStarting(this));
-        boolean entered = false;
-        while (!entered) {
-            entered = Simulation.enterRestaurant();
-        }
-        Simulation.logEvent(SimulationEvent.customerEnteredRestaurant(this));
-
-
-        // Customer orders
-        Simulation.logEvent(SimulationEvent.customerPlacedOrder(this, new ArrayList<Food>(this.order), this.orderNum));
-        Simulation.placeOrder(this.orderNum, this.order);
-
-        // Customer waits for order
-        boolean customerWaiting = true;
-        while (customerWaiting) {
-            if (Simulation.checkOrderStatus(this.orderNum)) {
-                // Customer leaves restaurant
-                customerWaiting = false;
-                List<Food> orderComplete = Simulation.getCompletedOrder(this.orderNum);
-                if (orderComplete == null) {
-                    Simulation.logEvent(SimulationEvent.customerReceivedOrder(this, new ArrayList<Food>(), orderNum));
-                } else {
-                    Simulation.logEvent(SimulationEvent.customerReceivedOrder(this, orderComplete, orderNum));
-                }
-                Simulation.logEvent(SimulationEvent.customerLeavingRestaurant(this));
-                Simulation.leaveRestaurant();
-            }
-        }
-	}
+package MultiThreadedRestaurantSim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Customers are simulation actors that have two fields: a name, and a list
+ * of Food items that constitute the Customer's order.  When running, an
+ * customer attempts to enter the restaurant (only successful if the
+ * restaurant has a free table), place its order, and then leave the
+ * restaurant when the order is complete.  A customer with limited patience
+ * gives up on entering if the wait outside is too long, and cancels its
+ * order if no cook has taken it on before the wait for food is too long.
+ * A customer restored from a checkpoint takes up its visit at the stage
+ * the checkpoint left it.  A takeout customer places its order without a
+ * table, waits for it to be ready, and leaves with it.  A customer runs
+ * on its own thread, or as a state machine on an EventLoop.
+ */
+public class Customer extends EventLoop.Actor implements Runnable {
+	private final String name;
+	private final List<Food> order;
+	private final int orderNum;    
+	// Guests in the party, and the table they were seated at, or -1
+	private final int partySize;
+	int table = -1;
+	// Set by a patience timer when the customer is done waiting
+	private volatile boolean outOfPatience = false;
+	// On the event loop, the patience timer running between steps
+	private TimingWheel.Timeout patience;
+	// Where a customer restored from a checkpoint takes up its visit, and where one on the event loop is in it
+	enum Stage { arriving, inLine, seated, gone }
+	Stage stage = Stage.arriving;
+	// The channel the order comes in by, set before the customer starts
+	enum Channel { dineIn, takeout }
+	Channel channel = Channel.dineIn;
+	private final ActorProfiler.Account account = ActorProfiler.account(ActorProfiler.Kind.customer);
+	
+	private static int runningCounter = 0;
+
+	Customer(String name, List<Food> order) {
+		this(name, order, 1);
+	}
+
+	Customer(String name, List<Food> order, int partySize) {
+		this.name = name;
+		this.order = new ArrayList<>();
+		this.order.addAll(order);
+		this.orderNum = ++runningCounter;
+		this.partySize = partySize;
+	}
+
+	// Restarts order numbering, so every run numbers its orders from 1.
+	static void resetOrderNumbers() {
+		runningCounter = 0;
+	}
+
+	int orderNum() {
+		return orderNum;
+	}
+
+	int partySize() {
+		return partySize;
+	}
+
+	List<Food> order() {
+		return order;
+	}
+
+	// Called from the timing wheel's thread, so it only sets a flag, and wakes the customer if it is parked on the event loop
+	private final Runnable losePatience = new Runnable() {
+		public void run() {
+			outOfPatience = true;
+			EventLoop.wake(Customer.this);
+		}
+	};
+
+	public String toString() {
+		return name;
+	}
+
+	/** 
+	 * The customer attempts to enter the restaurant
+	 * (only successful when the restaurant has a free table),
+	 * place its order, and then leave the restaurant
+	 * when the order is complete.
+	 */
+	public void run() {
+		ActorProfiler.begin(account);
+		try {
+			visit();
+		} finally {
+			ActorProfiler.end(account);
+		}
+	}
+
+	// Waits in line for a table and places the order; returns false if the customer balked
+	private boolean enterAndOrder() {
+        if (stage == Stage.arriving) {
+            Simulation.logEvent(SimulationEvent.customerStarting(this));
+        }
+        TimingWheel.Timeout patience = Simulation.startBalkTimer(losePatience);
+        boolean entered = false;
+        while (!entered) {
+            if (outOfPatience) {
+                Simulation.leaveLine(this);
+                Simulation.logEvent(SimulationEvent.customerBalked(this));
+                return false;
+            }
+            entered = ActorProfiler.poll(account, ActorProfiler.Loop.enterRestaurant, Simulation.enterRestaurant(this));
+        }
+        Simulation.cancelTimer(patience);
+        outOfPatience = false;
+        sitAndOrder();
+        return true;
+	}
+
+	// Sits down and places the order
+	private void sitAndOrder() {
+        if (table >= 0) {
+            Simulation.logEvent(SimulationEvent.customerEnteredRestaurant(this, partySize, table, Simulation.seatsAt(table)));
+        } else {
+            Simulation.logEvent(SimulationEvent.customerEnteredRestaurant(this));
+        }
+
+
+        // Customer orders
+        Simulation.logEvent(SimulationEvent.customerPlacedOrder(this, new ArrayList<Food>(this.order), this.orderNum));
+        Simulation.placeOrder(this.orderNum, this.order);
+	}
+
+	// Places a takeout order straight with the kitchen, bypassing the tables
+	private void orderTakeout() {
+        Simulation.logEvent(SimulationEvent.customerStarting(this));
+        Simulation.logEvent(SimulationEvent.customerPlacedOrder(this, new ArrayList<Food>(this.order), this.orderNum));
+        Simulation.placeTakeoutOrder(this.orderNum, this.order);
+	}
+
+	private void visit() {
+        boolean takeout = channel == Channel.takeout;
+        if (takeout) {
+            orderTakeout();
+        } else if (stage != Stage.seated && !enterAndOrder()) {
+            return;
+        }
+        // A takeout order is paid for, so it is never cancelled
+        TimingWheel.Timeout patience = takeout ? null : Simulation.startRenegeTimer(losePatience);
+
+        // Customer waits for order
+        boolean customerWaiting = true;
+        while (customerWaiting) {
+            if (ActorProfiler.poll(account, ActorProfiler.Loop.checkOrderStatus, Simulation.checkOrderStatus(this.orderNum))) {
+                // Customer leaves restaurant
+                customerWaiting = false;
+                receive();
+                if (!takeout) {
+                    Simulation.logEvent(SimulationEvent.customerLeavingRestaurant(this));
+                    Simulation.leaveRestaurant(this);
+                }
+            } else if (outOfPatience) {
+                // Only an order no cook has claimed can be cancelled; otherwise keep waiting
+                outOfPatience = false;
+                if (Simulation.cancelOrder(this.orderNum)) {
+                    customerWaiting = false;
+                    Simulation.logEvent(SimulationEvent.customerCancelledOrder(this, orderNum));
+                    Simulation.logEvent(SimulationEvent.customerLeavingRestaurant(this));
+                    Simulation.leaveRestaurant(this);
+                }
+            }
+        }
+        Simulation.cancelTimer(patience);
+	}
+
+	// Takes the completed order
+	private void receive() {
+        List<Food> orderComplete = Simulation.getCompletedOrder(this.orderNum);
+        if (orderComplete == null) {
+            Simulation.logEvent(SimulationEvent.customerReceivedOrder(this, new ArrayList<Food>(), orderNum));
+        } else {
+            Simulation.logEvent(SimulationEvent.customerReceivedOrder(this, orderComplete, orderNum));
+        }
+	}
+
+	/**
+	 * Moves the customer's visit on as far as it can go without waiting,
+	 * for the event loop: into line, to a table once one frees, with its
+	 * order placed, and out once the order is complete.  A customer that
+	 * has to wait is parked until the restaurant wakes it, or until its
+	 * patience runs out and it balks or cancels as on its own thread.
+	 */
+	EventLoop.Next step() {
+        if (stage == Stage.arriving) {
+            Simulation.logEvent(SimulationEvent.customerStarting(this));
+            patience = Simulation.startBalkTimer(losePatience);
+            stage = Stage.inLine;
+        }
+        if (stage == Stage.inLine) {
+            if (outOfPatience) {
+                Simulation.leaveLine(this);
+                Simulation.logEvent(SimulationEvent.customerBalked(this));
+                stage = Stage.gone;
+                return EventLoop.Next.done;
+            }
+            if (!ActorProfiler.poll(account, ActorProfiler.Loop.enterRestaurant, Simulation.enterRestaurant(this))) {
+                return EventLoop.Next.park;
+            }
+            Simulation.cancelTimer(patience);
+            outOfPatience = false;
+            sitAndOrder();
+            patience = Simulation.startRenegeTimer(losePatience);
+            stage = Stage.seated;
+        }
+        if (!ActorProfiler.poll(account, ActorProfiler.Loop.checkOrderStatus, Simulation.checkOrderStatus(this.orderNum))) {
+            // Only an order no cook has claimed can be cancelled; otherwise wait on
+            if (outOfPatience) {
+                outOfPatience = false;
+                if (Simulation.cancelOrder(this.orderNum)) {
+                    Simulation.logEvent(SimulationEvent.customerCancelledOrder(this, orderNum));
+                    Simulation.logEvent(SimulationEvent.customerLeavingRestaurant(this));
+                    Simulation.leaveRestaurant(this);
+                    stage = Stage.gone;
+                    return EventLoop.Next.done;
+                }
+            }
+            return EventLoop.Next.park;
+        }
+        Simulation.cancelTimer(patience);
+        receive();
+        Simulation.logEvent(SimulationEvent.customerLeavingRestaurant(this));
+        Simulation.leaveRestaurant(this);
+        stage = Stage.gone;
+        return EventLoop.Next.done;
+	}
 }
\ No newline at end of file
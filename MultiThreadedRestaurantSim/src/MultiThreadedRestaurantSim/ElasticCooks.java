@@ -0,0 +1,283 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An elastic pool of cooks, whose size follows the order backlog in
+ * place of a fixed staff for the whole day.  The run's numCooks start
+ * and are never let go.  Every tick the pool's thread looks at the
+ * orders waiting for a cook and at how full the machines are: when at
+ * least hireBacklog orders wait it hires a cook, up to maxCooks, unless
+ * the machines are saturated, since a cook hired then would only wait
+ * for a slot.  When no orders wait, a hired cook that has had no order
+ * on hand for retireIdleMs is told to retire, and goes home once its
+ * orders are complete.
+ *
+ * The pool's lists are only touched by the thread running the
+ * simulation and the pool's thread, under the pool's monitor.
+ */
+public class ElasticCooks implements Runnable {
+
+    /** How often the pool looks at the backlog. */
+    static final long TICK_MS = 20;
+    /** Share of machine slots in use at which hiring stops. */
+    static final double SATURATED = 0.9;
+
+    final int maxCooks;
+    final int hireBacklog;
+    final long retireIdleMs;
+
+    private Random rnd;
+    private Machine[] machines;
+    private int minCooks;
+    private int nextId;
+    // Cooks on shift and not let go, oldest first, and the thread of every cook the run had
+    private final List<Cook> onShift = new ArrayList<Cook>();
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    private Thread poolThread;
+    private volatile boolean open;
+
+    // Totals of the run
+    private int hired;
+    private int retired;
+    private int peak;
+
+    /**
+     * @param maxCooks cooks on shift at most
+     * @param hireBacklog orders waiting for a cook at which another is hired
+     * @param retireIdleMs how long a hired cook is idle before it is let go
+     */
+    public ElasticCooks(int maxCooks, int hireBacklog, long retireIdleMs) {
+        if (maxCooks < 1 || hireBacklog < 1 || retireIdleMs < 0) {
+            throw new IllegalArgumentException("Elastic cooks need a positive maximum and backlog, and a non-negative idle time");
+        }
+        this.maxCooks = maxCooks;
+        this.hireBacklog = hireBacklog;
+        this.retireIdleMs = retireIdleMs;
+    }
+
+    /**
+     * Cooks on shift at most in a run starting numCooks.
+     */
+    int maxCooks(int numCooks) {
+        return Math.max(numCooks, maxCooks);
+    }
+
+    /**
+     * Starts the run's numCooks cooks and the pool's thread.  Cooks draw
+     * their Random from rndIn, in the order they are hired.
+     */
+    synchronized void open(int numCooks, Machine[] machinesIn, Random rndIn) {
+        rnd = rndIn;
+        machines = machinesIn;
+        minCooks = numCooks;
+        nextId = 0;
+        onShift.clear();
+        threads.clear();
+        hired = retired = peak = 0;
+        for (int i = 0; i < numCooks; i++) {
+            hire();
+        }
+
+        open = true;
+        poolThread = new Thread(this, "Elastic cooks");
+        poolThread.setDaemon(true);
+        poolThread.start();
+    }
+
+    /**
+     * Stops hiring and retiring, then sends every cook on shift home once
+     * its orders are complete, and waits for all the run's cooks.
+     */
+    void close() throws InterruptedException {
+        open = false;
+        poolThread.interrupt();
+        poolThread.join();
+        List<Thread> all;
+        synchronized (this) {
+            all = new ArrayList<Thread>(threads);
+        }
+        for (Thread thread : all) {
+            thread.interrupt();
+        }
+        for (Thread thread : all) {
+            thread.join();
+        }
+    }
+
+    public void run() {
+        try {
+            while (open) {
+                Thread.sleep(TICK_MS);
+                int backlog = Simulation.ordersWaiting();
+                synchronized (this) {
+                    if (backlog >= hireBacklog) {
+                        if (working() < maxCooks && saturation() < SATURATED) {
+                            hire();
+                        }
+                    } else if (backlog == 0 && onShift.size() > minCooks) {
+                        retireIdle();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        }
+    }
+
+    // Starts a new cook, called holding the monitor
+    private void hire() {
+        Cook cook = new Cook(nextId++, new Random(rnd.nextLong()));
+        Thread thread = new Thread(cook);
+        onShift.add(cook);
+        threads.add(thread);
+        if (nextId > minCooks) {
+            hired++;
+        }
+        thread.start();
+        peak = Math.max(peak, working());
+    }
+
+    // Cooks whose thread is still running, retiring ones included, so a cook hired never overlaps one leaving beyond maxCooks
+    private int working() {
+        int count = 0;
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Lets go of the most recently hired cook idle for retireIdleMs, if any is
+    private void retireIdle() {
+        long now = System.nanoTime();
+        for (int i = onShift.size() - 1; i >= minCooks; i--) {
+            Cook cook = onShift.get(i);
+            long idleSince = cook.idleSinceNs;
+            if (idleSince != 0 && now - idleSince >= retireIdleMs * 1000000) {
+                cook.retire();
+                onShift.remove(i);
+                retired++;
+                return;
+            }
+        }
+    }
+
+    // Share of all machine slots in use
+    private double saturation() {
+        int cooking = 0;
+        int slots = 0;
+        for (Machine machine : machines) {
+            cooking += machine.itemsCooking;
+            slots += machine.capacity();
+        }
+        return slots > 0 ? (double) cooking / slots : 0;
+    }
+
+    /**
+     * Summarizes the run: the cook time it paid for against the order
+     * latency it got, and how the pool got there.
+     */
+    synchronized String summarize(List<SimulationEvent> events) {
+        Staffing staffing = staffing(events);
+        return String.format("Elastic cooks (%d to %d, hiring at %d waiting, retiring after %d ms idle): %.2f cook-seconds, "
+                        + "mean order latency %.1f ms; %d hired, %d retired, at most %d on shift%n",
+                minCooks, maxCooks(minCooks), hireBacklog, retireIdleMs, staffing.cookSeconds,
+                staffing.meanLatencyMs, hired, retired, peak);
+    }
+
+    /** Cook time and order latency of a run. */
+    static class Staffing {
+        /** Seconds cooks were on shift, summed over cooks. */
+        double cookSeconds;
+        /** Mean time from an order being placed to it being completed. */
+        double meanLatencyMs;
+        /** Time from the first event to the last. */
+        double spanMs;
+    }
+
+    /**
+     * Measures the cook time and order latency of a run from its events,
+     * whether its cooks were elastic or not.
+     */
+    static Staffing staffing(List<SimulationEvent> events) {
+        Staffing staffing = new Staffing();
+        HashMap<Cook, Long> started = new HashMap<Cook, Long>();
+        HashMap<Integer, Long> placed = new HashMap<Integer, Long>();
+        long cookNs = 0;
+        long latencyNs = 0;
+        int completed = 0;
+        synchronized (events) {
+            for (SimulationEvent e : events) {
+                switch (e.event) {
+                    case CookStarting:
+                        started.put(e.cook, e.timeNs());
+                        break;
+                    case CookEnding:
+                        cookNs += e.timeNs() - started.remove(e.cook);
+                        break;
+                    case CustomerPlacedOrder:
+                        placed.put(e.orderNumber, e.timeNs());
+                        break;
+                    case CookCompletedOrder:
+                        latencyNs += e.timeNs() - placed.get(e.orderNumber);
+                        completed++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (!events.isEmpty()) {
+                staffing.spanMs = (events.get(events.size() - 1).timeNs() - events.get(0).timeNs()) / 1e6;
+            }
+        }
+        staffing.cookSeconds = cookNs / 1e9;
+        staffing.meanLatencyMs = completed > 0 ? latencyNs / 1e6 / completed : 0;
+        return staffing;
+    }
+
+    /**
+     * Compares elastic staffing with static staffing at its minimum and at
+     * its maximum, on the same customers from the same seed: the cook time
+     * each pays for, and the order latency and time to serve everyone it
+     * gets.
+     *
+     * usage: java ElasticCooks [customers] [tables] [capacity] [min-cooks] [max-cooks] [hire-backlog] [retire-idle-ms] [seed]
+     */
+    public static void main(String[] args) {
+        int numCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int numTables = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int minCooks = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int maxCooks = args.length > 4 ? Integer.parseInt(args[4]) : 6;
+        int hireBacklog = args.length > 5 ? Integer.parseInt(args[5]) : 2;
+        long retireIdleMs = args.length > 6 ? Long.parseLong(args[6]) : 100;
+        long seed = args.length > 7 ? Long.parseLong(args[7]) : 1;
+
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, %d tables, machine capacity %d, seed %d",
+                numCustomers, numTables, capacity, seed));
+        out.println(String.format("%16s %14s %12s %12s %6s",
+                "staffing", "cook-seconds", "latency ms", "span ms", "valid"));
+        try {
+            String[] names = {"static " + minCooks, "static " + maxCooks, "elastic " + minCooks + "-" + maxCooks};
+            int[] cooks = {minCooks, maxCooks, minCooks};
+            for (int run = 0; run < names.length; run++) {
+                Simulation.setElasticCooks(run == 2 ? new ElasticCooks(maxCooks, hireBacklog, retireIdleMs) : null);
+                Simulation.setSeed(seed);
+                Simulation.QuietRun quiet = Simulation.runQuietly(Kitchen.standard(capacity), numCustomers, cooks[run], numTables, true);
+                Staffing staffing = staffing(quiet.events);
+                out.println(String.format("%16s %14.2f %12.1f %12.1f %6s",
+                        names[run], staffing.cookSeconds, staffing.meanLatencyMs, staffing.spanMs, quiet.valid));
+            }
+        } finally {
+            Simulation.setElasticCooks(null);
+        }
+    }
+}
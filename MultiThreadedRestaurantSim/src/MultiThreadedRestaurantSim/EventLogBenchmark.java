@@ -0,0 +1,97 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what stamping events with a timestamp and thread id costs on
+ * the logging path, with many threads logging at once.
+ *
+ * Each round has every thread log the same number of events, either through
+ * Simulation.logEvent, or through a copy of it that skips the stamp.  Both
+ * take a class-wide lock and append to a synchronized list, as logEvent
+ * does, and event printing is turned off so it does not drown out the
+ * difference.  For scale, the last column is logEvent with printing on,
+ * into a discarding stream, which is how a normal run logs.
+ *
+ * usage: java EventLogBenchmark [events-per-thread]
+ */
+public class EventLogBenchmark {
+
+    private enum Mode { unstamped, stamped, printed }
+
+    private static List<SimulationEvent> unstampedEvents;
+
+    // Simulation.logEvent without the stamp
+    private synchronized static void logUnstamped(SimulationEvent event) {
+        unstampedEvents.add(event);
+    }
+
+    // Returns nanoseconds per logged event
+    private static double round(int numThreads, final int eventsPerThread, final Mode mode)
+            throws InterruptedException {
+        Simulation.beginEventLog();
+        Simulation.setEchoEvents(mode == Mode.printed);
+        unstampedEvents = Collections.synchronizedList(new ArrayList<SimulationEvent>());
+        final Cook cook = new Cook(0, new Random(0));
+
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        if (mode == Mode.unstamped) {
+                            logUnstamped(SimulationEvent.cookStarting(cook));
+                        } else {
+                            Simulation.logEvent(SimulationEvent.cookStarting(cook));
+                        }
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return (double) (System.nanoTime() - start) / ((long) numThreads * eventsPerThread);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int eventsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rounds = 5;
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // Warm up every path
+        for (int i = 0; i < rounds; i++) {
+            for (Mode mode : Mode.values()) {
+                round(4, eventsPerThread, mode);
+            }
+        }
+
+        out.println(String.format("%7s %14s %14s %9s %14s", "threads", "unstamped ns", "stamped ns", "overhead", "printed ns"));
+        for (int numThreads = 1; numThreads <= 64; numThreads *= 2) {
+            // Alternate the paths and keep the best round of each
+            double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+            for (int i = 0; i < rounds; i++) {
+                for (Mode mode : Mode.values()) {
+                    best[mode.ordinal()] = Math.min(best[mode.ordinal()], round(numThreads, eventsPerThread, mode));
+                }
+            }
+            double unstamped = best[Mode.unstamped.ordinal()];
+            double stamped = best[Mode.stamped.ordinal()];
+            out.println(String.format("%7d %14.1f %14.1f %8.1f%% %14.1f",
+                    numThreads, unstamped, stamped, 100 * (stamped - unstamped) / unstamped,
+                    best[Mode.printed.ordinal()]));
+        }
+        System.setOut(out);
+        Simulation.setEchoEvents(true);
+    }
+}
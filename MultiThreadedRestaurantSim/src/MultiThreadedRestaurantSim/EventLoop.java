@@ -0,0 +1,245 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Runs the simulation's actors as state machines on a small fixed pool of
+ * threads, instead of on a thread each.  Customers spend nearly all their
+ * visit waiting, and a thread each pins a stack and a native thread for
+ * every one of them; on the loops a waiting actor is a parked object.
+ *
+ * An actor's step moves it on as far as it can go without waiting, and
+ * says whether to run it again (yield), to park it until something wakes
+ * it, or that it is done.  A customer steps through arriving, in line,
+ * seated with its order placed, and gone once it has its order; a cook
+ * claims orders while it has room, starts the steps of its orders as
+ * machine slots free, collects them when done, and completes its orders.
+ * Whatever an actor waits on wakes it: a table freeing, its order being
+ * completed, an order being placed, a machine slot freeing or an item
+ * being done, and a customer's patience running out.
+ *
+ * Each actor belongs to one loop, so it never runs on two threads at once
+ * and its steps see each other's writes.  A loop runs the actors in its
+ * readiness queue in turn, and between them the timers that are due,
+ * which stand in for the sleep of an item cooking.  Waking an actor that
+ * is running makes it run again once its step is over, so a wake is
+ * never lost between an actor finding it has to wait and parking.
+ */
+public class EventLoop {
+
+    /** What an actor does after a step. */
+    enum Next { yield, park, done }
+
+    // States of an actor
+    private static final int PARKED = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int WOKEN = 3;
+    private static final int DONE = 4;
+
+    /**
+     * An actor the loops run.  Its state moves from queued to running, and
+     * from there to parked, queued again, or done; a wake moves it from
+     * parked to queued, or from running to woken.
+     */
+    abstract static class Actor {
+        private static final AtomicIntegerFieldUpdater<Actor> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Actor.class, "state");
+
+        private volatile int state = QUEUED;
+        private Loop home;
+        private CountDownLatch done;
+
+        /**
+         * Moves the actor on as far as it can go without waiting.
+         */
+        abstract Next step();
+    }
+
+    private final Loop[] loops;
+    private int nextLoop = 0;
+
+    /**
+     * @param threads event-loop threads to run the actors on
+     */
+    EventLoop(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An event loop needs a thread");
+        }
+        loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new Loop("Event loop " + i);
+        }
+    }
+
+    int threads() {
+        return loops.length;
+    }
+
+    /**
+     * Starts the loops' threads.
+     */
+    void open() {
+        for (Loop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /**
+     * Stops the loops once they have nothing left to run, and waits for
+     * their threads.  Call once every actor is done.
+     */
+    void close() throws InterruptedException {
+        for (Loop loop : loops) {
+            loop.close();
+        }
+        for (Loop loop : loops) {
+            loop.join();
+        }
+    }
+
+    /**
+     * Starts an actor on the next loop in turn, counting done down once it
+     * is done.
+     */
+    void start(Actor actor, CountDownLatch done) {
+        actor.home = loops[nextLoop];
+        actor.done = done;
+        nextLoop = (nextLoop + 1) % loops.length;
+        actor.home.submit(actor);
+    }
+
+    /**
+     * Has a parked actor run again, or a running one run again once its
+     * step is over.  Waking an actor that is queued or done does nothing.
+     */
+    static void wake(Actor actor) {
+        while (true) {
+            int state = actor.state;
+            if (state == PARKED) {
+                if (Actor.STATE.compareAndSet(actor, PARKED, QUEUED)) {
+                    actor.home.submit(actor);
+                    return;
+                }
+            } else if (state == RUNNING) {
+                if (Actor.STATE.compareAndSet(actor, RUNNING, WOKEN)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the calling loop once delayMs has passed.  Only an
+     * actor's step may call this.
+     */
+    static void after(long delayMs, Runnable task) {
+        Loop loop = (Loop) Thread.currentThread();
+        loop.timers.add(new Timer(System.nanoTime() + delayMs * 1000000L, loop.timersSet++, task));
+    }
+
+    // A task due at a time, in the order set among tasks due at the same time
+    private static class Timer implements Comparable<Timer> {
+        final long dueNs;
+        final long seq;
+        final Runnable task;
+
+        Timer(long dueNs, long seq, Runnable task) {
+            this.dueNs = dueNs;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        public int compareTo(Timer other) {
+            if (dueNs != other.dueNs) {
+                return Long.compare(dueNs, other.dueNs);
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+
+    private static class Loop extends Thread {
+        // Actors ready to run, in the order they became ready; guarded by the loop's monitor
+        private final ArrayDeque<Actor> ready = new ArrayDeque<Actor>();
+        // Timers set by the loop's actors; only the loop's thread touches them
+        private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+        private long timersSet = 0;
+        // Guarded by the loop's monitor
+        private boolean closing = false;
+
+        Loop(String name) {
+            super(name);
+        }
+
+        synchronized void submit(Actor actor) {
+            ready.add(actor);
+            // The loop only waits with nothing ready
+            if (ready.size() == 1) {
+                notify();
+            }
+        }
+
+        synchronized void close() {
+            closing = true;
+            notify();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    while (!timers.isEmpty() && timers.peek().dueNs <= now) {
+                        timers.poll().task.run();
+                    }
+                    Actor actor;
+                    synchronized (this) {
+                        actor = ready.poll();
+                        if (actor == null) {
+                            if (timers.isEmpty()) {
+                                if (closing) {
+                                    return;
+                                }
+                                wait();
+                            } else {
+                                long waitNs = timers.peek().dueNs - System.nanoTime();
+                                if (waitNs > 0) {
+                                    wait(waitNs / 1000000, (int) (waitNs % 1000000));
+                                }
+                            }
+                            continue;
+                        }
+                    }
+                    run(actor);
+                }
+            } catch (InterruptedException e) {
+                System.out.println("Event loop interrupted.");
+            }
+        }
+
+        // Runs one step of the actor, and queues it again, parks it or finishes it
+        private void run(Actor actor) {
+            actor.state = RUNNING;
+            Next next;
+            try {
+                next = actor.step();
+            } catch (RuntimeException e) {
+                // As if the actor's own thread had died of it
+                e.printStackTrace();
+                next = Next.done;
+            }
+            if (next == Next.done) {
+                actor.state = DONE;
+                actor.done.countDown();
+            } else if (next == Next.yield || !Actor.STATE.compareAndSet(actor, RUNNING, PARKED)) {
+                // Woken while running, so it may have missed what it was about to wait for
+                actor.state = QUEUED;
+                submit(actor);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures what scheduling the actors costs on a thread each against on
+ * event loops, one per core, as the customers grow tenfold from 1000 to
+ * max-customers.  The kitchen makes one 1 ms item per order on a station
+ * with slots to spare, so a run goes mostly on the actors' scheduling and
+ * waits rather than on cooking.  Each run reports its wall time, the CPU
+ * time of the process per customer, the most threads alive at once, and
+ * whether its log validated.
+ *
+ * A thread per actor starts every customer's thread at once, so it only
+ * runs up to max-thread-customers, past which it runs out of native
+ * threads.  A million customers log some fifteen million events, so give
+ * the JVM a heap of about 4 GB for them.
+ *
+ * usage: java EventLoopBenchmark [max-customers] [max-thread-customers] [cooks] [tables] [cook-orders] [seed]
+ */
+public class EventLoopBenchmark {
+
+    private static final String KITCHEN = String.join("\n",
+            "food soda 1",
+            "station Fountain 1000 soda");
+
+    public static void main(String[] args) throws IOException {
+        int maxCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int maxThreadCustomers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int numCooks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int numTables = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int cookOrders = args.length > 4 ? Integer.parseInt(args[4]) : 250;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+        int loopThreads = Runtime.getRuntime().availableProcessors();
+        Kitchen kitchen = Kitchen.read(new BufferedReader(new StringReader(KITCHEN)), "benchmark kitchen");
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        PrintStream out = System.out;
+        out.println(String.format("%d cooks of up to %d orders, %d tables, %d event-loop threads, seed %d",
+                numCooks, cookOrders, numTables, loopThreads, seed));
+        out.println(String.format("%-16s %10s %10s %14s %14s %8s %6s",
+                "runtime", "customers", "wall ms", "wall us/cust", "cpu us/cust", "threads", "valid"));
+        Simulation.setCookOrderLimit(cookOrders);
+        try {
+            for (int numCustomers = 1000; numCustomers <= maxCustomers; numCustomers *= 10) {
+                for (int eventLoop = 0; eventLoop <= 1; eventLoop++) {
+                    if (eventLoop == 0 && numCustomers > maxThreadCustomers) {
+                        out.println(String.format("%-16s %10d %10s", "thread per actor", numCustomers, "skipped"));
+                        continue;
+                    }
+                    Simulation.setEventLoop(eventLoop == 1 ? loopThreads : 0);
+                    Simulation.setSeed(seed);
+                    System.gc();
+                    threads.resetPeakThreadCount();
+                    Simulation.QuietRun run = Simulation.runQuietly(kitchen, numCustomers, numCooks, numTables, false);
+                    out.println(String.format("%-16s %10d %10.0f %14.2f %14.2f %8d %6s",
+                            eventLoop == 1 ? "event loop" : "thread per actor", numCustomers, run.wallNs / 1e6,
+                            run.wallNs / 1e3 / numCustomers, run.cpuNs / 1e3 / numCustomers, threads.getPeakThreadCount(),
+                            run.valid));
+                }
+            }
+        } finally {
+            Simulation.setCookOrderLimit(1);
+            Simulation.setEventLoop(0);
+        }
+    }
+}
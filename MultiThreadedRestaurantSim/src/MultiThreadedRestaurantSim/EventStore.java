@@ -0,0 +1,676 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A finished run's events, stored by column for analytics: one primitive
+ * array each for the event type, the timestamp, the ids of the cook,
+ * customer, machine and food, and the order number, with NONE where an
+ * event has no such value.  Cooks, machines and foods keep their own ids;
+ * customers are numbered in the order they first appear.
+ *
+ * Events are kept in log order, in which timestamps never decrease, so a
+ * time range is found by binary search.  Each of the type, order, cook,
+ * customer and machine columns also has an index listing, for every
+ * value, the rows holding it in log order.  A query starts from the
+ * shortest of the index lists its conditions select, narrowed to its
+ * time range by binary search, and only checks its other conditions on
+ * those rows, so it takes time in the rows it selects rather than in the
+ * size of the store.
+ *
+ * A store can be saved to a file and loaded back; the indexes are not
+ * saved, but rebuilt in one pass on loading.
+ */
+public class EventStore {
+
+    /** The value of a column an event does not have. */
+    public static final int NONE = -1;
+
+    /** The columns queries can select and group on. */
+    public enum Column { type, cook, customer, machine, food, order }
+
+    private static final int MAGIC = 0x45565354;
+    private static final int VERSION = 1;
+
+    final int size;
+    private final byte[] types;
+    private final long[] times;
+    // By Column ordinal, all but type; type is kept in bytes
+    private final int[][] values;
+    // Names of the cooks, customers, machines and foods, by id
+    private final String[][] names;
+    // Index of each column by ordinal, or null for columns without one
+    private final Index[] indexes;
+
+    private EventStore(int size, byte[] types, long[] times, int[][] values, String[][] names) {
+        this.size = size;
+        this.types = types;
+        this.times = times;
+        this.values = values;
+        this.names = names;
+        this.indexes = new Index[Column.values().length];
+        for (Column column : Column.values()) {
+            if (column != Column.food) {
+                indexes[column.ordinal()] = new Index(this, column);
+            }
+        }
+    }
+
+    /**
+     * For each value of a column, the rows holding it, ascending: rows
+     * offsets[v] to offsets[v + 1] of rows.
+     */
+    private static class Index {
+        final int[] offsets;
+        final int[] rows;
+
+        Index(EventStore store, Column column) {
+            int max = -1;
+            for (int row = 0; row < store.size; row++) {
+                max = Math.max(max, store.value(column, row));
+            }
+            offsets = new int[max + 2];
+            for (int row = 0; row < store.size; row++) {
+                int value = store.value(column, row);
+                if (value != NONE) {
+                    offsets[value + 1]++;
+                }
+            }
+            for (int v = 0; v <= max; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            rows = new int[offsets[max + 1]];
+            int[] next = Arrays.copyOf(offsets, max + 1);
+            for (int row = 0; row < store.size; row++) {
+                int value = store.value(column, row);
+                if (value != NONE) {
+                    rows[next[value]++] = row;
+                }
+            }
+        }
+
+        int from(int value) {
+            return value >= 0 && value + 1 < offsets.length ? offsets[value] : 0;
+        }
+
+        int to(int value) {
+            return value >= 0 && value + 1 < offsets.length ? offsets[value + 1] : 0;
+        }
+    }
+
+    /** The value of a column at a row, NONE if the event has none. */
+    public int value(Column column, int row) {
+        return column == Column.type ? types[row] : values[column.ordinal()][row];
+    }
+
+    public SimulationEvent.EventType type(int row) {
+        return SimulationEvent.EventType.values()[types[row]];
+    }
+
+    /** Nanoseconds since the run started. */
+    public long timeNs(int row) {
+        return times[row];
+    }
+
+    /** The name of a cook, customer, machine or food by its id, or of an event type by its ordinal. */
+    public String name(Column column, int id) {
+        if (column == Column.type) {
+            return SimulationEvent.EventType.values()[id].toString();
+        }
+        if (column == Column.order) {
+            return "order " + id;
+        }
+        String[] table = names[column.ordinal()];
+        return id >= 0 && id < table.length && table[id] != null ? table[id] : "#" + id;
+    }
+
+    /** One line describing the event at a row. */
+    public String describe(int row) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%.3f ms %s", times[row] / 1e6, type(row)));
+        for (Column column : Column.values()) {
+            int value = value(column, row);
+            if (column != Column.type && value != NONE) {
+                sb.append(' ').append(name(column, value));
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Starts a query over the whole store. */
+    public Query query() {
+        return new Query();
+    }
+
+    /**
+     * A selection of events: those with given values in some columns,
+     * within a time range.  Conditions are added by chaining.
+     */
+    public class Query {
+        private final int[] equals = new int[Column.values().length];
+        private long fromNs = Long.MIN_VALUE;
+        private long toNs = Long.MAX_VALUE;
+
+        private Query() {
+            Arrays.fill(equals, Integer.MIN_VALUE);
+        }
+
+        /** Selects events with the given value in column. */
+        public Query where(Column column, int value) {
+            equals[column.ordinal()] = value;
+            return this;
+        }
+
+        public Query type(SimulationEvent.EventType type) {
+            return where(Column.type, type.ordinal());
+        }
+
+        /** Selects events from fromNs, inclusive, to toNs, exclusive. */
+        public Query between(long fromNsIn, long toNsIn) {
+            fromNs = fromNsIn;
+            toNs = toNsIn;
+            return this;
+        }
+
+        /** The selected rows, in log order. */
+        public int[] rows() {
+            int[] rows = new int[16];
+            int count = 0;
+            Candidates candidates = candidates();
+            for (int i = candidates.from; i < candidates.to; i++) {
+                int row = candidates.row(i);
+                if (matches(row)) {
+                    if (count == rows.length) {
+                        rows = Arrays.copyOf(rows, count * 2);
+                    }
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        /** How many events are selected. */
+        public int count() {
+            Candidates candidates = candidates();
+            if (candidates.exact) {
+                return candidates.to - candidates.from;
+            }
+            int count = 0;
+            for (int i = candidates.from; i < candidates.to; i++) {
+                if (matches(candidates.row(i))) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * How many selected events have each value of column, indexed by
+         * value; events without a value are not counted.
+         */
+        public int[] countBy(Column column) {
+            int[] counts = new int[16];
+            Candidates candidates = candidates();
+            for (int i = candidates.from; i < candidates.to; i++) {
+                int row = candidates.row(i);
+                if (matches(row)) {
+                    int value = value(column, row);
+                    if (value != NONE) {
+                        if (value >= counts.length) {
+                            counts = Arrays.copyOf(counts, Math.max(value + 1, counts.length * 2));
+                        }
+                        counts[value]++;
+                    }
+                }
+            }
+            int length = counts.length;
+            while (length > 0 && counts[length - 1] == 0) {
+                length--;
+            }
+            return Arrays.copyOf(counts, length);
+        }
+
+        // Whether a row meets every condition; time is met by every candidate
+        private boolean matches(int row) {
+            for (Column column : Column.values()) {
+                int wanted = equals[column.ordinal()];
+                if (wanted != Integer.MIN_VALUE && value(column, row) != wanted) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // The shortest index list the conditions select, or all rows, narrowed to the time range
+        private Candidates candidates() {
+            Candidates best = null;
+            int conditions = 0;
+            for (Column column : Column.values()) {
+                int wanted = equals[column.ordinal()];
+                if (wanted == Integer.MIN_VALUE) {
+                    continue;
+                }
+                conditions++;
+                Index index = indexes[column.ordinal()];
+                if (index != null && (best == null || index.to(wanted) - index.from(wanted) < best.to - best.from)) {
+                    best = new Candidates(index.rows, index.from(wanted), index.to(wanted));
+                }
+            }
+            if (best == null) {
+                best = new Candidates(null, 0, size);
+            }
+            best.from = firstAtOrAfter(best, best.from, best.to, fromNs);
+            best.to = firstAtOrAfter(best, best.from, best.to, toNs);
+            // With no condition but the one its index answers, every candidate is selected
+            best.exact = conditions == (best.rows != null ? 1 : 0);
+            return best;
+        }
+
+        // The first position from lo to hi whose row's time is at least timeNs
+        private int firstAtOrAfter(Candidates candidates, int lo, int hi, long timeNs) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[candidates.row(mid)] < timeNs) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    // Positions from to to of an index list, or of all rows when rows is null
+    private static class Candidates {
+        final int[] rows;
+        int from;
+        int to;
+        boolean exact;
+
+        Candidates(int[] rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        int row(int i) {
+            return rows != null ? rows[i] : i;
+        }
+    }
+
+    /**
+     * Builds a store row by row.  Rows must be added in order of time.
+     */
+    public static class Builder {
+        private int size;
+        private byte[] types = new byte[1024];
+        private long[] times = new long[1024];
+        private final int[][] values = new int[Column.values().length][1024];
+        private final String[][] names = new String[Column.values().length][];
+
+        public Builder() {
+            for (int c = 0; c < names.length; c++) {
+                names[c] = new String[0];
+            }
+        }
+
+        /** Adds an event; pass NONE for the values it does not have. */
+        public Builder add(SimulationEvent.EventType type, long timeNs, int cook, int customer, int machine, int food, int order) {
+            if (size > 0 && timeNs < times[size - 1]) {
+                throw new IllegalArgumentException("Events must be added in order of time");
+            }
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                times = Arrays.copyOf(times, capacity);
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = Arrays.copyOf(values[c], capacity);
+                }
+            }
+            types[size] = (byte) type.ordinal();
+            times[size] = timeNs;
+            values[Column.cook.ordinal()][size] = cook;
+            values[Column.customer.ordinal()][size] = customer;
+            values[Column.machine.ordinal()][size] = machine;
+            values[Column.food.ordinal()][size] = food;
+            values[Column.order.ordinal()][size] = order;
+            size++;
+            return this;
+        }
+
+        /** Names the cook, customer, machine or food with the given id. */
+        public Builder name(Column column, int id, String name) {
+            String[] table = names[column.ordinal()];
+            if (id >= table.length) {
+                table = names[column.ordinal()] = Arrays.copyOf(table, Math.max(id + 1, table.length * 2));
+            }
+            table[id] = name;
+            return this;
+        }
+
+        public EventStore build() {
+            int[][] trimmed = new int[values.length][];
+            for (int c = 0; c < values.length; c++) {
+                trimmed[c] = Arrays.copyOf(values[c], size);
+            }
+            return new EventStore(size, Arrays.copyOf(types, size), Arrays.copyOf(times, size), trimmed, names);
+        }
+    }
+
+    /**
+     * Builds a store from a finished run's events.
+     */
+    public static EventStore of(List<SimulationEvent> events) {
+        Builder builder = new Builder();
+        IdentityHashMap<Customer, Integer> customers = new IdentityHashMap<Customer, Integer>();
+        synchronized (events) {
+            for (SimulationEvent e : events) {
+                int cook = NONE;
+                int customer = NONE;
+                int machine = NONE;
+                int food = NONE;
+                if (e.cook != null) {
+                    cook = e.cook.id;
+                    builder.name(Column.cook, cook, e.cook.toString());
+                }
+                if (e.customer != null) {
+                    Integer id = customers.get(e.customer);
+                    if (id == null) {
+                        id = customers.size();
+                        customers.put(e.customer, id);
+                        builder.name(Column.customer, id, e.customer.toString());
+                    }
+                    customer = id;
+                }
+                if (e.machine != null) {
+                    machine = e.machine.id;
+                    builder.name(Column.machine, machine, e.machine.toString());
+                }
+                if (e.food != null) {
+                    food = e.food.id;
+                    builder.name(Column.food, food, e.food.toString());
+                }
+                // Order numbers start at 1; 0 is no order
+                builder.add(e.event, e.timeNs(), cook, customer, machine, food,
+                        e.orderNumber > 0 ? e.orderNumber : NONE);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Saves the store to a file: a header with the names, then each
+     * column whole.
+     */
+    public void save(Path path) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(size);
+        for (String[] table : names) {
+            header.writeInt(table.length);
+            for (String name : table) {
+                header.writeUTF(name != null ? name : "");
+            }
+        }
+        header.flush();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(headerBytes.size());
+            flush(channel, buffer);
+            channel.write(ByteBuffer.wrap(headerBytes.toByteArray()));
+            for (int i = 0; i < size; ) {
+                int n = Math.min(size - i, buffer.remaining());
+                buffer.put(types, i, n);
+                i += n;
+                flush(channel, buffer);
+            }
+            for (int i = 0; i < size; ) {
+                int n = Math.min(size - i, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(times, i, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                i += n;
+                flush(channel, buffer);
+            }
+            for (Column column : Column.values()) {
+                if (column == Column.type) {
+                    continue;
+                }
+                int[] columnValues = values[column.ordinal()];
+                for (int i = 0; i < size; ) {
+                    int n = Math.min(size - i, buffer.remaining() / Integer.BYTES);
+                    buffer.asIntBuffer().put(columnValues, i, n);
+                    buffer.position(buffer.position() + n * Integer.BYTES);
+                    i += n;
+                    flush(channel, buffer);
+                }
+            }
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Loads a store saved by save(), rebuilding its indexes.
+     *
+     * @throws IOException if the file cannot be read or is not a saved store
+     */
+    public static EventStore load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            fill(channel, buffer, Integer.BYTES);
+            byte[] headerBytes = new byte[buffer.getInt()];
+            fill(channel, ByteBuffer.wrap(headerBytes), headerBytes.length);
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IOException(path + " is not a saved event store");
+            }
+            int size = header.readInt();
+            String[][] names = new String[Column.values().length][];
+            for (int c = 0; c < names.length; c++) {
+                names[c] = new String[header.readInt()];
+                for (int i = 0; i < names[c].length; i++) {
+                    String name = header.readUTF();
+                    names[c][i] = name.isEmpty() ? null : name;
+                }
+            }
+            byte[] types = new byte[size];
+            for (int i = 0; i < size; ) {
+                int n = Math.min(size - i, buffer.capacity());
+                fill(channel, buffer, n);
+                buffer.get(types, i, n);
+                i += n;
+            }
+            long[] times = new long[size];
+            for (int i = 0; i < size; ) {
+                int n = Math.min(size - i, buffer.capacity() / Long.BYTES);
+                fill(channel, buffer, n * Long.BYTES);
+                buffer.asLongBuffer().get(times, i, n);
+                i += n;
+            }
+            int[][] values = new int[Column.values().length][];
+            for (Column column : Column.values()) {
+                if (column == Column.type) {
+                    continue;
+                }
+                int[] columnValues = values[column.ordinal()] = new int[size];
+                for (int i = 0; i < size; ) {
+                    int n = Math.min(size - i, buffer.capacity() / Integer.BYTES);
+                    fill(channel, buffer, n * Integer.BYTES);
+                    buffer.asIntBuffer().get(columnValues, i, n);
+                    i += n;
+                }
+            }
+            return new EventStore(size, types, times, values, names);
+        }
+    }
+
+    // Reads exactly n bytes into buffer, ready to be read
+    private static void fill(FileChannel channel, ByteBuffer buffer, int n) throws IOException {
+        buffer.clear();
+        buffer.limit(n);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Saved event store ends early");
+            }
+        }
+        buffer.flip();
+    }
+
+    // Rows matching a query, by reading every row
+    private int[] scan(int type, int machine, int order, long fromNs, long toNs) {
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if ((type < 0 || types[row] == type) && (machine < 0 || values[Column.machine.ordinal()][row] == machine)
+                    && (order < 0 || values[Column.order.ordinal()][row] == order)
+                    && times[row] >= fromNs && times[row] < toNs) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // A store of n events shaped like a long run: orders of a few items, each cooked on a machine
+    private static EventStore synthetic(int n, Random rnd) {
+        Builder builder = new Builder();
+        String[] machineNames = Kitchen.STANDARD_STATIONS;
+        for (int m = 0; m < machineNames.length; m++) {
+            builder.name(Column.machine, m, machineNames[m]);
+            builder.name(Column.food, m, Kitchen.standard(1).foods[m].toString());
+        }
+        long timeNs = 0;
+        int order = 0;
+        int added = 0;
+        while (added < n) {
+            order++;
+            int cook = rnd.nextInt(100);
+            int customer = order - 1;
+            timeNs += rnd.nextInt(100000);
+            builder.add(SimulationEvent.EventType.CustomerPlacedOrder, timeNs, NONE, customer, NONE, NONE, order);
+            builder.add(SimulationEvent.EventType.CookReceivedOrder, timeNs += 1000, cook, NONE, NONE, NONE, order);
+            added += 2;
+            int items = 1 + rnd.nextInt(4);
+            for (int i = 0; i < items && added < n; i++) {
+                int machine = rnd.nextInt(machineNames.length);
+                builder.add(SimulationEvent.EventType.MachineStartingFood, timeNs += 1000, NONE, NONE, machine, machine, order);
+                builder.add(SimulationEvent.EventType.MachineDoneFood, timeNs += rnd.nextInt(1000000), NONE, NONE, machine, machine, order);
+                added += 2;
+            }
+            if (added < n) {
+                builder.add(SimulationEvent.EventType.CookCompletedOrder, timeNs += 1000, cook, NONE, NONE, NONE, order);
+                added++;
+            }
+        }
+        return builder.build();
+    }
+
+    private static double msSince(long startNs) {
+        return (System.nanoTime() - startNs) / 1e6;
+    }
+
+    /**
+     * Checks the store against a real run, then times queries on a large
+     * synthetic store against scanning its columns, and saving and loading
+     * it.
+     *
+     * usage: java EventStore [events] [file]
+     */
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        Path file = args.length > 1 ? Paths.get(args[1]) : Paths.get(System.getProperty("java.io.tmpdir"), "events.store");
+
+        PrintStream out = System.out;
+        Simulation.setSeed(1);
+        List<SimulationEvent> events = Simulation.runQuietly(Kitchen.standard(4), 10, 3, 5, true).events;
+        EventStore run = EventStore.of(events);
+        int placed = 0;
+        for (SimulationEvent e : events) {
+            if (e.event == SimulationEvent.EventType.CustomerPlacedOrder) {
+                placed++;
+            }
+        }
+        out.println(String.format("Run of %d events: %d orders placed, store counts %d", run.size, placed,
+                run.query().type(SimulationEvent.EventType.CustomerPlacedOrder).count()));
+        int[] firstOrder = run.query().where(Column.order, 1).rows();
+        out.println("Order 1, placed by " + run.name(Column.customer, run.value(Column.customer, firstOrder[0]))
+                + ", took " + firstOrder.length + " events:");
+        int[] byTypeOfOrder = run.query().where(Column.order, 1).countBy(Column.type);
+        for (int type = 0; type < byTypeOfOrder.length; type++) {
+            if (byTypeOfOrder[type] > 0) {
+                out.println(String.format("  %-22s %d", run.name(Column.type, type), byTypeOfOrder[type]));
+            }
+        }
+        out.println("  last: " + run.describe(firstOrder[firstOrder.length - 1]));
+
+        long start = System.nanoTime();
+        EventStore store = synthetic(n, new Random(1));
+        out.println(String.format("Built %d synthetic events in %.0f ms", store.size, msSince(start)));
+        long endNs = store.times[store.size - 1];
+        long fromNs = endNs / 2;
+        long toNs = fromNs + endNs / 100;
+        int order = store.values[Column.order.ordinal()][store.size / 3];
+        int oven = 1;
+        int doneType = SimulationEvent.EventType.MachineDoneFood.ordinal();
+
+        out.println(String.format("%-44s %10s %12s %12s", "query", "rows", "indexed ms", "scan ms"));
+        start = System.nanoTime();
+        int[] byOrder = store.query().where(Column.order, order).rows();
+        double indexedMs = msSince(start);
+        start = System.nanoTime();
+        int[] scanned = store.scan(-1, -1, order, Long.MIN_VALUE, Long.MAX_VALUE);
+        out.println(String.format("%-44s %10d %12.3f %12.3f%s", "all events of order " + order, byOrder.length,
+                indexedMs, msSince(start), Arrays.equals(byOrder, scanned) ? "" : "  MISMATCH"));
+
+        start = System.nanoTime();
+        int[] done = store.query().type(SimulationEvent.EventType.MachineDoneFood).where(Column.machine, oven)
+                .between(fromNs, toNs).rows();
+        indexedMs = msSince(start);
+        start = System.nanoTime();
+        scanned = store.scan(doneType, oven, -1, fromNs, toNs);
+        out.println(String.format("%-44s %10d %12.3f %12.3f%s", "MachineDoneFood on Oven over 1% of the run",
+                done.length, indexedMs, msSince(start), Arrays.equals(done, scanned) ? "" : "  MISMATCH"));
+
+        start = System.nanoTime();
+        int[] byType = store.query().between(fromNs, toNs).countBy(Column.type);
+        indexedMs = msSince(start);
+        start = System.nanoTime();
+        int total = store.scan(-1, -1, -1, fromNs, toNs).length;
+        out.println(String.format("%-44s %10d %12.3f %12.3f%s", "count by type over 1% of the run",
+                Arrays.stream(byType).sum(), indexedMs, msSince(start),
+                Arrays.stream(byType).sum() == total ? "" : "  MISMATCH"));
+
+        start = System.nanoTime();
+        store.save(file);
+        out.println(String.format("Saved to %s (%d MB) in %.0f ms", file, file.toFile().length() >> 20, msSince(start)));
+        start = System.nanoTime();
+        EventStore loaded = load(file);
+        out.println(String.format("Loaded in %.0f ms; order %d has %d events after loading", msSince(start), order,
+                loaded.query().where(Column.order, order).count()));
+    }
+}
@@ -1,20 +1,24 @@
-package MultiThreadedRestaurantSim;
-
-/**
- * Food is what is prepared by Cooks, and ordered by Customers.  Food
- * is defined by its name, and the amount of time it takes to prepare
- * by Machine.  It is an immutable class.
- */
-public class Food {
-	final String name;
-	final int cookTimeS;
-
-	Food(String name, int cookTimeS) {
-		this.name = name;
-		this.cookTimeS = cookTimeS;
-	}
-
-	public String toString() {
-		return name;
-	}
+package MultiThreadedRestaurantSim;
+
+/**
+ * Food is what is prepared by Cooks, and ordered by Customers.  Food
+ * is defined by its name, and the amount of time it takes to prepare
+ * by Machine.  Each Food also carries a dense id, its index in the
+ * Kitchen's menu, so per-food lookups can be done with plain arrays.
+ * It is an immutable class.
+ */
+public class Food {
+	final int id;
+	final String name;
+	final int cookTimeS;
+
+	Food(int id, String name, int cookTimeS) {
+		this.id = id;
+		this.name = name;
+		this.cookTimeS = cookTimeS;
+	}
+
+	public String toString() {
+		return name;
+	}
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
-package MultiThreadedRestaurantSim;
-
-class FoodType {
-	static final Food wings = new Food("wings",350);
-	static final Food pizza = new Food("pizza",600);
-	static final Food sub = new Food("sub",200);
-	static final Food soda = new Food("soda",15);
-}
+package MultiThreadedRestaurantSim;
+
+/**
+ * The menu of the standard kitchen.  Kitchens loaded from a definition
+ * file build their own Food instances; see Kitchen.
+ */
+class FoodType {
+	static final Food wings = new Food(0, "wings",350);
+	static final Food pizza = new Food(1, "pizza",600);
+	static final Food sub = new Food(2, "sub",200);
+	static final Food soda = new Food(3, "soda",15);
+}
@@ -0,0 +1,361 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hot-holding cache of ready-made food.  While a machine is idle, the
+ * holding thread has it make items speculatively, and keeps them hot in a
+ * bin per food.  A cook who starts an order first looks in the bins, and
+ * an item it finds there counts as cooked at once, taking the item off
+ * the order's critical path.
+ *
+ * What to make comes from a forecast over the last WINDOW orders placed:
+ * each food's count in them, scaled by their rate, gives the number of
+ * that food expected to be ordered within one hold time, and a bin is
+ * topped up to that many items, up to perFoodCapacity.  An item held for
+ * longer than holdMs expires.  Once all bins together hold capacity
+ * items, a food short of its forecast is only made if another food holds
+ * more than its own, and stocking it evicts the oldest item of such a
+ * food.  Expired and evicted items are waste, as are the items left when
+ * the restaurant closes.
+ *
+ * Only foods made in a single step are held.  A HotHolding's state is
+ * guarded by its own monitor.
+ */
+public class HotHolding implements Runnable {
+
+    /** Orders placed that the forecast looks back over. */
+    static final int WINDOW = 20;
+    /** How often the holding thread expires items and looks for idle machines. */
+    static final long TICK_MS = 5;
+    // Items started between sweeps of those already made out of the threads to wait for
+    private static final int ITEM_SWEEP = 256;
+
+    final int perFoodCapacity;
+    final int capacity;
+    final long holdMs;
+    final LockProfiler.LockStats monitorStats = new LockProfiler.LockStats("hotHolding");
+
+    private Kitchen kitchen;
+    private Machine[] machines;
+    // Per food, by Food.id: when each held item was stocked, oldest first, and how many are being made
+    private ArrayDeque<Long>[] bins;
+    private int[] making;
+    private int held;
+    // The last WINDOW orders placed, as the time placed and the count of each food
+    private long[] windowTimes;
+    private int[][] windowCounts;
+    private int[] windowTotals;
+    private int windowSize;
+    private int windowNext;
+
+    private Thread holdingThread;
+    private volatile boolean open;
+    // Threads of items being made for holding, for close() to wait for
+    private final List<Thread> itemThreads = new ArrayList<Thread>();
+
+    // Totals of the run
+    private int made;
+    private int hits;
+    private int misses;
+    private int expired;
+    private int evicted;
+    private long savedMs;
+
+    /**
+     * @param perFoodCapacity items each food's bin holds at most
+     * @param capacity items all bins together hold at most
+     * @param holdMs how long an item stays good once made
+     */
+    public HotHolding(int perFoodCapacity, int capacity, long holdMs) {
+        if (perFoodCapacity < 1 || capacity < 1 || holdMs < 1) {
+            throw new IllegalArgumentException("Hot holding needs a positive capacity and hold time");
+        }
+        this.perFoodCapacity = perFoodCapacity;
+        this.capacity = capacity;
+        this.holdMs = holdMs;
+    }
+
+    /**
+     * Empties the bins and forecast before a run, and starts the holding
+     * thread for the run's machines.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void open(Kitchen kitchenIn, Machine[] machinesIn) {
+        kitchen = kitchenIn;
+        machines = machinesIn;
+        int numFoods = kitchen.foods.length;
+        bins = (ArrayDeque<Long>[]) new ArrayDeque<?>[numFoods];
+        for (int f = 0; f < numFoods; f++) {
+            bins[f] = new ArrayDeque<Long>();
+        }
+        making = new int[numFoods];
+        held = 0;
+        windowTimes = new long[WINDOW];
+        windowCounts = new int[WINDOW][numFoods];
+        windowTotals = new int[numFoods];
+        windowSize = 0;
+        windowNext = 0;
+        itemThreads.clear();
+        made = hits = misses = expired = evicted = 0;
+        savedMs = 0;
+
+        open = true;
+        holdingThread = new Thread(this, "Hot holding");
+        holdingThread.setDaemon(true);
+        holdingThread.start();
+    }
+
+    /**
+     * Stops the holding thread, waits for the items being made, and
+     * discards what is left in the bins.
+     */
+    void close() throws InterruptedException {
+        open = false;
+        holdingThread.interrupt();
+        holdingThread.join();
+        List<Thread> threads;
+        synchronized (this) {
+            threads = new ArrayList<Thread>(itemThreads);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                for (Food food : kitchen.foods) {
+                    while (!bins[food.id].isEmpty()) {
+                        bins[food.id].poll();
+                        held--;
+                        expired++;
+                        Simulation.logEvent(SimulationEvent.heldFoodExpired(food));
+                    }
+                }
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    public void run() {
+        try {
+            while (open) {
+                Thread.sleep(TICK_MS);
+                expire();
+                for (Machine machine : machines) {
+                    if (machine.itemsCooking == 0) {
+                        Kitchen.Step step = nextToMake(machine);
+                        if (step != null) {
+                            machine.makeForHolding(step, this);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        }
+    }
+
+    /**
+     * Called when a customer places an order, to update the forecast.
+     */
+    void ordered(List<Food> order) {
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                int[] counts = windowCounts[windowNext];
+                if (windowSize == WINDOW) {
+                    for (int f = 0; f < counts.length; f++) {
+                        windowTotals[f] -= counts[f];
+                        counts[f] = 0;
+                    }
+                } else {
+                    windowSize++;
+                }
+                for (Food food : order) {
+                    counts[food.id]++;
+                    windowTotals[food.id]++;
+                }
+                windowTimes[windowNext] = System.nanoTime();
+                windowNext = (windowNext + 1) % WINDOW;
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    /**
+     * Called by a cook starting on an item of an order.  Takes an item of
+     * the food from its bin, if there is one, and returns whether it did.
+     */
+    boolean take(Cook cook, Food food, int orderNum) {
+        if (kitchen.recipe(food).length != 1) {
+            return false;
+        }
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                if (bins[food.id].isEmpty()) {
+                    misses++;
+                    return false;
+                }
+                bins[food.id].poll();
+                held--;
+                hits++;
+                savedMs += food.cookTimeS;
+                Simulation.logEvent(SimulationEvent.cookTookHeldFood(cook, food, orderNum));
+                return true;
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    /**
+     * Called by a machine when it has made an item for holding.
+     */
+    void stock(Machine machine, Food food) {
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                making[food.id]--;
+                if (held == capacity) {
+                    evictOldest();
+                }
+                bins[food.id].add(System.nanoTime());
+                held++;
+                made++;
+                Simulation.logEvent(SimulationEvent.foodHeld(machine, food));
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    /**
+     * Called by a machine starting an item for holding, with the thread
+     * making it, so close() can wait for it.
+     */
+    synchronized void making(Thread thread, Food food) {
+        itemThreads.add(thread);
+        if (itemThreads.size() % ITEM_SWEEP == 0) {
+            itemThreads.removeIf(item -> !item.isAlive());
+        }
+        making[food.id]++;
+    }
+
+    // The single-step food of the machine whose bin is furthest below its forecast, if any is
+    private synchronized Kitchen.Step nextToMake(Machine machine) {
+        if (held + sumMaking() >= capacity && surplusFood() == null) {
+            return null;
+        }
+        Kitchen.Step best = null;
+        int bestShort = 0;
+        for (Food food : machine.foods) {
+            Kitchen.Step[] recipe = kitchen.recipe(food);
+            if (recipe.length != 1) {
+                continue;
+            }
+            int shortBy = target(food) - bins[food.id].size() - making[food.id];
+            if (shortBy > bestShort) {
+                best = recipe[0];
+                bestShort = shortBy;
+            }
+        }
+        return best;
+    }
+
+    private int target(Food food) {
+        return Math.min(perFoodCapacity, forecast(food));
+    }
+
+    // Items of the food expected to be ordered within one hold time
+    private int forecast(Food food) {
+        if (windowSize == 0) {
+            return 0;
+        }
+        int oldest = windowSize == WINDOW ? windowNext : 0;
+        // A burst of orders counts as arriving over at least one hold time
+        double spanMs = Math.max(holdMs, (System.nanoTime() - windowTimes[oldest]) / 1e6);
+        return (int) (windowTotals[food.id] * holdMs / spanMs);
+    }
+
+    private int sumMaking() {
+        int sum = 0;
+        for (int count : making) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private void expire() {
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                long oldestGood = System.nanoTime() - holdMs * 1000000;
+                for (Food food : kitchen.foods) {
+                    ArrayDeque<Long> bin = bins[food.id];
+                    while (!bin.isEmpty() && bin.peek() < oldestGood) {
+                        bin.poll();
+                        held--;
+                        expired++;
+                        Simulation.logEvent(SimulationEvent.heldFoodExpired(food));
+                    }
+                }
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    // The food holding the most items beyond its forecast, if any holds more than it
+    private Food surplusFood() {
+        Food most = null;
+        int mostOver = 0;
+        for (Food food : kitchen.foods) {
+            int over = bins[food.id].size() - target(food);
+            if (over > mostOver) {
+                most = food;
+                mostOver = over;
+            }
+        }
+        return most;
+    }
+
+    // Evicts the oldest item of the food most in surplus, or the oldest item of all if none is
+    private void evictOldest() {
+        Food oldest = surplusFood();
+        if (oldest == null) {
+            for (Food food : kitchen.foods) {
+                Long stocked = bins[food.id].peek();
+                if (stocked != null && (oldest == null || stocked < bins[oldest.id].peek())) {
+                    oldest = food;
+                }
+            }
+        }
+        bins[oldest.id].poll();
+        held--;
+        evicted++;
+        Simulation.logEvent(SimulationEvent.heldFoodEvicted(oldest));
+    }
+
+    /**
+     * Summarizes the run: how many lookups the bins served, the cooking
+     * time that saved, and how much of what was made went to waste.
+     */
+    synchronized String summarize() {
+        int lookups = hits + misses;
+        return String.format("Hot holding (%d per food, %d in all, %d ms hold): %d of %d items served from holding (%.1f%% hit rate), "
+                        + "%d ms of cooking saved, %d made, %d wasted (%d expired, %d evicted)%n",
+                perFoodCapacity, capacity, holdMs, hits, lookups, lookups > 0 ? 100.0 * hits / lookups : 0,
+                savedMs, made, expired + evicted, expired, evicted);
+    }
+}
@@ -0,0 +1,531 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A Kitchen describes what a restaurant can make: its menu of Foods and
+ * the stations (Machines) that cook them, each with its own capacity.
+ * Foods and stations are numbered densely from 0 in the order they are
+ * defined, so the simulation can look them up by index instead of by name.
+ *
+ * Entries are split into fields on whitespace; a name with spaces in it,
+ * such as the standard "Grill Press", is written in double quotes.
+ *
+ * Every food is made by a recipe of one or more steps, each taking a slot
+ * on one station for some time.  Most foods have a single step on the
+ * station that serves them.  A food may instead have a recipe of several
+ * steps on different stations, such as a sub that is pressed and then
+ * baked, forming a small DAG: each step can wait on earlier steps, and
+ * the last step finishes the food.  A machine slot is only held for one
+ * step, so the steps of different items overlap like a pipeline.
+ *
+ * A kitchen is either the standard four-station kitchen or is loaded from
+ * a definition file with one entry per line:
+ *
+ *   # comment
+ *   food    <name> [<cookTimeMs>]
+ *   station <type> <machines> [<food>[,<food>...]]
+ *   step    <food> <name> <station> <timeMs> [after <step>[,<step>...]]
+ *
+ * A station's machines are given as the capacity of its one machine, or
+ * as comma-separated count x capacity terms, e.g. "1x4,2x2" for one
+ * machine of capacity 4 and two of capacity 2.  Cooks spread a station's
+ * work over its machines by the run's MachineChoice.
+ *
+ * A food with a cook time is served by exactly one station, which lists
+ * it.  A food without one is made by its steps, which are given in an
+ * order where every step only waits on steps above it, and every step but
+ * the last is waited on by a later one.  Its cook time is the longest
+ * path through its steps.  Foods must be defined before the stations that
+ * serve them, and stations before the steps that use them.  Station types
+ * must be unique, as must the step names of a food.
+ */
+public class Kitchen {
+
+    /**
+     * A station definition.  Machines are created from these at the start of
+     * every simulation run, since Machines carry per-run state.
+     */
+    static class Station {
+        final int id;
+        final String type;
+        // Foods with a step on this station, and those steps
+        final List<Food> foods;
+        final List<Step> steps = new ArrayList<Step>();
+        // Capacity of each of the station's machines, and of all of them together
+        final int[] machineCapacities;
+        final int capacity;
+
+        Station(int id, String type, List<Food> foods, int capacity) {
+            this(id, type, foods, new int[] { capacity });
+        }
+
+        Station(int id, String type, List<Food> foods, int[] machineCapacities) {
+            this.id = id;
+            this.type = type;
+            this.foods = foods;
+            this.machineCapacities = machineCapacities;
+            int total = 0;
+            for (int machineCapacity : machineCapacities) {
+                total += machineCapacity;
+            }
+            this.capacity = total;
+        }
+    }
+
+    /**
+     * One step of a food's recipe: timeMs on a slot of the station, started
+     * once the steps it comes after have finished.
+     */
+    static class Step {
+        final Food food;
+        // Position in the food's recipe, which lists steps after those they wait on
+        final int index;
+        final String name;
+        final Station station;
+        final int timeMs;
+        final Step[] after;
+        // Steps that wait on this one, and whether it finishes the food; set once the recipe is complete
+        Step[] next = new Step[0];
+        boolean last;
+
+        Step(Food food, int index, String name, Station station, int timeMs, Step[] after) {
+            this.food = food;
+            this.index = index;
+            this.name = name;
+            this.station = station;
+            this.timeMs = timeMs;
+            this.after = after;
+        }
+
+        // Whether the food is made in this one step
+        boolean only() {
+            return index == 0 && last;
+        }
+
+        public String toString() {
+            return only() ? food.name : food.name + "/" + name;
+        }
+    }
+
+    // Indexed by Food.id
+    final Food[] foods;
+    // Indexed by Station.id
+    final Station[] stations;
+    // Recipe of each food, indexed by Food.id
+    private final Step[][] recipes;
+    private final HashMap<String, Food> foodsByName = new HashMap<String, Food>();
+
+    /**
+     * @param recipes steps of each food by Food.id, or null where the food is
+     *   made in one step on the station that lists it
+     */
+    private Kitchen(List<Food> foods, List<Station> stations, Step[][] recipes) {
+        this.foods = foods.toArray(new Food[0]);
+        this.stations = stations.toArray(new Station[0]);
+        this.recipes = recipes;
+        for (Food food : this.foods) {
+            foodsByName.put(food.name, food);
+        }
+        // Foods given a recipe have a step on every station listing them
+        boolean[] hasRecipe = new boolean[this.foods.length];
+        for (Food food : this.foods) {
+            hasRecipe[food.id] = recipes[food.id] != null;
+        }
+        for (Station station : this.stations) {
+            for (Food food : station.foods) {
+                if (hasRecipe[food.id]) {
+                    continue;
+                }
+                if (recipes[food.id] != null) {
+                    throw new IllegalArgumentException(food + " is served by more than one station");
+                }
+                recipes[food.id] = new Step[] { new Step(food, 0, food.name, station, food.cookTimeS, new Step[0]) };
+            }
+        }
+        for (Food food : this.foods) {
+            if (recipes[food.id] == null) {
+                throw new IllegalArgumentException(food + " is not served by any station");
+            }
+            link(recipes[food.id]);
+            for (Step step : recipes[food.id]) {
+                step.station.steps.add(step);
+            }
+        }
+    }
+
+    // Sets the steps that wait on each step of a recipe, and marks the last
+    private static void link(Step[] recipe) {
+        for (Step step : recipe) {
+            for (Step before : step.after) {
+                before.next = Arrays.copyOf(before.next, before.next.length + 1);
+                before.next[before.next.length - 1] = step;
+            }
+        }
+        recipe[recipe.length - 1].last = true;
+    }
+
+    /** Stations of the standard kitchen, in order. */
+    static final String[] STANDARD_STATIONS = { "Fryer", "Oven", "Grill Press", "Fountain" };
+
+    /**
+     * The standard kitchen: wings, pizza, subs and soda, each cooked on its
+     * own station, with every station sharing the same capacity.
+     */
+    public static Kitchen standard(int machineCapacity) {
+        return standard(new int[] { machineCapacity, machineCapacity, machineCapacity, machineCapacity });
+    }
+
+    /**
+     * The standard kitchen with a capacity of its own for each station,
+     * given in the order of STANDARD_STATIONS.
+     */
+    public static Kitchen standard(int[] stationCapacities) {
+        if (stationCapacities.length != STANDARD_STATIONS.length) {
+            throw new IllegalArgumentException("The standard kitchen has " + STANDARD_STATIONS.length + " stations");
+        }
+        List<Food> foods = Arrays.asList(FoodType.wings, FoodType.pizza, FoodType.sub, FoodType.soda);
+        List<Station> stations = new ArrayList<Station>();
+        for (int s = 0; s < STANDARD_STATIONS.length; s++) {
+            stations.add(new Station(s, STANDARD_STATIONS[s], Arrays.asList(foods.get(s)), stationCapacities[s]));
+        }
+        return new Kitchen(foods, stations, new Step[foods.size()][]);
+    }
+
+    // A step as read from a definition file, before its food exists
+    private static class StepDefinition {
+        final String name;
+        final Station station;
+        final int timeMs;
+        final int[] after;
+
+        StepDefinition(String name, Station station, int timeMs, int[] after) {
+            this.name = name;
+            this.station = station;
+            this.timeMs = timeMs;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Loads a kitchen from a definition file.
+     *
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid definition
+     */
+    public static Kitchen load(String path) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+            return read(in, path);
+        }
+    }
+
+    /**
+     * Reads a kitchen definition, naming it by path in errors.
+     */
+    static Kitchen read(BufferedReader in, String path) throws IOException {
+        // Foods made by steps are null until their steps are known
+        List<Food> foods = new ArrayList<Food>();
+        List<String> foodNames = new ArrayList<String>();
+        List<Integer> foodLines = new ArrayList<Integer>();
+        List<List<StepDefinition>> stepDefinitions = new ArrayList<List<StepDefinition>>();
+        List<Station> stations = new ArrayList<Station>();
+        HashMap<String, Integer> byName = new HashMap<String, Integer>();
+
+        String line;
+        int lineNum = 0;
+        while ((line = in.readLine()) != null) {
+            lineNum++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            try {
+                String[] tokens = tokens(line);
+                if (tokens[0].equals("food") && (tokens.length == 2 || tokens.length == 3)) {
+                    if (byName.containsKey(tokens[1])) {
+                        throw new IllegalArgumentException("food " + tokens[1] + " defined twice");
+                    }
+                    byName.put(tokens[1], foods.size());
+                    foods.add(tokens.length == 3 ? new Food(foods.size(), tokens[1], positive(tokens[2])) : null);
+                    foodNames.add(tokens[1]);
+                    foodLines.add(lineNum);
+                    stepDefinitions.add(new ArrayList<StepDefinition>());
+                } else if (tokens[0].equals("station") && (tokens.length == 3 || tokens.length == 4)) {
+                    if (station(stations, tokens[1]) != null) {
+                        throw new IllegalArgumentException("station " + tokens[1] + " defined twice");
+                    }
+                    List<Food> served = new ArrayList<Food>();
+                    if (tokens.length == 4) {
+                        for (String name : tokens[3].split(",")) {
+                            Integer id = byName.get(name);
+                            if (id == null) {
+                                throw new IllegalArgumentException("unknown food " + name);
+                            }
+                            if (foods.get(id) == null) {
+                                throw new IllegalArgumentException("food " + name + " is made by steps, so no station serves it directly");
+                            }
+                            served.add(foods.get(id));
+                        }
+                    }
+                    stations.add(new Station(stations.size(), tokens[1], served, machineCapacities(tokens[2])));
+                } else if (tokens[0].equals("step") && (tokens.length == 5 || tokens.length == 7 && tokens[5].equals("after"))) {
+                    Integer id = byName.get(tokens[1]);
+                    if (id == null) {
+                        throw new IllegalArgumentException("unknown food " + tokens[1]);
+                    }
+                    if (foods.get(id) != null) {
+                        throw new IllegalArgumentException("food " + tokens[1] + " has a cook time, so it cannot have steps");
+                    }
+                    List<StepDefinition> recipe = stepDefinitions.get(id);
+                    if (stepIndex(recipe, tokens[2]) != -1) {
+                        throw new IllegalArgumentException("step " + tokens[2] + " of " + tokens[1] + " defined twice");
+                    }
+                    Station station = station(stations, tokens[3]);
+                    if (station == null) {
+                        throw new IllegalArgumentException("unknown station " + tokens[3]);
+                    }
+                    String[] afterNames = tokens.length == 7 ? tokens[6].split(",") : new String[0];
+                    int[] after = new int[afterNames.length];
+                    for (int i = 0; i < after.length; i++) {
+                        after[i] = stepIndex(recipe, afterNames[i]);
+                        if (after[i] == -1) {
+                            throw new IllegalArgumentException("step " + afterNames[i] + " of " + tokens[1] + " must be defined above");
+                        }
+                    }
+                    recipe.add(new StepDefinition(tokens[2], station, positive(tokens[4]), after));
+                } else {
+                    throw new IllegalArgumentException("unrecognized entry");
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(path + ":" + lineNum + ": " + e.getMessage(), e);
+            }
+        }
+        if (foods.isEmpty()) {
+            throw new IllegalArgumentException(path + ": kitchen has no foods");
+        }
+
+        // Build the foods made by steps, now that their steps are known
+        Step[][] recipes = new Step[foods.size()][];
+        for (int id = 0; id < foods.size(); id++) {
+            if (foods.get(id) != null) {
+                continue;
+            }
+            try {
+                recipes[id] = recipe(id, foodNames.get(id), stepDefinitions.get(id));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(path + ":" + foodLines.get(id) + ": " + e.getMessage(), e);
+            }
+            Food food = recipes[id][0].food;
+            foods.set(id, food);
+            for (Step step : recipes[id]) {
+                if (!step.station.foods.contains(food)) {
+                    step.station.foods.add(food);
+                }
+            }
+        }
+        return new Kitchen(foods, stations, recipes);
+    }
+
+    private static Station station(List<Station> stations, String type) {
+        for (Station station : stations) {
+            if (station.type.equals(type)) {
+                return station;
+            }
+        }
+        return null;
+    }
+
+    private static int stepIndex(List<StepDefinition> recipe, String name) {
+        for (int i = 0; i < recipe.size(); i++) {
+            if (recipe.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Creates a food and its steps; its cook time is the longest path through them
+    private static Step[] recipe(int id, String name, List<StepDefinition> definitions) {
+        int n = definitions.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("food " + name + " has neither a cook time nor steps");
+        }
+        boolean[] waitedOn = new boolean[n];
+        int[] finish = new int[n];
+        for (int i = 0; i < n; i++) {
+            int start = 0;
+            for (int before : definitions.get(i).after) {
+                waitedOn[before] = true;
+                start = Math.max(start, finish[before]);
+            }
+            finish[i] = start + definitions.get(i).timeMs;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            if (!waitedOn[i]) {
+                throw new IllegalArgumentException("step " + definitions.get(i).name + " of " + name
+                        + " is not the last step, but no later step comes after it");
+            }
+        }
+
+        Food food = new Food(id, name, finish[n - 1]);
+        Step[] steps = new Step[n];
+        for (int i = 0; i < n; i++) {
+            StepDefinition definition = definitions.get(i);
+            Step[] after = new Step[definition.after.length];
+            for (int a = 0; a < after.length; a++) {
+                after[a] = steps[definition.after[a]];
+            }
+            steps[i] = new Step(food, i, definition.name, definition.station, definition.timeMs, after);
+        }
+        return steps;
+    }
+
+    // Splits an entry into fields on whitespace, keeping a double-quoted field whole
+    private static String[] tokens(String line) {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        while (i < line.length()) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                i++;
+            } else if (line.charAt(i) == '"') {
+                int close = line.indexOf('"', i + 1);
+                if (close < 0) {
+                    throw new IllegalArgumentException("unclosed quote");
+                }
+                tokens.add(line.substring(i + 1, close));
+                i = close + 1;
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                tokens.add(line.substring(start, i));
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    // Parses a station's machines, as one capacity or as count x capacity terms
+    private static int[] machineCapacities(String token) {
+        if (!token.contains("x")) {
+            return new int[] { positive(token) };
+        }
+        List<Integer> capacities = new ArrayList<Integer>();
+        for (String term : token.split(",")) {
+            String[] countCapacity = term.split("x");
+            if (countCapacity.length != 2) {
+                throw new IllegalArgumentException("expected count x capacity, got " + term);
+            }
+            int count = positive(countCapacity[0]);
+            int capacity = positive(countCapacity[1]);
+            for (int i = 0; i < count; i++) {
+                capacities.add(capacity);
+            }
+        }
+        int[] machineCapacities = new int[capacities.size()];
+        for (int i = 0; i < machineCapacities.length; i++) {
+            machineCapacities[i] = capacities.get(i);
+        }
+        return machineCapacities;
+    }
+
+    private static int positive(String token) {
+        int value = Integer.parseInt(token);
+        if (value <= 0) {
+            throw new IllegalArgumentException("expected a positive number, got " + token);
+        }
+        return value;
+    }
+
+    Food food(String name) {
+        return foodsByName.get(name);
+    }
+
+    /**
+     * Returns the steps of a food's recipe, each listed after the steps it
+     * waits on, and ending with the step that finishes the food.
+     */
+    Step[] recipe(Food food) {
+        return recipes[food.id];
+    }
+
+    /**
+     * Creates a fresh set of Machines for a simulation run, numbered from 0
+     * station by station.  A station with several machines numbers them
+     * in their names.
+     */
+    Machine[] createMachines() {
+        Machine[] machines = new Machine[machineCount()];
+        int id = 0;
+        for (Station station : stations) {
+            int[] capacities = station.machineCapacities;
+            for (int m = 0; m < capacities.length; m++) {
+                String name = capacities.length == 1 ? station.type : station.type + " " + (m + 1);
+                machines[id] = new Machine(id, name, station, capacities[m]);
+                id++;
+            }
+        }
+        return machines;
+    }
+
+    /**
+     * Returns the capacity of each station, in the order of
+     * STANDARD_STATIONS, if this is a standard kitchen, or null if it is not.
+     * A kitchen loaded from a file is standard if it defines the same foods
+     * and stations, in the same order, with each station making its own
+     * standard food.
+     */
+    int[] standardCapacities() {
+        Food[] standardFoods = { FoodType.wings, FoodType.pizza, FoodType.sub, FoodType.soda };
+        if (stations.length != STANDARD_STATIONS.length || foods.length != standardFoods.length) {
+            return null;
+        }
+        int[] capacities = new int[stations.length];
+        for (int s = 0; s < stations.length; s++) {
+            Station station = stations[s];
+            if (!station.type.equals(STANDARD_STATIONS[s]) || station.machineCapacities.length != 1
+                    || !foods[s].name.equals(standardFoods[s].name) || foods[s].cookTimeS != standardFoods[s].cookTimeS
+                    || station.foods.size() != 1 || !station.foods.get(0).name.equals(standardFoods[s].name)
+                    || recipes[s].length != 1) {
+                return null;
+            }
+            capacities[s] = station.machineCapacities[0];
+        }
+        return capacities;
+    }
+
+    int machineCount() {
+        int count = 0;
+        for (Station station : stations) {
+            count += station.machineCapacities.length;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the capacity shared by every machine, or -1 if the machines
+     * have different capacities.
+     */
+    int uniformCapacity() {
+        int capacity = stations.length > 0 ? stations[0].machineCapacities[0] : -1;
+        for (Station station : stations) {
+            for (int machineCapacity : station.machineCapacities) {
+                if (machineCapacity != capacity) {
+                    return -1;
+                }
+            }
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,427 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Live metrics of a run, served on localhost while it goes.  Counters are
+ * updated as events are logged, from whichever thread logs them, without
+ * taking a lock: LongAdders for the counts, and a histogram of order
+ * latency with a bucket per quarter of a power of two microseconds.  The
+ * machines' itemsCooking are read as they are.
+ *
+ * The JDK's HttpServer serves three paths:
+ *
+ *   /         a page of the live values, updated twice a second
+ *   /metrics  the values in the Prometheus text format, for scraping
+ *   /events   the values as server-sent events of JSON, twice a second
+ *
+ * Order latency runs from the customer arriving to receiving the order.
+ * Customers waiting are those in line for a table, and customers seated
+ * are those at a table.  The backlog is the orders placed that no cook
+ * has claimed.  Cooks are counted in each Cook.State as they move between
+ * them, and a cook is busy while it is claimed or cooking.
+ */
+public class LiveMetrics {
+
+    final int port;
+
+    // Counts of the current run, reset when it opens
+    private final LongAdder arrived = new LongAdder();
+    private final LongAdder entered = new LongAdder();
+    private final LongAdder balked = new LongAdder();
+    private final LongAdder left = new LongAdder();
+    private final LongAdder placed = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    // Cooks in each Cook.State, by ordinal
+    private final LongAdder[] cooksIn = new LongAdder[Cook.State.values().length];
+    private final Histogram latency = new Histogram();
+    // When each order's customer arrived, by order number; only the customer's own thread or loop touches its entry
+    private long[] arrivedNs;
+    private volatile long startNs;
+    private volatile Machine[] machines = new Machine[0];
+    private volatile boolean running;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile int boundPort;
+
+    /**
+     * @param port port on localhost to serve on, or 0 for any free one
+     */
+    public LiveMetrics(int port) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("No such port " + port);
+        }
+        this.port = port;
+        for (int s = 0; s < cooksIn.length; s++) {
+            cooksIn[s] = new LongAdder();
+        }
+    }
+
+    /**
+     * Clears the counts for a run of the given number of orders, and
+     * starts serving them.
+     */
+    void open(int numOrders) {
+        for (LongAdder counter : new LongAdder[] { arrived, entered, balked, left, placed, claimed, cancelled, completed }) {
+            counter.reset();
+        }
+        for (LongAdder counter : cooksIn) {
+            counter.reset();
+        }
+        latency.reset();
+        arrivedNs = new long[numOrders + 1];
+        machines = new Machine[0];
+        startNs = System.nanoTime();
+        running = true;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serve metrics on port " + port, e);
+        }
+        server.createContext("/", this::page);
+        server.createContext("/metrics", this::scrape);
+        server.createContext("/events", this::stream);
+        executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        boundPort = server.getAddress().getPort();
+        System.out.println("Metrics at http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + boundPort + "/");
+    }
+
+    /**
+     * Has the machines' items cooking served, once the run has them.
+     */
+    void watch(Machine[] machinesIn) {
+        machines = machinesIn;
+    }
+
+    /**
+     * Stops serving, ending the streams.
+     */
+    void close() {
+        running = false;
+        boundPort = 0;
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the port being served on, or 0 between runs.
+     */
+    int boundPort() {
+        return boundPort;
+    }
+
+    /**
+     * Counts a logged event.  Called as it is logged, on the thread that
+     * logs it.
+     */
+    void record(SimulationEvent event, long nowNs) {
+        switch (event.event) {
+            case CustomerStarting:
+                arrivedNs[event.customer.orderNum()] = nowNs;
+                if (event.customer.channel == Customer.Channel.dineIn) {
+                    arrived.increment();
+                }
+                break;
+            case CustomerEnteredRestaurant:
+                entered.increment();
+                break;
+            case CustomerBalked:
+                balked.increment();
+                break;
+            case CustomerLeavingRestaurant:
+                left.increment();
+                break;
+            case CustomerPlacedOrder:
+                placed.increment();
+                break;
+            case CustomerCancelledOrder:
+                cancelled.increment();
+                break;
+            case CustomerReceivedOrder:
+                // A customer restored from a checkpoint arrived before the run, and is not timed
+                long arrivedAt = arrivedNs[event.orderNumber];
+                if (arrivedAt != 0) {
+                    latency.record((nowNs - arrivedAt) / 1000);
+                }
+                break;
+            case CookReceivedOrder:
+                claimed.increment();
+                break;
+            case CookCompletedOrder:
+                completed.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Counts a cook moving from one state to another, or starting in a
+     * state if from is null.  Called by the cook's thread or loop.
+     */
+    void cookState(Cook.State from, Cook.State to) {
+        if (from != null) {
+            cooksIn[from.ordinal()].decrement();
+        }
+        cooksIn[to.ordinal()].increment();
+    }
+
+    /**
+     * A histogram of microseconds.  Values under 4 have a bucket each;
+     * above, each power of two is split in four, so a bucket is within
+     * about 19% of its values.
+     */
+    static class Histogram {
+        private static final int BUCKETS = 4 * 48;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sum = new AtomicLong();
+
+        static int bucket(long value) {
+            if (value < 4) {
+                return (int) Math.max(0, value);
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int index = 4 * (exp - 1) + (int) ((value >>> (exp - 2)) & 3);
+            return Math.min(index, BUCKETS - 1);
+        }
+
+        // Least value of a bucket
+        static long lowest(int index) {
+            if (index < 4) {
+                return index;
+            }
+            return (4L + index % 4) << (index / 4 - 1);
+        }
+
+        void record(long value) {
+            counts.incrementAndGet(bucket(value));
+            sum.addAndGet(value);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            sum.set(0);
+        }
+
+        long[] snapshot() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            return snapshot;
+        }
+
+        // The upper bound of the bucket holding quantile q of the snapshot, or 0 if it is empty
+        static long quantile(long[] snapshot, double q) {
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return lowest(i + 1);
+                }
+            }
+            return lowest(snapshot.length);
+        }
+    }
+
+    // The values at one moment
+    private class Snapshot {
+        final double elapsedSec = (System.nanoTime() - startNs) / 1e9;
+        final long placedCount = placed.sum();
+        final long completedCount = completed.sum();
+        final long waiting = arrived.sum() - entered.sum() - balked.sum();
+        final long seated = entered.sum() - left.sum();
+        final long backlog = placedCount - claimed.sum() - cancelled.sum();
+        final long[] cooks = new long[cooksIn.length];
+        final long busy;
+        final Machine[] watched = machines;
+        final int[] itemsCooking = new int[watched.length];
+        final long[] buckets = latency.snapshot();
+        final long latencySumUs = latency.sum.get();
+
+        Snapshot() {
+            for (int i = 0; i < watched.length; i++) {
+                itemsCooking[i] = watched[i].itemsCooking;
+            }
+            for (int s = 0; s < cooks.length; s++) {
+                cooks[s] = cooksIn[s].sum();
+            }
+            busy = cooks[Cook.State.claimed.ordinal()] + cooks[Cook.State.cooking.ordinal()];
+        }
+
+        double quantileSec(double q) {
+            return Histogram.quantile(buckets, q) / 1e6;
+        }
+    }
+
+    private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        Snapshot now = new Snapshot();
+        StringBuilder sb = new StringBuilder();
+        metric(sb, "restaurant_orders_placed_total", "counter", "Orders placed", now.placedCount);
+        metric(sb, "restaurant_orders_completed_total", "counter", "Orders completed by cooks", now.completedCount);
+        metric(sb, "restaurant_customers_waiting", "gauge", "Customers in line for a table", now.waiting);
+        metric(sb, "restaurant_customers_seated", "gauge", "Customers at a table", now.seated);
+        metric(sb, "restaurant_order_backlog", "gauge", "Orders placed that no cook has claimed", now.backlog);
+        metric(sb, "restaurant_cooks_busy", "gauge", "Cooks with orders on hand", now.busy);
+        sb.append("# HELP restaurant_cooks Cooks in each state\n");
+        sb.append("# TYPE restaurant_cooks gauge\n");
+        for (Cook.State state : Cook.State.values()) {
+            sb.append("restaurant_cooks{state=\"").append(state).append("\"} ").append(now.cooks[state.ordinal()]).append('\n');
+        }
+        sb.append("# HELP restaurant_machine_items_cooking Slots of the machine in use\n");
+        sb.append("# TYPE restaurant_machine_items_cooking gauge\n");
+        for (int i = 0; i < now.watched.length; i++) {
+            sb.append("restaurant_machine_items_cooking{machine=\"").append(now.watched[i].name).append("\"} ")
+                    .append(now.itemsCooking[i]).append('\n');
+        }
+        sb.append("# HELP restaurant_order_latency_seconds Time from a customer arriving to receiving the order\n");
+        sb.append("# TYPE restaurant_order_latency_seconds histogram\n");
+        long cumulative = 0;
+        long count = 0;
+        for (long bucketCount : now.buckets) {
+            count += bucketCount;
+        }
+        // Buckets at each power of two microseconds, up to the first holding every value
+        for (int i = 0; i < now.buckets.length; i++) {
+            cumulative += now.buckets[i];
+            if ((i + 1) % 4 == 0) {
+                sb.append("restaurant_order_latency_seconds_bucket{le=\"").append(Histogram.lowest(i + 1) / 1e6).append("\"} ")
+                        .append(cumulative).append('\n');
+                if (cumulative == count) {
+                    break;
+                }
+            }
+        }
+        sb.append("restaurant_order_latency_seconds_bucket{le=\"+Inf\"} ").append(count).append('\n');
+        sb.append("restaurant_order_latency_seconds_sum ").append(now.latencySumUs / 1e6).append('\n');
+        sb.append("restaurant_order_latency_seconds_count ").append(count).append('\n');
+        sb.append("# HELP restaurant_order_latency_quantile_seconds Upper bound of a quantile of order latency\n");
+        sb.append("# TYPE restaurant_order_latency_quantile_seconds gauge\n");
+        for (double q : QUANTILES) {
+            sb.append("restaurant_order_latency_quantile_seconds{quantile=\"").append(q).append("\"} ")
+                    .append(now.quantileSec(q)).append('\n');
+        }
+        respond(exchange, "text/plain; version=0.0.4; charset=utf-8", sb.toString());
+    }
+
+    private static void metric(StringBuilder sb, String name, String type, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    // Sends the values twice a second until the run ends or the client goes, with orders per second since the last
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            Snapshot last = null;
+            while (running) {
+                Snapshot now = new Snapshot();
+                double perSec = last == null || now.elapsedSec <= last.elapsedSec ? 0
+                        : (now.completedCount - last.completedCount) / (now.elapsedSec - last.elapsedSec);
+                out.write(("data: " + json(now, perSec) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                last = now;
+                Thread.sleep(500);
+            }
+        } catch (InterruptedException e) {
+            // The run is over
+        } catch (IOException e) {
+            // The client went away
+        }
+    }
+
+    private static String json(Snapshot now, double ordersPerSec) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "{\"elapsedSec\":%.3f,\"ordersPerSec\":%.2f,\"placed\":%d,\"completed\":%d,"
+                + "\"waiting\":%d,\"seated\":%d,\"backlog\":%d,\"busyCooks\":%d,\"p50Ms\":%.1f,\"p95Ms\":%.1f,\"p99Ms\":%.1f,\"machines\":[",
+                now.elapsedSec, ordersPerSec, now.placedCount, now.completedCount, now.waiting, now.seated, now.backlog,
+                now.busy, now.quantileSec(0.5) * 1000, now.quantileSec(0.95) * 1000, now.quantileSec(0.99) * 1000));
+        for (int i = 0; i < now.watched.length; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"name\":\"").append(now.watched[i].name)
+                    .append("\",\"itemsCooking\":").append(now.itemsCooking[i])
+                    .append(",\"capacity\":").append(now.watched[i].capacity()).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static final String PAGE = String.join("\n",
+            "<!DOCTYPE html>",
+            "<html><head><meta charset=\"utf-8\"><title>Restaurant simulation</title>",
+            "<style>body{font-family:sans-serif;margin:2em}td{padding:2px 12px}td.v{text-align:right}",
+            "meter{width:200px}</style></head><body>",
+            "<h1>Restaurant simulation</h1>",
+            "<table id=\"values\"></table><h2>Machines</h2><table id=\"machines\"></table>",
+            "<p id=\"state\">Connecting</p>",
+            "<script>",
+            "const rows = [['Elapsed s','elapsedSec'],['Orders per second','ordersPerSec'],['Orders placed','placed'],",
+            "  ['Orders completed','completed'],['Customers waiting','waiting'],['Customers seated','seated'],",
+            "  ['Order backlog','backlog'],['Busy cooks','busyCooks'],['Latency p50 ms','p50Ms'],",
+            "  ['Latency p95 ms','p95Ms'],['Latency p99 ms','p99Ms']];",
+            "const source = new EventSource('/events');",
+            "source.onmessage = e => {",
+            "  const v = JSON.parse(e.data);",
+            "  document.getElementById('values').innerHTML = rows.map(r =>",
+            "    '<tr><td>' + r[0] + '</td><td class=\"v\">' + v[r[1]] + '</td></tr>').join('');",
+            "  document.getElementById('machines').innerHTML = v.machines.map(m =>",
+            "    '<tr><td>' + m.name + '</td><td><meter max=\"' + m.capacity + '\" value=\"' + m.itemsCooking + '\"></meter></td>' +",
+            "    '<td class=\"v\">' + m.itemsCooking + ' / ' + m.capacity + '</td></tr>').join('');",
+            "  document.getElementById('state').textContent = 'Live';",
+            "};",
+            "source.onerror = () => { document.getElementById('state').textContent = 'Run over'; source.close(); };",
+            "</script></body></html>");
+
+    private void page(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals("/")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        respond(exchange, "text/html; charset=utf-8", PAGE);
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Opt-in instrumentation of the simulation's monitors.  For every lock it
+ * counts acquisitions and measures how long threads waited to acquire it
+ * and how long they held it.
+ *
+ * An instrumented critical section looks like:
+ *
+ *   long requested = LockProfiler.request();
+ *   synchronized (lock) {
+ *       long acquired = stats.acquired(requested);
+ *       try {
+ *           ...
+ *       } finally {
+ *           stats.released(acquired);
+ *       }
+ *   }
+ *
+ * Each LockStats is only updated while holding the lock it measures, so
+ * the profiler needs no locking of its own.  When profiling is off, the
+ * calls do nothing but check a flag.
+ *
+ * Every lock's totals are also emitted as a JFR event at the end of a run,
+ * when a JFR recording is running.  Every acquisition can be emitted as
+ * well, but since a run makes millions of them, that event is off unless
+ * a recording's settings turn it on.
+ */
+public class LockProfiler {
+
+    private static volatile boolean enabled = false;
+
+    /**
+     * Turns profiling on or off for subsequent runs.
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the time a thread asked for a lock, or 0 when not profiling.
+     */
+    static long request() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    @Name("MultiThreadedRestaurantSim.LockAcquisition")
+    @Label("Lock Acquisition")
+    @Category({ "Restaurant Simulation", "Locks" })
+    @Description("One acquisition of a simulation monitor")
+    @Enabled(false)
+    static class AcquisitionEvent extends Event {
+        @Label("Lock")
+        String lock;
+
+        @Label("Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitNanos;
+
+        @Label("Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        long holdNanos;
+    }
+
+    @Name("MultiThreadedRestaurantSim.LockSummary")
+    @Label("Lock Summary")
+    @Category({ "Restaurant Simulation", "Locks" })
+    @Description("Totals for a simulation monitor over one run")
+    static class SummaryEvent extends Event {
+        @Label("Lock")
+        String lock;
+
+        @Label("Acquisitions")
+        long acquisitions;
+
+        @Label("Total Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long totalWaitNanos;
+
+        @Label("Max Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long maxWaitNanos;
+
+        @Label("Total Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        long totalHoldNanos;
+
+        @Label("Max Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        long maxHoldNanos;
+    }
+
+    /**
+     * Counters for one lock.
+     */
+    static class LockStats {
+        final String name;
+        private long acquisitions;
+        private long totalWaitNs;
+        private long maxWaitNs;
+        private long totalHoldNs;
+        private long maxHoldNs;
+        // Wait of the current holder, reported with its hold time
+        private long currentWaitNs;
+
+        LockStats(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Called just after acquiring the lock.  Returns the time it was
+         * acquired, or 0 when not profiling.
+         */
+        long acquired(long requestedNs) {
+            if (requestedNs == 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            long wait = now - requestedNs;
+            acquisitions++;
+            totalWaitNs += wait;
+            if (wait > maxWaitNs) {
+                maxWaitNs = wait;
+            }
+            currentWaitNs = wait;
+            return now;
+        }
+
+        /**
+         * Called just before releasing the lock.
+         */
+        void released(long acquiredNs) {
+            if (acquiredNs == 0) {
+                return;
+            }
+            long hold = System.nanoTime() - acquiredNs;
+            totalHoldNs += hold;
+            if (hold > maxHoldNs) {
+                maxHoldNs = hold;
+            }
+
+            AcquisitionEvent event = new AcquisitionEvent();
+            if (event.isEnabled()) {
+                event.lock = name;
+                event.waitNanos = currentWaitNs;
+                event.holdNanos = hold;
+                event.commit();
+            }
+        }
+
+        void reset() {
+            acquisitions = 0;
+            totalWaitNs = 0;
+            maxWaitNs = 0;
+            totalHoldNs = 0;
+            maxHoldNs = 0;
+        }
+    }
+
+    /**
+     * Formats the locks' totals as a table, most waited-on first, and emits
+     * them as JFR summary events.  Call once the threads using the locks
+     * have finished.
+     */
+    static String summarize(List<LockStats> locks) {
+        locks.sort((a, b) -> Long.compare(b.totalWaitNs, a.totalWaitNs));
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-16s %12s %14s %12s %14s %12s%n",
+                "lock", "acquisitions", "total wait ms", "max wait us", "total hold ms", "max hold us"));
+        for (LockStats lock : locks) {
+            sb.append(String.format("%-16s %12d %14.3f %12.1f %14.3f %12.1f%n",
+                    lock.name, lock.acquisitions,
+                    lock.totalWaitNs / 1e6, lock.maxWaitNs / 1e3,
+                    lock.totalHoldNs / 1e6, lock.maxHoldNs / 1e3));
+
+            SummaryEvent event = new SummaryEvent();
+            if (event.isEnabled()) {
+                event.lock = lock.name;
+                event.acquisitions = lock.acquisitions;
+                event.totalWaitNanos = lock.totalWaitNs;
+                event.maxWaitNanos = lock.maxWaitNs;
+                event.totalHoldNanos = lock.totalHoldNs;
+                event.maxHoldNanos = lock.maxHoldNs;
+                event.commit();
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -1,70 +1,382 @@
-package MultiThreadedRestaurantSim;
-
-/**
- * A Machine is used to make a particular Food.  Each Machine makes
- * just one kind of Food.  Each machine has a capacity: it can make
- * that many food items in parallel; if the machine is asked to
- * produce a food item beyond its capacity, the requester blocks.
- * Each food item takes at least item.cookTimeS seconds to produce.
- */
-
-public class Machine {
-	
-	public enum MachineType { fountain, fryer, grillPress, oven }
-	
-	// Converts Machine instances into strings based on MachineType.
-	
-	public String toString() {
-		switch (machineType) {
-		case fountain: 		return "Fountain";
-		case fryer:			return "Fryer";
-		case grillPress:	return "Grill Press";
-		case oven:			return "Oven";
-		default:			return "INVALID MACHINE";
-		}
-	}
-	
-	final MachineType machineType;
-	final Food machineFoodType;
-
-	volatile int itemsCooking = 0;
-    private final int capacity;
-
-	Machine(MachineType machineType, Food food, int capacityIn) {
-		this.machineType = machineType;
-		this.machineFoodType = food;
-		this.capacity = capacityIn;
-	}
-
-	synchronized boolean makeFood(Cook cook, int orderNum) throws InterruptedException {
-	    if (itemsCooking < capacity) {
-            itemsCooking++;
-            Thread cookThread = new Thread(new CookAnItem(orderNum, this));
-            Simulation.logEvent(SimulationEvent.cookStartedFood(cook, machineFoodType, orderNum));
-            cookThread.start();
-            return true;
-        }
-        return false;
-	}
-
-	private class CookAnItem implements Runnable {
-	    private final int orderNum;
-	    private final Machine machine;
-
-	    CookAnItem(int orderNum, Machine machine) {
-	        this.orderNum = orderNum;
-	        this.machine = machine;
-        }
-
-		public void run() {
-			try {
-                Simulation.logEvent(SimulationEvent.machineCookingFood(machine, machineFoodType));
-                Thread.sleep(machineFoodType.cookTimeS);
-                Simulation.updateCookedOrder(machine, orderNum, machineFoodType);
-
-			} catch(InterruptedException e) {
-                System.out.println("Cooking thread interrupted.");
-            }
-		}
-	}
+package MultiThreadedRestaurantSim;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A Machine is used to make the Foods of one Kitchen station.  Each
+ * Machine runs the recipe steps that use its station, alongside the
+ * station's other machines, if it has any.  Each machine has a capacity:
+ * it can run that many steps in parallel; if the machine is asked to run
+ * a step beyond its capacity, the requester must try again later.  Each
+ * step takes at least its timeMs to run, and holds its slot until the
+ * cook collects it.  A fault can take a machine down, or leave it fewer
+ * slots, until it recovers; see MachineFaults.  On an EventLoop, an
+ * item cooks as a timer on its cook's loop instead of on a thread.
+ */
+
+public class Machine {
+
+	final int id;
+	final String name;
+	final Kitchen.Station station;
+	final List<Food> foods;
+
+	// Converts Machine instances into strings based on the station type.
+	
+	public String toString() {
+		return name;
+	}
+
+	volatile int itemsCooking = 0;
+    private final int capacity;
+	// When each item in a slot is due off the machine, in no order; guarded by the monitor
+	private final long[] itemEndsNs;
+	final LockProfiler.LockStats monitorStats;
+	// Slots usable now: fewer while a fault degrades the machine, none while it is down
+	private volatile int available;
+	// Items cooking for orders, in the order they started, until done or lost; guarded by the monitor
+	private final List<CookAnItem> inProgress = new ArrayList<CookAnItem>();
+	// On the event loop, cooks waiting for a slot to free; guarded by the monitor
+	private final LinkedHashSet<Cook> waiters = new LinkedHashSet<Cook>();
+
+	Machine(int id, String name, Kitchen.Station station, int capacityIn) {
+		this.id = id;
+		this.name = name;
+		this.station = station;
+		this.foods = station.foods;
+		this.capacity = capacityIn;
+		this.itemEndsNs = new long[capacityIn];
+		this.monitorStats = new LockProfiler.LockStats(name);
+		this.available = capacityIn;
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	int available() {
+		return available;
+	}
+
+	// Share of the machine's slots in use
+	double load() {
+		return (double) itemsCooking / capacity;
+	}
+
+	/**
+	 * When a step put on the machine now would be done: after its own time,
+	 * once a slot is free.  A full machine frees the slot of the item due
+	 * off it first.
+	 */
+	synchronized long expectedFinishNs(Kitchen.Step step, long nowNs) {
+		long startNs = nowNs;
+		if (itemsCooking >= capacity) {
+			long firstEndNs = Long.MAX_VALUE;
+			for (int i = 0; i < itemsCooking; i++) {
+				firstEndNs = Math.min(firstEndNs, itemEndsNs[i]);
+			}
+			startNs = Math.max(nowNs, firstEndNs);
+		}
+		return startNs + step.timeMs * 1000000L;
+	}
+
+	// Called holding the monitor to take a slot for a step
+	private void occupy(Kitchen.Step step) {
+		itemEndsNs[itemsCooking] = System.nanoTime() + step.timeMs * 1000000L;
+		itemsCooking++;
+	}
+
+	/**
+	 * Frees the slot of an item that has come off the machine.  The slots
+	 * are not told apart, so this frees the one of the item due first.
+	 */
+	void release() {
+		List<Cook> waiting = null;
+		long requested = LockProfiler.request();
+		synchronized (this) {
+			long acquired = monitorStats.acquired(requested);
+			try {
+				vacate(true);
+				if (!waiters.isEmpty()) {
+					waiting = new ArrayList<Cook>(waiters);
+					waiters.clear();
+				}
+			} finally {
+				monitorStats.released(acquired);
+			}
+		}
+		if (waiting != null) {
+			for (Cook cook : waiting) {
+				EventLoop.wake(cook);
+			}
+		}
+	}
+
+	/**
+	 * On the event loop, has the cook woken when a slot frees.  Returns
+	 * whether one is free already.
+	 */
+	boolean awaitSlot(Cook cook) {
+		long requested = LockProfiler.request();
+		synchronized (this) {
+			long acquired = monitorStats.acquired(requested);
+			try {
+				waiters.add(cook);
+				return itemsCooking < available;
+			} finally {
+				monitorStats.released(acquired);
+			}
+		}
+	}
+
+	// Called holding the monitor to free the slot of the item due first, or last
+	private void vacate(boolean dueFirst) {
+		int pick = 0;
+		for (int i = 1; i < itemsCooking; i++) {
+			if (dueFirst ? itemEndsNs[i] < itemEndsNs[pick] : itemEndsNs[i] > itemEndsNs[pick]) {
+				pick = i;
+			}
+		}
+		itemEndsNs[pick] = itemEndsNs[itemsCooking - 1];
+		itemsCooking--;
+	}
+
+	/**
+	 * Leaves the machine capacityLeft slots, none taking it down.  Items
+	 * cooking beyond capacityLeft, the latest started first, are either
+	 * lost, freeing their slots for their cooks to start them again, or
+	 * held, keeping their slots and cooking on from where they stopped
+	 * once the machine recovers.  Items made for hot holding, and items
+	 * done but not yet collected, are not hit.
+	 */
+	void fail(int capacityLeft, boolean lose) {
+		long requested = LockProfiler.request();
+		synchronized (this) {
+			long acquired = monitorStats.acquired(requested);
+			try {
+				available = capacityLeft;
+				Simulation.logEvent(SimulationEvent.machineFault(this, capacityLeft));
+				int cooking = 0;
+				for (CookAnItem item : inProgress) {
+					if (!item.paused) {
+						cooking++;
+					}
+				}
+				for (int i = inProgress.size() - 1; i >= 0 && cooking > capacityLeft; i--) {
+					CookAnItem item = inProgress.get(i);
+					if (item.paused) {
+						continue;
+					}
+					cooking--;
+					if (lose) {
+						item.logStarted();
+						item.lost = true;
+						inProgress.remove(i);
+						vacate(false);
+						Simulation.foodLost(this, item.step, item.orderNum);
+					} else {
+						item.paused = true;
+					}
+					item.thread.interrupt();
+				}
+			} finally {
+				monitorStats.released(acquired);
+			}
+		}
+	}
+
+	/**
+	 * Brings the machine back to its full capacity, and lets held items
+	 * cook on.
+	 */
+	void recover() {
+		long requested = LockProfiler.request();
+		synchronized (this) {
+			long acquired = monitorStats.acquired(requested);
+			try {
+				available = capacity;
+				for (CookAnItem item : inProgress) {
+					item.paused = false;
+				}
+				notifyAll();
+				Simulation.logEvent(SimulationEvent.machineRecovered(this, capacity));
+			} finally {
+				monitorStats.released(acquired);
+			}
+		}
+	}
+
+	boolean makeFood(Cook cook, Kitchen.Step step, int orderNum) throws InterruptedException {
+		long requested = LockProfiler.request();
+		synchronized (this) {
+			long acquired = monitorStats.acquired(requested);
+			try {
+			    Schedule schedule = Simulation.schedule;
+			    if (itemsCooking < available && (schedule == null || schedule.takeSlot(this, cook, orderNum, step.food))) {
+		            occupy(step);
+		            CookAnItem item = new CookAnItem(orderNum, step, this, cook);
+		            inProgress.add(item);
+		            Simulation.logEvent(SimulationEvent.cookStartedFood(cook, this, step, orderNum));
+		            if (Simulation.loops == null) {
+		                item.thread = new Thread(item);
+		                item.thread.start();
+		            } else {
+		                item.logStarted();
+		                EventLoop.after(step.timeMs, item::finish);
+		            }
+		            return true;
+		        }
+		        return false;
+			} finally {
+				monitorStats.released(acquired);
+			}
+		}
+	}
+
+	/**
+	 * Starts an item for hot holding if the machine is idle, and returns
+	 * whether it did.  Once made, the item goes to the holding's bin.
+	 */
+	boolean makeForHolding(Kitchen.Step step, HotHolding holding) {
+		long requested = LockProfiler.request();
+		synchronized (this) {
+			long acquired = monitorStats.acquired(requested);
+			try {
+				if (itemsCooking > 0 || available < capacity) {
+					return false;
+				}
+				occupy(step);
+				Thread holdThread = new Thread(new HoldAnItem(step, holding));
+				holding.making(holdThread, step.food);
+				holdThread.start();
+				return true;
+			} finally {
+				monitorStats.released(acquired);
+			}
+		}
+	}
+
+	private class HoldAnItem implements Runnable {
+	    private final Kitchen.Step step;
+	    private final HotHolding holding;
+
+	    HoldAnItem(Kitchen.Step step, HotHolding holding) {
+	        this.step = step;
+	        this.holding = holding;
+	    }
+
+		public void run() {
+			Machine machine = Machine.this;
+			try {
+				Simulation.logEvent(SimulationEvent.machineCookingFood(machine, step, 0));
+				Thread.sleep(step.timeMs);
+				Simulation.logEvent(SimulationEvent.machineDoneFood(machine, step, 0));
+				holding.stock(machine, step.food);
+			} catch (InterruptedException e) {
+				System.out.println("Holding thread interrupted.");
+			} finally {
+				release();
+			}
+		}
+	}
+
+	private class CookAnItem implements Runnable {
+	    private final int orderNum;
+	    private final Kitchen.Step step;
+	    private final Machine machine;
+	    private final Cook cook;
+	    private final ActorProfiler.Account account = ActorProfiler.account(ActorProfiler.Kind.cooking);
+	    // The item's thread, or null on the event loop
+	    Thread thread;
+	    // Set holding the monitor, the first by the item or by a fault losing it before it logged its start
+	    private boolean started;
+	    boolean lost;
+	    boolean paused;
+
+	    CookAnItem(int orderNum, Kitchen.Step step, Machine machine, Cook cook) {
+	        this.orderNum = orderNum;
+	        this.step = step;
+	        this.machine = machine;
+	        this.cook = cook;
+        }
+
+		public void run() {
+			ActorProfiler.begin(account);
+			try {
+                long requested = LockProfiler.request();
+                synchronized (machine) {
+                    long acquired = monitorStats.acquired(requested);
+                    try {
+                        logStarted();
+                    } finally {
+                        monitorStats.released(acquired);
+                    }
+                }
+                if (cook()) {
+                    Simulation.updateCookedOrder(machine, orderNum, step);
+                }
+            } finally {
+				ActorProfiler.end(account);
+			}
+		}
+
+		// On the event loop, takes the item off the machine once its time is up, and wakes its cook to collect it
+		void finish() {
+			long requested = LockProfiler.request();
+			synchronized (machine) {
+				long acquired = monitorStats.acquired(requested);
+				try {
+					inProgress.remove(this);
+				} finally {
+					monitorStats.released(acquired);
+				}
+			}
+			Simulation.updateCookedOrder(machine, orderNum, step);
+			EventLoop.wake(cook);
+		}
+
+		// Logs the item's start once, holding the monitor, so a fault never logs it lost before it started
+		void logStarted() {
+			if (!started) {
+				started = true;
+				Simulation.logEvent(SimulationEvent.machineCookingFood(machine, step, orderNum));
+			}
+		}
+
+		// Cooks the item for its time, stopped while a fault holds it; returns false if a fault lost it
+		private boolean cook() {
+			long remainingNs = step.timeMs * 1000000L;
+			while (true) {
+				long startNs = System.nanoTime();
+				try {
+					if (remainingNs > 0) {
+						Thread.sleep(remainingNs / 1000000, (int) (remainingNs % 1000000));
+					}
+				} catch (InterruptedException e) {
+					// A fault hit the machine
+				}
+				remainingNs -= System.nanoTime() - startNs;
+				// Waits for recovery unprofiled, since the monitor is not held while waiting
+				synchronized (machine) {
+					while (paused) {
+						try {
+							machine.wait();
+						} catch (InterruptedException e) {
+							// Only a fault interrupts the item
+						}
+					}
+					if (lost) {
+						return false;
+					}
+					if (remainingNs <= 0) {
+						inProgress.remove(this);
+						Thread.interrupted();
+						return true;
+					}
+				}
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * How a cook picks which of a station's machines to put a step on, when
+ * the station has more than one.  A cook whose pick is full tries again
+ * later, and picks again then.
+ */
+public enum MachineChoice {
+
+    /** Any machine, uniformly at random. */
+    random,
+
+    /** The station's machines in turn, shared by all cooks. */
+    roundRobin,
+
+    /** The less loaded of two machines drawn at random, by share of capacity in use. */
+    powerOfTwo,
+
+    /** The machine expected to finish the step soonest, given the items it is cooking. */
+    leastFinish;
+
+    /**
+     * Picks one of a station's machines for a step.
+     *
+     * @param rnd the cook's Random
+     * @param turns the next round-robin turn of each station, by Station.id
+     */
+    Machine choose(Machine[] machines, Kitchen.Step step, Random rnd, AtomicIntegerArray turns) {
+        switch (this) {
+            case random:
+                return machines[rnd.nextInt(machines.length)];
+
+            case roundRobin:
+                return machines[Math.floorMod(turns.getAndIncrement(step.station.id), machines.length)];
+
+            case powerOfTwo: {
+                int first = rnd.nextInt(machines.length);
+                int second = rnd.nextInt(machines.length - 1);
+                if (second >= first) {
+                    second++;
+                }
+                return machines[second].load() < machines[first].load() ? machines[second] : machines[first];
+            }
+
+            default: {
+                long now = System.nanoTime();
+                Machine best = machines[0];
+                long bestFinish = best.expectedFinishNs(step, now);
+                for (int m = 1; m < machines.length; m++) {
+                    long finish = machines[m].expectedFinishNs(step, now);
+                    if (finish < bestFinish) {
+                        best = machines[m];
+                        bestFinish = finish;
+                    }
+                }
+                return best;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+/**
+ * Compares the MachineChoice policies on a kitchen whose stations have
+ * several machines of different capacities, each station making items
+ * of very different cook times.  Every policy runs the same seeds, and
+ * for each the mean order latency, the part of it spent waiting for a
+ * machine slot, the time to serve everyone, and how unevenly each
+ * station's machines were used (the spread between its most and least
+ * utilized machine) are averaged over the seeds.
+ *
+ * usage: java MachineChoiceBenchmark [kitchen-file] [customers] [cooks] [tables] [seeds]
+ */
+public class MachineChoiceBenchmark {
+
+    // An oven, one of capacity 4 and two of 2, taking 40 ms to 600 ms an item, and three fryers
+    private static final String KITCHEN = String.join("\n",
+            "food pizza 600",
+            "food calzone 400",
+            "food flatbread 40",
+            "food wings 350",
+            "food fries 120",
+            "food soda 15",
+            "station Oven 1x4,2x2 pizza,calzone,flatbread",
+            "station Fryer 3x2 wings,fries",
+            "station Fountain 10 soda");
+
+    public static void main(String[] args) throws IOException {
+        Kitchen kitchen = args.length > 0 && !args[0].equals("-") ? Kitchen.load(args[0])
+                : Kitchen.read(new BufferedReader(new StringReader(KITCHEN)), "benchmark kitchen");
+        int numCustomers = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int numCooks = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int numTables = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int seeds = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, %d cooks, %d tables, %d machines; mean of %d seeds",
+                numCustomers, numCooks, numTables, kitchen.machineCount(), seeds));
+        out.println(String.format("%12s %12s %12s %12s %12s %6s",
+                "choice", "latency ms", "slot ms", "span ms", "spread", "valid"));
+        try {
+            for (MachineChoice choice : MachineChoice.values()) {
+                double latency = 0;
+                double slot = 0;
+                double span = 0;
+                double spread = 0;
+                boolean valid = true;
+                for (int seed = 1; seed <= seeds; seed++) {
+                    Simulation.setMachineChoice(choice);
+                    Simulation.setSeed(seed);
+                    Simulation.QuietRun run = Simulation.runQuietly(kitchen, numCustomers, numCooks, numTables, true);
+                    valid &= run.valid;
+                    BottleneckAnalyzer.Report report = BottleneckAnalyzer.analyze(run.events);
+                    latency += report.meanLatencyMs();
+                    slot += report.meanPhaseMs[BottleneckAnalyzer.Phase.slot.ordinal()];
+                    span += report.spanMs;
+                    spread += spread(kitchen, report);
+                }
+                out.println(String.format("%12s %12.1f %12.1f %12.1f %11.1f%% %6s",
+                        choice, latency / seeds, slot / seeds, span / seeds, 100 * spread / seeds, valid));
+            }
+        } finally {
+            Simulation.setMachineChoice(MachineChoice.powerOfTwo);
+        }
+    }
+
+    // Mean over stations with several machines of the gap between their most and least utilized machine
+    private static double spread(Kitchen kitchen, BottleneckAnalyzer.Report report) {
+        // Utilizations list tables and cooks, then machines by id, station by station
+        int index = 2;
+        double total = 0;
+        int stations = 0;
+        for (Kitchen.Station station : kitchen.stations) {
+            int machines = station.machineCapacities.length;
+            if (machines > 1) {
+                double most = 0;
+                double least = 1;
+                for (int m = 0; m < machines; m++) {
+                    double utilization = report.utilizations.get(index + m).utilization;
+                    most = Math.max(most, utilization);
+                    least = Math.min(least, utilization);
+                }
+                total += most - least;
+                stations++;
+            }
+            index += machines;
+        }
+        return stations > 0 ? total / stations : 0;
+    }
+}
@@ -0,0 +1,443 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Faults injected into the machines of a run, to see how the kitchen
+ * copes with a machine down or degraded and how quickly it catches up
+ * once the machine is back.  Faults are either planned, each taking a
+ * named machine down to some slots, none for an outage, at a time and
+ * for a time into the run, or random, each machine going down at
+ * exponentially distributed times with a mean time between failures and
+ * coming back up after a mean time to repair.
+ *
+ * A fault leaves items cooking beyond the slots it leaves, the latest
+ * started first, either lost, for their cooks to start again on a
+ * machine that is up, or held, cooking on from where they stopped once
+ * the machine recovers.  Cooks route around a station whose machines
+ * are all down to another ready step of the order.
+ *
+ * The transitions are kept in a queue and made by the faults' own
+ * thread.  Only that thread touches the queue while the run is open.
+ */
+public class MachineFaults implements Runnable {
+
+    /** What a fault does with the items cooking beyond the slots it leaves. */
+    public enum InProgress { lose, hold }
+
+    /** Time buckets of the recovery curve. */
+    static final int BUCKETS = 20;
+
+    // A planned fault, as parsed
+    private static class Fault {
+        final String machineName;
+        final long atMs;
+        final long forMs;
+        final int slotsLeft;
+
+        Fault(String machineName, long atMs, long forMs, int slotsLeft) {
+            this.machineName = machineName;
+            this.atMs = atMs;
+            this.forMs = forMs;
+            this.slotsLeft = slotsLeft;
+        }
+    }
+
+    // A machine going down to slotsLeft, or back up when slotsLeft is negative
+    private static class Transition {
+        final long atNs;
+        final Machine machine;
+        final int slotsLeft;
+
+        Transition(long atNs, Machine machine, int slotsLeft) {
+            this.atNs = atNs;
+            this.machine = machine;
+            this.slotsLeft = slotsLeft;
+        }
+    }
+
+    final InProgress policy;
+    // The planned faults, or null for random ones
+    private final List<Fault> planned;
+    final long mtbfMs;
+    final long mttrMs;
+
+    private Random rnd;
+    private Machine[] machines;
+    private final PriorityQueue<Transition> due = new PriorityQueue<Transition>(Comparator.comparingLong(t -> t.atNs));
+    private Thread faultThread;
+    private volatile boolean open;
+
+    private MachineFaults(InProgress policy, List<Fault> planned, long mtbfMs, long mttrMs) {
+        this.policy = policy;
+        this.planned = planned;
+        this.mtbfMs = mtbfMs;
+        this.mttrMs = mttrMs;
+    }
+
+    /**
+     * Parses planned faults, separated by commas, each written
+     * machine@at-ms+for-ms[:slots-left], where at-ms is the time into the
+     * run, for-ms how long the fault lasts, and slots-left the slots the
+     * machine keeps, none if left out.  Faults of one machine must not
+     * overlap.
+     */
+    public static MachineFaults parse(String spec, InProgress policy) {
+        List<Fault> faults = new ArrayList<Fault>();
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            int at = part.lastIndexOf('@');
+            int plus = part.indexOf('+', at + 1);
+            int colon = part.indexOf(':', plus + 1);
+            if (at <= 0 || plus < 0) {
+                throw new IllegalArgumentException("Bad fault " + part + ", expected machine@at-ms+for-ms[:slots-left]");
+            }
+            Fault fault;
+            try {
+                fault = new Fault(part.substring(0, at).trim(),
+                        Long.parseLong(part.substring(at + 1, plus).trim()),
+                        Long.parseLong(part.substring(plus + 1, colon < 0 ? part.length() : colon).trim()),
+                        colon < 0 ? 0 : Integer.parseInt(part.substring(colon + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad fault " + part + ", expected machine@at-ms+for-ms[:slots-left]");
+            }
+            if (fault.atMs < 0 || fault.forMs <= 0 || fault.slotsLeft < 0) {
+                throw new IllegalArgumentException("Fault " + part + " needs a non-negative time, a positive length and slots left");
+            }
+            for (Fault other : faults) {
+                if (other.machineName.equalsIgnoreCase(fault.machineName)
+                        && fault.atMs < other.atMs + other.forMs && other.atMs < fault.atMs + fault.forMs) {
+                    throw new IllegalArgumentException("Faults of " + fault.machineName + " overlap");
+                }
+            }
+            faults.add(fault);
+        }
+        return new MachineFaults(policy, faults, 0, 0);
+    }
+
+    /**
+     * Takes every machine down at random, for outages with the given mean
+     * time between failures and mean time to repair.
+     */
+    public static MachineFaults random(long mtbfMs, long mttrMs, InProgress policy) {
+        if (mtbfMs <= 0 || mttrMs <= 0) {
+            throw new IllegalArgumentException("Random faults need a positive mean time between failures and to repair");
+        }
+        return new MachineFaults(policy, null, mtbfMs, mttrMs);
+    }
+
+    /**
+     * Plans the run's faults against its machines and starts the faults'
+     * thread.  Random faults draw their times from rndIn.
+     */
+    synchronized void open(Machine[] machinesIn, Random rndIn) {
+        rnd = rndIn;
+        machines = machinesIn;
+        due.clear();
+        long startNs = System.nanoTime();
+        if (planned != null) {
+            for (Fault fault : planned) {
+                Machine machine = machine(fault.machineName);
+                if (fault.slotsLeft >= machine.capacity()) {
+                    throw new IllegalArgumentException("A fault of " + machine + " must leave it fewer than its "
+                            + machine.capacity() + " slots");
+                }
+                long atNs = startNs + fault.atMs * 1000000L;
+                due.add(new Transition(atNs, machine, fault.slotsLeft));
+                due.add(new Transition(atNs + fault.forMs * 1000000L, machine, -1));
+            }
+        } else {
+            for (Machine machine : machines) {
+                due.add(new Transition(startNs + exponential(mtbfMs), machine, 0));
+            }
+        }
+
+        open = true;
+        faultThread = new Thread(this, "Machine faults");
+        faultThread.setDaemon(true);
+        faultThread.start();
+    }
+
+    private Machine machine(String name) {
+        for (Machine machine : machines) {
+            if (machine.name.equalsIgnoreCase(name)) {
+                return machine;
+            }
+        }
+        throw new IllegalArgumentException("No machine named " + name);
+    }
+
+    // An exponentially distributed time with the given mean, in ns
+    private long exponential(long meanMs) {
+        return (long) (-meanMs * 1e6 * Math.log(1 - rnd.nextDouble()));
+    }
+
+    /**
+     * Stops injecting faults and brings every machine still down back up.
+     */
+    void close() throws InterruptedException {
+        open = false;
+        faultThread.interrupt();
+        faultThread.join();
+        for (Machine machine : machines) {
+            if (machine.available() < machine.capacity()) {
+                machine.recover();
+            }
+        }
+    }
+
+    public void run() {
+        try {
+            while (open && !due.isEmpty()) {
+                Transition next = due.peek();
+                long waitNs = next.atNs - System.nanoTime();
+                if (waitNs > 0) {
+                    Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+                    continue;
+                }
+                due.poll();
+                if (next.slotsLeft < 0) {
+                    next.machine.recover();
+                    if (planned == null) {
+                        due.add(new Transition(next.atNs + exponential(mtbfMs), next.machine, 0));
+                    }
+                } else {
+                    next.machine.fail(next.slotsLeft, policy == InProgress.lose);
+                    if (planned == null) {
+                        due.add(new Transition(next.atNs + exponential(mttrMs), next.machine, -1));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        }
+    }
+
+    // A fault as it happened in a run, and how the kitchen came back from it
+    private static class Outage {
+        final Machine machine;
+        final int slotsLeft;
+        final long downNs;
+        final int backlogBefore;
+        long upNs = -1;
+        int lost;
+        int peakBacklog;
+        long drainedNs = -1;
+
+        Outage(Machine machine, int slotsLeft, long downNs, int backlogBefore) {
+            this.machine = machine;
+            this.slotsLeft = slotsLeft;
+            this.downNs = downNs;
+            this.backlogBefore = backlogBefore;
+            this.peakBacklog = backlogBefore;
+        }
+    }
+
+    /**
+     * Summarizes a run's faults from its event log: each fault with the
+     * items it lost, the backlog of orders placed and not yet received
+     * before it and at its peak, how long after the machine was back the
+     * backlog took to drain to where it was, and the mean latency of
+     * orders in flight during the fault, next to that of orders no fault
+     * touched; then the throughput and latency recovery curve, in time
+     * buckets of the run.
+     */
+    String summarize(List<SimulationEvent> events) {
+        long startNs = events.get(0).timeNs();
+        long spanNs = Math.max(1, events.get(events.size() - 1).timeNs() - startNs);
+        long bucketNs = Math.max(1, (spanNs + BUCKETS - 1) / BUCKETS);
+        int[] completed = new int[BUCKETS];
+        long[] latencyNs = new long[BUCKETS];
+        int[] backlogAt = new int[BUCKETS];
+        int[] faultedAt = new int[BUCKETS];
+
+        HashMap<Integer, Long> placed = new HashMap<Integer, Long>();
+        HashMap<Integer, Long> received = new HashMap<Integer, Long>();
+        HashMap<Machine, Outage> current = new HashMap<Machine, Outage>();
+        List<Outage> outages = new ArrayList<Outage>();
+        List<Outage> draining = new ArrayList<Outage>();
+        int backlog = 0;
+        int lost = 0;
+        int bucket = 0;
+        for (SimulationEvent e : events) {
+            long t = e.timeNs();
+            int b = (int) Math.min(BUCKETS - 1, (t - startNs) / bucketNs);
+            for (; bucket < b; bucket++) {
+                backlogAt[bucket] = backlog;
+                faultedAt[bucket] = current.size();
+            }
+            switch (e.event) {
+                case CustomerPlacedOrder:
+                    placed.put(e.orderNumber, t);
+                    backlog++;
+                    break;
+                case CustomerReceivedOrder:
+                    received.put(e.orderNumber, t);
+                    completed[b]++;
+                    latencyNs[b] += t - placed.getOrDefault(e.orderNumber, t);
+                    backlog--;
+                    break;
+                case CustomerCancelledOrder:
+                    backlog--;
+                    break;
+                case MachineFault: {
+                    Outage outage = new Outage(e.machine, e.simParams[0], t, backlog);
+                    current.put(e.machine, outage);
+                    outages.add(outage);
+                    break;
+                }
+                case MachineLostFood:
+                    lost++;
+                    if (current.containsKey(e.machine)) {
+                        current.get(e.machine).lost++;
+                    }
+                    break;
+                case MachineRecovered: {
+                    Outage outage = current.remove(e.machine);
+                    if (outage != null) {
+                        outage.upNs = t;
+                        draining.add(outage);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            for (Outage outage : current.values()) {
+                outage.peakBacklog = Math.max(outage.peakBacklog, backlog);
+            }
+            for (int i = draining.size() - 1; i >= 0; i--) {
+                Outage outage = draining.get(i);
+                outage.peakBacklog = Math.max(outage.peakBacklog, backlog);
+                if (backlog <= outage.backlogBefore) {
+                    outage.drainedNs = t - outage.upNs;
+                    draining.remove(i);
+                }
+            }
+        }
+        for (; bucket < BUCKETS; bucket++) {
+            backlogAt[bucket] = backlog;
+            faultedAt[bucket] = current.size();
+        }
+
+        // Orders no fault touched, as the baseline latency
+        long untouchedNs = 0;
+        int untouched = 0;
+        for (Integer order : received.keySet()) {
+            long from = placed.getOrDefault(order, received.get(order));
+            if (inFlightDuring(from, received.get(order), outages, null) == null) {
+                untouchedNs += received.get(order) - from;
+                untouched++;
+            }
+        }
+        double baselineMs = untouched > 0 ? untouchedNs / 1e6 / untouched : 0;
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Machine faults (%s, items in progress %s): %d faults, %d items lost",
+                planned != null ? "planned" : String.format("random, MTBF %d ms, MTTR %d ms", mtbfMs, mttrMs),
+                policy == InProgress.lose ? "lost" : "held", outages.size(), lost));
+        out.append(untouched > 0 ? String.format(", %.1f ms mean latency of orders no fault touched%n", baselineMs)
+                : String.format(", every order touched by a fault%n"));
+        for (Outage outage : outages) {
+            long touchedNs = 0;
+            int touched = 0;
+            for (Integer order : received.keySet()) {
+                long from = placed.getOrDefault(order, received.get(order));
+                if (inFlightDuring(from, received.get(order), outages, outage) != null) {
+                    touchedNs += received.get(order) - from;
+                    touched++;
+                }
+            }
+            out.append(String.format("  %-12s %s at %7.1f ms", outage.machine,
+                    outage.slotsLeft == 0 ? "down" : "at " + outage.slotsLeft + "/" + outage.machine.capacity(),
+                    (outage.downNs - startNs) / 1e6));
+            out.append(outage.upNs < 0 ? String.format(" %-16s", "to the end")
+                    : String.format(" for %7.1f ms", (outage.upNs - outage.downNs) / 1e6));
+            out.append(String.format(", %d lost; backlog %d before, %d at peak, ", outage.lost,
+                    outage.backlogBefore, outage.peakBacklog));
+            out.append(outage.drainedNs < 0 ? "never drained"
+                    : String.format("drained %.1f ms after recovery", outage.drainedNs / 1e6));
+            if (touched > 0) {
+                out.append(String.format("; %d orders in flight, %.1f ms mean latency", touched, touchedNs / 1e6 / touched));
+            }
+            out.append(String.format("%n"));
+        }
+        out.append(String.format("Recovery curve:%n%10s %8s %10s %12s %8s %8s%n",
+                "from ms", "orders", "orders/s", "latency ms", "backlog", "faulted"));
+        for (int i = 0; i < BUCKETS; i++) {
+            out.append(String.format("%10.1f %8d %10.2f %12.1f %8d %8d%n", i * bucketNs / 1e6, completed[i],
+                    completed[i] * 1e9 / bucketNs, completed[i] > 0 ? latencyNs[i] / 1e6 / completed[i] : 0.0,
+                    backlogAt[i], faultedAt[i]));
+        }
+        return out.toString();
+    }
+
+    // The outage, of those given or only the one given, an order placed and received at these times was in flight during
+    private static Outage inFlightDuring(long fromNs, long toNs, List<Outage> outages, Outage only) {
+        for (Outage outage : outages) {
+            if ((only == null || outage == only) && fromNs < (outage.upNs < 0 ? Long.MAX_VALUE : outage.upNs)
+                    && toNs > outage.downNs) {
+                return outage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the same customers, from the same seed, with no faults, then
+     * with the given faults losing the items in progress, then holding
+     * them, and reports each run's throughput and latency, then the
+     * faulted runs' recovery from each fault.
+     *
+     * usage: java MachineFaults [customers] [cooks] [tables] [capacity] [seed] [faults]
+     */
+    public static void main(String[] args) {
+        int numCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int numCooks = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int numTables = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        String spec = args.length > 5 ? args[5] : "Fryer@1000+3000,Oven@2000+2000:1";
+
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, %d cooks, %d tables, machine capacity %d, seed %d, faults %s",
+                numCustomers, numCooks, numTables, capacity, seed, spec));
+        out.println(String.format("%10s %10s %12s %12s %6s %6s", "faults", "orders/s", "latency ms", "span ms", "lost", "valid"));
+        List<String> summaries = new ArrayList<String>();
+        try {
+            InProgress[] policies = { null, InProgress.lose, InProgress.hold };
+            for (InProgress policy : policies) {
+                MachineFaults faults = policy == null ? null : parse(spec, policy);
+                Simulation.setMachineFaults(faults);
+                Simulation.setSeed(seed);
+                Simulation.QuietRun run = Simulation.runQuietly(Kitchen.standard(capacity), numCustomers, numCooks, numTables, true);
+                List<SimulationEvent> events = run.events;
+                int lost = 0;
+                for (SimulationEvent e : events) {
+                    if (e.event == SimulationEvent.EventType.MachineLostFood) {
+                        lost++;
+                    }
+                }
+                BottleneckAnalyzer.Report report = BottleneckAnalyzer.analyze(events);
+                double ordersPerSec = report.spanMs > 0 ? 1000 * report.ordersAnalyzed / report.spanMs : 0;
+                out.println(String.format("%10s %10.2f %12.1f %12.1f %6d %6s", policy == null ? "none" : policy,
+                        ordersPerSec, report.meanLatencyMs(), report.spanMs, lost, run.valid));
+                if (faults != null) {
+                    summaries.add(faults.summarize(events));
+                }
+            }
+        } finally {
+            Simulation.setMachineFaults(null);
+        }
+        for (String summary : summaries) {
+            out.println();
+            out.print(summary);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures what live metrics cost the hot path, where events are logged.
+ * Whole runs vary by a fifth or so from one to the next, far more than the
+ * overhead of 2% at most that metrics are meant to add, so comparing runs
+ * cannot resolve it.  Instead, in the way of EventLogBenchmark, each round
+ * has its threads log the same number of events between them through
+ * Simulation.logEvent, once with metrics off and once with them on, while
+ * a client scrapes /metrics every scrape-ms and a page streams /events.
+ * The events are replayed from a real run on the event loop, against a
+ * kitchen of one 1 ms item per order, so they have a run's mix of kinds.
+ *
+ * The cost is the process CPU time per event logged, which includes
+ * serving the scrapes; a round logs millions of events, as the CPU clock
+ * only ticks every few milliseconds.  What metrics add is set against the CPU time per
+ * event of that whole run, the best of three, to give the overhead they
+ * add to a run.  The 2% target is taken at as many threads as the event
+ * loop runs, one per core.
+ *
+ * usage: java MetricsBenchmark [customers] [events-per-round] [scrape-ms] [seed]
+ */
+public class MetricsBenchmark {
+
+    /** Most overhead, in percent, serving metrics is meant to add to a run. */
+    static final double TARGET_PERCENT = 2;
+
+    private static final com.sun.management.OperatingSystemMXBean OS =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    private static final String KITCHEN = String.join("\n",
+            "food soda 1",
+            "station Fountain 1000 soda");
+
+    // Scrapes and streams the run's metrics until interrupted; counts the scrapes
+    private static class Client implements Runnable {
+        private final LiveMetrics metrics;
+        private final long scrapeMs;
+        volatile int scrapes = 0;
+
+        Client(LiveMetrics metrics, long scrapeMs) {
+            this.metrics = metrics;
+            this.scrapeMs = scrapeMs;
+        }
+
+        public void run() {
+            Thread page = new Thread(this::page, "Metrics page");
+            page.setDaemon(true);
+            page.start();
+            try {
+                while (!Thread.interrupted()) {
+                    int port = metrics.boundPort();
+                    if (port > 0) {
+                        try {
+                            read(get(port, "/metrics"));
+                            scrapes++;
+                        } catch (IOException e) {
+                            // The run ended during the scrape
+                        }
+                    }
+                    Thread.sleep(scrapeMs);
+                }
+            } catch (InterruptedException e) {
+                // Done
+            }
+            page.interrupt();
+        }
+
+        // Streams the events of each run in turn, as a browser would
+        private void page() {
+            try {
+                while (!Thread.interrupted()) {
+                    int port = metrics.boundPort();
+                    if (port > 0) {
+                        try {
+                            read(get(port, "/events"));
+                        } catch (IOException e) {
+                            // The run ended
+                        }
+                    }
+                    Thread.sleep(10);
+                }
+            } catch (InterruptedException e) {
+                // Done
+            }
+        }
+
+        private static HttpURLConnection get(int port, String path) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+            connection.setConnectTimeout(1000);
+            return connection;
+        }
+
+        private static void read(HttpURLConnection connection) throws IOException {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = connection.getInputStream()) {
+                while (in.read(buffer) >= 0) {
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    // Returns process CPU nanoseconds per event, with each thread logging its own stretch of the log
+    private static double round(int numThreads, int eventsPerRound, final List<SimulationEvent> log)
+            throws InterruptedException {
+        final int eventsPerThread = eventsPerRound / numThreads;
+        Simulation.beginEventLog();
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int from = (int) ((long) t * eventsPerThread % log.size());
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0, e = from; i < eventsPerThread; i++, e = e + 1 < log.size() ? e + 1 : 0) {
+                        Simulation.logEvent(log.get(e));
+                    }
+                }
+            });
+        }
+        long start = OS.getProcessCpuTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return (double) (OS.getProcessCpuTime() - start) / ((long) numThreads * eventsPerThread);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int numCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int eventsPerRound = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        long scrapeMs = args.length > 2 ? Long.parseLong(args[2]) : 100;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        int rounds = 5;
+        int loopThreads = Runtime.getRuntime().availableProcessors();
+        Kitchen kitchen = Kitchen.read(new BufferedReader(new StringReader(KITCHEN)), "benchmark kitchen");
+
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, 4 cooks of up to 250 orders, 1000 tables, scraping every %d ms, seed %d",
+                numCustomers, scrapeMs, seed));
+        // The run whose events are replayed, and its CPU time per event
+        List<SimulationEvent> log = null;
+        double runNs = Double.MAX_VALUE;
+        Simulation.setEventLoop(loopThreads);
+        Simulation.setCookOrderLimit(250);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Simulation.setSeed(seed);
+                log = null;
+                System.gc();
+                Simulation.QuietRun run = Simulation.runQuietly(kitchen, numCustomers, 4, 1000, false);
+                if (!run.valid) {
+                    throw new IllegalStateException("The run to replay did not validate");
+                }
+                log = run.events;
+                runNs = Math.min(runNs, (double) run.cpuNs / log.size());
+            }
+        } finally {
+            Simulation.setEventLoop(0);
+            Simulation.setCookOrderLimit(1);
+        }
+        out.println(String.format("The run costs %.0f ns of CPU per event, over %d events", runNs, log.size()));
+
+        LiveMetrics metrics = new LiveMetrics(0);
+        Client client = new Client(metrics, scrapeMs);
+        Thread clientThread = new Thread(client, "Metrics client");
+        clientThread.setDaemon(true);
+        clientThread.start();
+        Simulation.setEchoEvents(false);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int numThreads = 1; numThreads <= 64; numThreads *= 2) {
+            threadCounts.add(numThreads);
+        }
+        if (!threadCounts.contains(loopThreads)) {
+            threadCounts.add(loopThreads);
+            Collections.sort(threadCounts);
+        }
+        double[][] best = new double[threadCounts.size()][2];
+        try {
+            // One pass unmeasured, to warm up; then alternate off and on, and keep the best round of each
+            for (int i = -1; i < rounds; i++) {
+                for (int n = 0; n < threadCounts.size(); n++) {
+                    for (int on = 0; on <= 1; on++) {
+                        if (on == 1) {
+                            metrics.open(numCustomers);
+                            Simulation.setMetrics(metrics);
+                        }
+                        double ns;
+                        try {
+                            ns = round(threadCounts.get(n), eventsPerRound, log);
+                        } finally {
+                            if (on == 1) {
+                                Simulation.setMetrics(null);
+                                metrics.close();
+                            }
+                        }
+                        best[n][on] = i <= 0 ? ns : Math.min(best[n][on], ns);
+                    }
+                }
+            }
+        } finally {
+            System.setOut(out);
+            Simulation.setEchoEvents(true);
+            clientThread.interrupt();
+        }
+
+        out.println(String.format("%7s %10s %10s %10s %12s", "threads", "off ns", "on ns", "added ns", "of run"));
+        double loopPercent = 0;
+        for (int n = 0; n < threadCounts.size(); n++) {
+            double added = best[n][1] - best[n][0];
+            double percent = 100 * added / runNs;
+            if (threadCounts.get(n) == loopThreads) {
+                loopPercent = percent;
+            }
+            out.println(String.format("%7d %10.1f %10.1f %+10.1f %+11.2f%%",
+                    threadCounts.get(n), best[n][0], best[n][1], added, percent));
+        }
+        out.println(String.format("At %d threads, as the event loop runs, metrics add %+.2f%% to a run's CPU per event: %s",
+                loopThreads, loopPercent, loopPercent < TARGET_PERCENT ? String.format("under %.0f%%, as targeted", TARGET_PERCENT)
+                        : String.format("NOT under %.0f%%", TARGET_PERCENT)));
+    }
+}
@@ -0,0 +1,92 @@
+package MultiThreadedRestaurantSim;
+
+/**
+ * An OrderQueue held in an array ring, with every operation synchronized
+ * on the queue.  Order numbers are stored as ints, so placing an order
+ * neither boxes it nor allocates a node.
+ */
+class MonitorOrderQueue implements OrderQueue {
+
+    // States of an order number
+    private static final byte ABSENT = 0;
+    private static final byte QUEUED = 1;
+    private static final byte TAKEN = 2;
+
+    private final int[] ring;
+    private final byte[] states;
+    private int head = 0;
+    private int count = 0;
+    // Removed orders still in the ring
+    private int removed = 0;
+    final LockProfiler.LockStats monitorStats = new LockProfiler.LockStats("orderQueue");
+
+    MonitorOrderQueue(int maxOrderNum) {
+        ring = new int[Math.max(1, maxOrderNum)];
+        states = new byte[maxOrderNum + 1];
+    }
+
+    public boolean offer(int orderNum) {
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                if (count == ring.length) {
+                    return false;
+                }
+                ring[(head + count) % ring.length] = orderNum;
+                count++;
+                states[orderNum] = QUEUED;
+                return true;
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    public int poll() {
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                while (count > 0) {
+                    int orderNum = ring[head];
+                    head = (head + 1) % ring.length;
+                    count--;
+                    if (states[orderNum] == QUEUED) {
+                        states[orderNum] = TAKEN;
+                        return orderNum;
+                    }
+                    removed--;
+                }
+                return -1;
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    public boolean remove(int orderNum) {
+        long requested = LockProfiler.request();
+        synchronized (this) {
+            long acquired = monitorStats.acquired(requested);
+            try {
+                if (orderNum < 0 || orderNum >= states.length || states[orderNum] != QUEUED) {
+                    return false;
+                }
+                states[orderNum] = TAKEN;
+                removed++;
+                return true;
+            } finally {
+                monitorStats.released(acquired);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return count - removed;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
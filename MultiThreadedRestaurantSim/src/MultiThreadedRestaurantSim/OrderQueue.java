@@ -0,0 +1,58 @@
+package MultiThreadedRestaurantSim;
+
+/**
+ * The hand-off of placed orders from customers to cooks: a first-in,
+ * first-out queue of order numbers.  Order numbers run from 1 to the
+ * maxOrderNum the queue was created with, and each is offered at most once.
+ *
+ * An order can also be taken out of the queue by number, to cancel it or
+ * to claim a particular order when replaying.  Implementations leave such
+ * an order in place and skip it when it reaches the head, so size() can
+ * briefly count it after it was removed.
+ */
+public interface OrderQueue {
+
+    /** The implementations a run can use. */
+    enum Kind {
+        /** An array ring guarded by its monitor. */
+        monitor,
+        /** A lock-free ring that claims positions with compare-and-set. */
+        lockFree
+    }
+
+    /**
+     * Returns an empty queue of the given kind, with room for every order
+     * from 1 to maxOrderNum.
+     */
+    static OrderQueue create(Kind kind, int maxOrderNum) {
+        switch (kind) {
+            case lockFree:
+                return new RingOrderQueue(maxOrderNum);
+            default:
+                return new MonitorOrderQueue(maxOrderNum);
+        }
+    }
+
+    /**
+     * Adds an order at the tail.  Returns false if the queue is full.
+     */
+    boolean offer(int orderNum);
+
+    /**
+     * Takes the order at the head.  Returns -1 if there is none.
+     */
+    int poll();
+
+    /**
+     * Takes the given order out of the queue, wherever it is.  Returns
+     * false if it is not in the queue: never offered, or already taken.
+     */
+    boolean remove(int orderNum);
+
+    /**
+     * Returns the number of orders waiting.
+     */
+    int size();
+
+    boolean isEmpty();
+}
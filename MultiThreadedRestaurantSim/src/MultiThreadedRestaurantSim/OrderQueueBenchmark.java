@@ -0,0 +1,123 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.Arrays;
+
+/**
+ * Compares the OrderQueue implementations under contention.  A fixed set
+ * of customer threads offers orders while 1 to 256 cook threads poll for
+ * them, as cooks do in the simulation, until every order is claimed.
+ *
+ * Each implementation runs the same rounds, alternating, and the best
+ * round of each is reported as nanoseconds per order handed off.
+ *
+ * usage: java OrderQueueBenchmark [orders-per-round] [customer-threads]
+ */
+public class OrderQueueBenchmark {
+
+    // Set once every order of a round has been queued and claimed
+    private static volatile boolean drained;
+
+    // Returns nanoseconds per order
+    private static double round(OrderQueue.Kind kind, int numCooks, int numCustomers, final int numOrders)
+            throws InterruptedException {
+        final OrderQueue queue = OrderQueue.create(kind, numOrders);
+        final int[] claimed = new int[numCooks];
+
+        Thread[] customers = new Thread[numCustomers];
+        for (int c = 0; c < numCustomers; c++) {
+            final int first = c + 1;
+            final int stride = numCustomers;
+            customers[c] = new Thread(new Runnable() {
+                public void run() {
+                    for (int orderNum = first; orderNum <= numOrders; orderNum += stride) {
+                        queue.offer(orderNum);
+                    }
+                }
+            });
+        }
+
+        // Cooks stop at their first miss once the queue is drained
+        drained = false;
+        Thread[] cooks = new Thread[numCooks];
+        for (int k = 0; k < numCooks; k++) {
+            final int cook = k;
+            cooks[k] = new Thread(new Runnable() {
+                public void run() {
+                    int mine = 0;
+                    while (true) {
+                        if (queue.poll() != -1) {
+                            mine++;
+                        } else if (drained) {
+                            break;
+                        }
+                    }
+                    claimed[cook] = mine;
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread cook : cooks) {
+            cook.start();
+        }
+        for (Thread customer : customers) {
+            customer.start();
+        }
+        for (Thread customer : customers) {
+            customer.join();
+        }
+        while (!queue.isEmpty()) {
+            Thread.yield();
+        }
+        drained = true;
+        for (Thread cook : cooks) {
+            cook.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for (int mine : claimed) {
+            total += mine;
+        }
+        if (total != numOrders) {
+            throw new IllegalStateException(kind + " handed off " + total + " of " + numOrders + " orders");
+        }
+        return (double) elapsed / numOrders;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int numOrders = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int numCustomers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rounds = 3;
+        OrderQueue.Kind[] kinds = OrderQueue.Kind.values();
+
+        // Warm up every implementation
+        for (int i = 0; i < rounds; i++) {
+            for (OrderQueue.Kind kind : kinds) {
+                round(kind, 4, numCustomers, numOrders);
+            }
+        }
+
+        System.out.println(String.format("%d orders from %d customer threads, ns per order (best of %d)",
+                numOrders, numCustomers, rounds));
+        StringBuilder header = new StringBuilder(String.format("%7s", "cooks"));
+        for (OrderQueue.Kind kind : kinds) {
+            header.append(String.format(" %12s", kind));
+        }
+        System.out.println(header);
+        for (int numCooks = 1; numCooks <= 256; numCooks *= 2) {
+            double[] best = new double[kinds.length];
+            Arrays.fill(best, Double.MAX_VALUE);
+            for (int i = 0; i < rounds; i++) {
+                for (int k = 0; k < kinds.length; k++) {
+                    best[k] = Math.min(best[k], round(kinds[k], numCooks, numCustomers, numOrders));
+                }
+            }
+            StringBuilder line = new StringBuilder(String.format("%7d", numCooks));
+            for (double ns : best) {
+                line.append(String.format(" %12.1f", ns));
+            }
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A workload replayed from a point-of-sale export, in place of generated
+ * orders.  The export is a CSV file with one line per order line:
+ *
+ *   # comment
+ *   <ticket>,<time>,<item>,<quantity>
+ *
+ * where the lines of a ticket are consecutive, time is either epoch
+ * milliseconds or an ISO-8601 date-time, taken as UTC without a zone, and
+ * an item may be double-quoted.  A first line naming the columns is
+ * skipped.  Every ticket becomes a customer arriving at the ticket's time
+ * with the ticket's items as its order.
+ *
+ * Items are mapped onto the run's menu by name, ignoring case, or by an
+ * alias file with one "item = food" line per item whose name differs
+ * from the food's.  Items that map onto no food, such as drinks the
+ * kitchen does not make, are left out and counted, and tickets left with
+ * nothing for the kitchen are skipped.
+ *
+ * The file is memory-mapped a window at a time and read a ticket at a
+ * time, so reading a trace of a month of traffic does not hold the trace
+ * in the heap.  A run replaying it still does, in what it keeps of every
+ * order and in its event log.  Time is compressed by a factor, so a
+ * factor of 60 replays an hour in a minute.
+ */
+public class PosTrace {
+
+    /** Bytes of the file mapped at a time; no line may be longer. */
+    static final int WINDOW = 64 * 1024 * 1024;
+
+    final String path;
+    final double compression;
+    // Lower-cased item names to the food names they map onto
+    private final HashMap<String, String> aliases = new HashMap<String, String>();
+
+    // What the last reader made of the trace
+    private int ticketsRead;
+    private long firstMs;
+    private long lastMs;
+    private final TreeMap<String, Integer> unmapped = new TreeMap<String, Integer>();
+
+    /**
+     * @param path the POS export
+     * @param compression how many times faster than real time to replay it
+     */
+    public PosTrace(String path, double compression) {
+        if (!(compression > 0)) {
+            throw new IllegalArgumentException("Time compression must be positive");
+        }
+        this.path = path;
+        this.compression = compression;
+    }
+
+    /**
+     * Reads item aliases, one "item = food" per line; lines starting with
+     * # are comments.
+     */
+    public PosTrace loadAliases(String aliasPath) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(aliasPath))) {
+            String line;
+            int lineNum = 0;
+            while ((line = in.readLine()) != null) {
+                lineNum++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int equals = line.lastIndexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException(aliasPath + ":" + lineNum + ": expected item = food");
+                }
+                aliases.put(line.substring(0, equals).trim().toLowerCase(), line.substring(equals + 1).trim());
+            }
+        }
+        return this;
+    }
+
+    /** A ticket of the trace: when it was rung up and what the kitchen makes of it. */
+    static class Ticket {
+        final long timeMs;
+        final List<Food> order;
+
+        Ticket(long timeMs, List<Food> order) {
+            this.timeMs = timeMs;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Opens a reader of the trace's tickets against the kitchen's menu.
+     */
+    Reader open(Kitchen kitchen) throws IOException {
+        synchronized (this) {
+            ticketsRead = 0;
+            firstMs = lastMs = 0;
+            unmapped.clear();
+        }
+        return new Reader(kitchen);
+    }
+
+    /**
+     * Counts the tickets the trace has for the kitchen, reading it through.
+     */
+    int countTickets(Kitchen kitchen) throws IOException {
+        int count = 0;
+        try (Reader reader = open(kitchen)) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads tickets off the mapped file in order.  Only the simulation's
+     * thread uses a reader.
+     */
+    class Reader implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private final HashMap<String, Food> menu = new HashMap<String, Food>();
+        private MappedByteBuffer window;
+        // File offset of the window, and of the next line to read
+        private long windowStart;
+        private long position;
+        private int lineNum;
+        private boolean firstLine = true;
+        // The first line of the next ticket, once read
+        private String[] pending;
+
+        private Reader(Kitchen kitchen) throws IOException {
+            for (Food food : kitchen.foods) {
+                menu.put(food.name.toLowerCase(), food);
+            }
+            for (Map.Entry<String, String> alias : aliases.entrySet()) {
+                Food food = kitchen.food(alias.getValue());
+                if (food == null) {
+                    throw new IllegalArgumentException("Alias of " + alias.getKey() + " names " + alias.getValue()
+                            + ", which is not on the menu");
+                }
+                menu.put(alias.getKey(), food);
+            }
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            size = channel.size();
+            map(0);
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+        }
+
+        // The next non-blank, non-comment line split into fields, or null at the end of the file
+        private String[] readLine() throws IOException {
+            while (position < size) {
+                int from = (int) (position - windowStart);
+                int end = from;
+                while (end < window.limit() && window.get(end) != '\n') {
+                    end++;
+                }
+                if (end == window.limit() && windowStart + end < size) {
+                    if (from == 0) {
+                        throw new IOException(path + ":" + (lineNum + 1) + ": line longer than " + WINDOW + " bytes");
+                    }
+                    // The line runs past the window, so map the next window from its start
+                    map(position);
+                    continue;
+                }
+                position = windowStart + end + 1;
+                lineNum++;
+                int to = end > from && window.get(end - 1) == '\r' ? end - 1 : end;
+                byte[] bytes = new byte[to - from];
+                window.get(from, bytes);
+                String line = new String(bytes, StandardCharsets.UTF_8).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = split(line);
+                if (fields.length != 4) {
+                    throw new IllegalArgumentException(path + ":" + lineNum + ": expected ticket,time,item,quantity");
+                }
+                boolean header = firstLine && !isNumber(fields[3]);
+                firstLine = false;
+                if (header) {
+                    // Column names
+                    continue;
+                }
+                return fields;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the next ticket with something for the kitchen, or null
+         * once the trace is done.
+         */
+        Ticket next() throws IOException {
+            while (true) {
+                String[] line = pending != null ? pending : readLine();
+                pending = null;
+                if (line == null) {
+                    return null;
+                }
+                String ticket = line[0];
+                long timeMs = parseTime(line[1]);
+                List<Food> order = new ArrayList<Food>();
+                while (line != null && line[0].equals(ticket)) {
+                    add(order, line);
+                    line = readLine();
+                }
+                pending = line;
+                if (!order.isEmpty()) {
+                    synchronized (PosTrace.this) {
+                        if (ticketsRead++ == 0) {
+                            firstMs = timeMs;
+                        }
+                        lastMs = timeMs;
+                    }
+                    return new Ticket(timeMs, order);
+                }
+            }
+        }
+
+        private void add(List<Food> order, String[] line) {
+            int quantity;
+            try {
+                quantity = Integer.parseInt(line[3]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(path + ":" + lineNum + ": bad quantity " + line[3]);
+            }
+            Food food = menu.get(line[2].toLowerCase());
+            if (food == null) {
+                synchronized (PosTrace.this) {
+                    unmapped.merge(line[2], quantity, Integer::sum);
+                }
+                return;
+            }
+            for (int q = 0; q < quantity; q++) {
+                order.add(food);
+            }
+        }
+
+        private long parseTime(String time) {
+            try {
+                if (isNumber(time)) {
+                    return Long.parseLong(time);
+                }
+                // An offset, if the time has one, else UTC
+                TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(time.replace(' ', 'T'),
+                        OffsetDateTime::from, LocalDateTime::from);
+                if (parsed instanceof OffsetDateTime) {
+                    return ((OffsetDateTime) parsed).toInstant().toEpochMilli();
+                }
+                return ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(path + ":" + lineNum + ": bad time " + time);
+            }
+        }
+
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+
+    private static boolean isNumber(String field) {
+        if (field.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (!Character.isDigit(field.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Splits a CSV line, with double-quoted fields holding commas or doubled quotes
+    private static String[] split(String line) {
+        List<String> fields = new ArrayList<String>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Summarizes what the last replay made of the trace.
+     */
+    synchronized String summarize() {
+        StringBuilder out = new StringBuilder(String.format(
+                "Workload: %d tickets from %s, spanning %.1f min of trading, replayed at %.0fx speed",
+                ticketsRead, path, (lastMs - firstMs) / 60000.0, compression));
+        if (!unmapped.isEmpty()) {
+            int items = 0;
+            for (int quantity : unmapped.values()) {
+                items += quantity;
+            }
+            out.append(String.format("; %d items not on the menu left out: %s", items, unmapped));
+        }
+        return out.append(String.format("%n")).toString();
+    }
+
+    /**
+     * Reads a trace through against the standard kitchen, or a kitchen
+     * file, and prints its tickets, span, items per food, and arrivals
+     * per hour, without replaying it.
+     *
+     * usage: java PosTrace <trace> [aliases] [kitchen]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: java PosTrace <trace> [aliases] [kitchen]");
+            System.exit(1);
+        }
+        PosTrace trace = new PosTrace(args[0], 1);
+        if (args.length > 1) {
+            trace.loadAliases(args[1]);
+        }
+        Kitchen kitchen = args.length > 2 ? Kitchen.load(args[2]) : Kitchen.standard(4);
+        int[] items = new int[kitchen.foods.length];
+        TreeMap<Long, Integer> perHour = new TreeMap<Long, Integer>();
+        try (Reader reader = trace.open(kitchen)) {
+            Ticket ticket;
+            while ((ticket = reader.next()) != null) {
+                for (Food food : ticket.order) {
+                    items[food.id]++;
+                }
+                perHour.merge(ticket.timeMs / 3600000, 1, Integer::sum);
+            }
+        }
+        System.out.print(trace.summarize());
+        for (Food food : kitchen.foods) {
+            System.out.println(String.format("%12s %8d", food.name, items[food.id]));
+        }
+        for (Map.Entry<Long, Integer> hour : perHour.entrySet()) {
+            System.out.println(String.format("%s %6d tickets",
+                    Instant.ofEpochMilli(hour.getKey() * 3600000), hour.getValue()));
+        }
+    }
+}
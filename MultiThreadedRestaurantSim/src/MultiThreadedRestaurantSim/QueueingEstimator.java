@@ -0,0 +1,379 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Predicts a configuration's throughput and latency analytically, without
+ * running it, so that candidate configurations can be screened before
+ * simulating the promising ones.
+ *
+ * The restaurant is modelled as a closed queueing network: the tables hold
+ * a fixed population of customers, each of whom places an order that waits
+ * for one of the cooks.  A cook holds the order until its last item comes
+ * off a machine, so the cooks' service time is the expected makespan of
+ * an order across the machines, including the wait for a machine slot.
+ * Machines are multi-server stations with deterministic service times,
+ * whose waits are approximated as M/D/c queues.  A station with several
+ * machines is taken as one machine with their combined capacity, as if
+ * cooks always found the one with a free slot.
+ *
+ * The cook pool is solved with mean-value analysis, using Seidmann's
+ * approximation for its multiple servers, and the cooks' service time and
+ * the machines' waits are iterated to a fixed point.
+ */
+public class QueueingEstimator {
+
+    /**
+     * A predicted configuration.  Times are in milliseconds.
+     */
+    public static class Estimate {
+        public final double throughputPerSec;
+        // From a customer entering the restaurant to receiving the order
+        public final double seatedLatencyMs;
+        // Time to serve every customer, who all show up at the start
+        public final double makespanMs;
+        public final double cookServiceMs;
+        public final double cookUtilization;
+        // Indexed by station id
+        public final double[] machineUtilization;
+
+        Estimate(double throughputPerSec, double seatedLatencyMs, double makespanMs,
+                 double cookServiceMs, double cookUtilization, double[] machineUtilization) {
+            this.throughputPerSec = throughputPerSec;
+            this.seatedLatencyMs = seatedLatencyMs;
+            this.makespanMs = makespanMs;
+            this.cookServiceMs = cookServiceMs;
+            this.cookUtilization = cookUtilization;
+            this.machineUtilization = machineUtilization;
+        }
+
+        public String toString() {
+            return String.format("%.2f orders/s, seated latency %.1f ms, makespan %.1f ms, cook service %.1f ms, cooks %.0f%% busy",
+                    throughputPerSec, seatedLatencyMs, makespanMs, cookServiceMs, 100 * cookUtilization);
+        }
+    }
+
+    // A discrete distribution, as parallel arrays of values and probabilities
+    private static class Distribution {
+        final double[] values;
+        final double[] probs;
+
+        Distribution(double[] values, double[] probs) {
+            this.values = values;
+            this.probs = probs;
+        }
+    }
+
+    // More outcomes than this for one station's items are replaced by their mean
+    private static final int MAX_OUTCOMES = 4096;
+    private static final int MAX_ITERATIONS = 100;
+
+    private final Kitchen kitchen;
+    private final double overheadMs;
+
+    public QueueingEstimator(Kitchen kitchen) {
+        this(kitchen, 0);
+    }
+
+    /**
+     * @param overheadMs time a cook spends on every order beyond the makespan
+     *   of its items, such as noticing completed items; see calibrate()
+     */
+    public QueueingEstimator(Kitchen kitchen, double overheadMs) {
+        this.kitchen = kitchen;
+        this.overheadMs = overheadMs;
+    }
+
+    double overheadMs() {
+        return overheadMs;
+    }
+
+    // Distribution of how many of a food an order contains
+    private static Distribution itemCounts(boolean randomOrders) {
+        if (randomOrders) {
+            // Simulation orders 0-3 of each food, uniformly
+            return new Distribution(new double[] { 0, 1, 2, 3 }, new double[] { 0.25, 0.25, 0.25, 0.25 });
+        }
+        return new Distribution(new double[] { 1 }, new double[] { 1 });
+    }
+
+    /**
+     * Distribution of the work an order puts on one station, as outcomes of
+     * (items, total cook time, longest cook time).  Each recipe step on the
+     * station counts as an item of its own; the waits between an item's
+     * steps are not modeled, so multi-step recipes are approximated.
+     */
+    private static double[][] stationWork(Kitchen.Station station, Distribution counts) {
+        List<double[]> outcomes = new ArrayList<double[]>();
+        outcomes.add(new double[] { 0, 0, 0, 1 });
+        for (Kitchen.Step step : station.steps) {
+            List<double[]> next = new ArrayList<double[]>();
+            for (double[] outcome : outcomes) {
+                for (int i = 0; i < counts.values.length; i++) {
+                    double n = counts.values[i];
+                    next.add(new double[] {
+                            outcome[0] + n,
+                            outcome[1] + n * step.timeMs,
+                            n > 0 ? Math.max(outcome[2], step.timeMs) : outcome[2],
+                            outcome[3] * counts.probs[i] });
+                }
+            }
+            outcomes = next;
+            if (outcomes.size() > MAX_OUTCOMES) {
+                // Collapse to the mean outcome
+                double[] mean = new double[4];
+                for (double[] outcome : outcomes) {
+                    for (int k = 0; k < 3; k++) {
+                        mean[k] += outcome[k] * outcome[3];
+                    }
+                }
+                mean[3] = 1;
+                outcomes.clear();
+                outcomes.add(mean);
+            }
+        }
+        return outcomes.toArray(new double[0][]);
+    }
+
+    // Erlang C: probability that an arrival to an M/M/c queue with offered load a has to wait
+    private static double erlangC(int c, double a) {
+        double term = 1;
+        double sum = 1;
+        for (int k = 1; k < c; k++) {
+            term *= a / k;
+            sum += term;
+        }
+        double last = term * a / c;
+        double rho = a / c;
+        double top = last / (1 - rho);
+        return top / (sum + top);
+    }
+
+    // Mean wait for a slot at a station with deterministic service, as M/D/c
+    private static double slotWait(int capacity, double itemsPerMs, double meanCookMs) {
+        if (itemsPerMs <= 0 || meanCookMs <= 0) {
+            return 0;
+        }
+        double a = itemsPerMs * meanCookMs;
+        if (a >= capacity) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double wMMc = erlangC(capacity, a) * meanCookMs / (capacity - a);
+        // Deterministic service halves the M/M/c wait (Allen-Cunneen)
+        return 0.5 * wMMc;
+    }
+
+    // Expected maximum of independent discrete distributions
+    private static double expectedMax(List<Distribution> distributions) {
+        int total = 0;
+        for (Distribution d : distributions) {
+            total += d.values.length;
+        }
+        double[] points = new double[total];
+        int p = 0;
+        for (Distribution d : distributions) {
+            for (double v : d.values) {
+                points[p++] = v;
+            }
+        }
+        Arrays.sort(points);
+        double expected = 0;
+        double prevCdf = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (i > 0 && points[i] == points[i - 1]) {
+                continue;
+            }
+            double cdf = 1;
+            for (Distribution d : distributions) {
+                double below = 0;
+                for (int k = 0; k < d.values.length; k++) {
+                    if (d.values[k] <= points[i]) {
+                        below += d.probs[k];
+                    }
+                }
+                cdf *= below;
+            }
+            expected += points[i] * (cdf - prevCdf);
+            prevCdf = cdf;
+        }
+        return expected;
+    }
+
+    // Mean response time of n customers at c servers with service time s, by MVA with Seidmann's approximation
+    private static double cookResponse(int n, int c, double s) {
+        double queueing = s / c;
+        double delay = s * (c - 1) / c;
+        double q = 0;
+        double r = 0;
+        for (int k = 1; k <= n; k++) {
+            double rq = queueing * (1 + q);
+            r = rq + delay;
+            q = (k / r) * rq;
+        }
+        return r;
+    }
+
+    /**
+     * Predicts a configuration of this estimator's kitchen.
+     */
+    public Estimate estimate(int numCustomers, int numCooks, int numTables, boolean randomOrders) {
+        int stations = kitchen.stations.length;
+        double[] utilization = new double[stations];
+        int population = Math.min(numCustomers, numTables);
+        if (population <= 0 || numCooks <= 0) {
+            return new Estimate(0, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, 0, utilization);
+        }
+
+        Distribution counts = itemCounts(randomOrders);
+        double[][][] work = new double[stations][][];
+        double[] meanItems = new double[stations];
+        double[] meanCook = new double[stations];
+        double maxThroughput = Double.POSITIVE_INFINITY;
+        for (Kitchen.Station station : kitchen.stations) {
+            work[station.id] = stationWork(station, counts);
+            double items = 0;
+            double cookTime = 0;
+            for (double[] outcome : work[station.id]) {
+                items += outcome[0] * outcome[3];
+                cookTime += outcome[1] * outcome[3];
+            }
+            meanItems[station.id] = items;
+            meanCook[station.id] = items > 0 ? cookTime / items : 0;
+            if (cookTime > 0) {
+                maxThroughput = Math.min(maxThroughput, station.capacity / cookTime);
+            }
+        }
+
+        // Iterate throughput (orders per ms) and cook service time to a fixed point
+        double throughput = 0;
+        double service = 0;
+        List<Distribution> finish = new ArrayList<Distribution>(stations);
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            finish.clear();
+            for (Kitchen.Station station : kitchen.stations) {
+                double wait = slotWait(station.capacity, throughput * meanItems[station.id], meanCook[station.id]);
+                double[][] outcomes = work[station.id];
+                double[] values = new double[outcomes.length];
+                double[] probs = new double[outcomes.length];
+                for (int i = 0; i < outcomes.length; i++) {
+                    double[] outcome = outcomes[i];
+                    // Items on a station cook in parallel up to its capacity
+                    values[i] = outcome[0] == 0 ? 0 :
+                            wait + Math.max(outcome[2], outcome[1] / station.capacity);
+                    probs[i] = outcome[3];
+                }
+                finish.add(new Distribution(values, probs));
+            }
+            service = expectedMax(finish) + overheadMs;
+            double next = population / cookResponse(population, numCooks, service);
+            next = Math.min(next, 0.999 * maxThroughput);
+            if (Math.abs(next - throughput) <= 1e-6 * next) {
+                throughput = next;
+                break;
+            }
+            throughput = iteration == 0 ? next : 0.5 * (throughput + next);
+        }
+
+        for (Kitchen.Station station : kitchen.stations) {
+            utilization[station.id] = throughput * meanItems[station.id] * meanCook[station.id] / station.capacity;
+        }
+        double seatedLatency = population / throughput;
+        double makespan = numCustomers / throughput;
+        double cookUtilization = Math.min(1, throughput * service / numCooks);
+        return new Estimate(1000 * throughput, seatedLatency, makespan, service, cookUtilization, utilization);
+    }
+
+    /**
+     * Runs each configuration, given as {customers, cooks, tables}, through
+     * both the estimator and runSimulation, and prints the predictions
+     * next to the measurements.  Returns an estimator whose per-order
+     * overhead is fitted to the measured runs.
+     */
+    public static QueueingEstimator calibrate(Kitchen kitchen, int[][] configs, boolean randomOrders) {
+        QueueingEstimator estimator = new QueueingEstimator(kitchen);
+        PrintStream out = System.out;
+        double overheadSum = 0;
+        double throughputError = 0;
+        double latencyError = 0;
+        int runs = 0;
+
+        out.println(String.format("%9s %6s %6s | %10s %10s | %10s %10s | %7s %7s",
+                "customers", "cooks", "tables", "pred ord/s", "meas ord/s", "pred ms", "meas ms", "err tp", "err lat"));
+        for (int[] config : configs) {
+            Estimate predicted = estimator.estimate(config[0], config[1], config[2], randomOrders);
+
+            BottleneckAnalyzer.Report report = BottleneckAnalyzer.analyze(
+                    Simulation.runQuietly(kitchen, config[0], config[1], config[2], randomOrders).events);
+
+            double[] phases = report.meanPhaseMs;
+            double measuredLatency = report.meanLatencyMs() - phases[BottleneckAnalyzer.Phase.table.ordinal()];
+            double measuredThroughput = report.spanMs > 0 ? 1000 * report.ordersAnalyzed / report.spanMs : 0;
+            double measuredService = phases[BottleneckAnalyzer.Phase.slot.ordinal()] +
+                    phases[BottleneckAnalyzer.Phase.cooking.ordinal()] +
+                    phases[BottleneckAnalyzer.Phase.handoff.ordinal()];
+            double tpError = (predicted.throughputPerSec - measuredThroughput) / measuredThroughput;
+            double latError = (predicted.seatedLatencyMs - measuredLatency) / measuredLatency;
+
+            out.println(String.format("%9d %6d %6d | %10.2f %10.2f | %10.1f %10.1f | %6.1f%% %6.1f%%",
+                    config[0], config[1], config[2],
+                    predicted.throughputPerSec, measuredThroughput,
+                    predicted.seatedLatencyMs, measuredLatency,
+                    100 * tpError, 100 * latError));
+
+            overheadSum += measuredService - predicted.cookServiceMs;
+            throughputError += Math.abs(tpError);
+            latencyError += Math.abs(latError);
+            runs++;
+        }
+        if (runs == 0) {
+            return estimator;
+        }
+        double overhead = Math.max(0, overheadSum / runs);
+        out.println(String.format("Mean absolute error: throughput %.1f%%, seated latency %.1f%%",
+                100 * throughputError / runs, 100 * latencyError / runs));
+        out.println(String.format("Fitted per-order overhead: %.1f ms", overhead));
+        return new QueueingEstimator(kitchen, overhead);
+    }
+
+    /**
+     * Calibrates the estimator against a small grid of runs, then screens a
+     * large grid of configurations with it and prints the best ones.
+     *
+     * usage: java QueueingEstimator [kitchen-file]
+     */
+    public static void main(String[] args) throws IOException {
+        Kitchen kitchen = args.length > 0 ? Kitchen.load(args[0]) : Kitchen.standard(4);
+        int[][] calibration = {
+                { 40, 2, 4 }, { 40, 4, 8 }, { 40, 8, 8 }, { 60, 8, 16 }, { 60, 16, 16 }
+        };
+        QueueingEstimator estimator = calibrate(kitchen, calibration, true);
+
+        int numCustomers = 1000;
+        int candidates = 0;
+        double bestThroughput = 0;
+        int[] best = null;
+        long start = System.nanoTime();
+        for (int cooks = 1; cooks <= 64; cooks++) {
+            for (int tables = 1; tables <= 128; tables++) {
+                Estimate estimate = estimator.estimate(numCustomers, cooks, tables, true);
+                candidates++;
+                // Prefer the smallest staff within 1% of the best throughput seen
+                if (estimate.throughputPerSec > 1.01 * bestThroughput) {
+                    bestThroughput = estimate.throughputPerSec;
+                    best = new int[] { cooks, tables };
+                }
+            }
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / candidates;
+        System.out.println(String.format("Screened %d configurations at %.1f us each", candidates, micros));
+        if (best != null) {
+            System.out.println(String.format("Best: %d cooks, %d tables: %s",
+                    best[0], best[1], estimator.estimate(numCustomers, best[0], best[1], true)));
+        }
+    }
+}
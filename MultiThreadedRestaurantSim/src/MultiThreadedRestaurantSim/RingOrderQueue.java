@@ -0,0 +1,128 @@
+package MultiThreadedRestaurantSim;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A lock-free OrderQueue: a bounded ring that any number of customers can
+ * offer to and any number of cooks can poll from at once.
+ *
+ * Each cell of the ring carries a sequence number that says whose turn it
+ * is.  A cell at position p is free for the producer claiming position p
+ * when its sequence is p, and holds an order for the consumer claiming p
+ * when its sequence is p + 1.  Producers and consumers claim positions by
+ * compare-and-set on the enqueue and dequeue counters, fill or empty the
+ * cell, and then publish it by advancing its sequence, so a cell is only
+ * ever touched by the one thread that claimed it.
+ *
+ * Removing an order by number marks it taken; whoever then polls it from
+ * the ring skips it.
+ */
+class RingOrderQueue implements OrderQueue {
+
+    // States of an order number
+    private static final int QUEUED = 1;
+    private static final int TAKEN = 2;
+
+    private static final AtomicLongFieldUpdater<RingOrderQueue> ENQUEUE =
+            AtomicLongFieldUpdater.newUpdater(RingOrderQueue.class, "enqueuePos");
+    private static final AtomicLongFieldUpdater<RingOrderQueue> DEQUEUE =
+            AtomicLongFieldUpdater.newUpdater(RingOrderQueue.class, "dequeuePos");
+    private static final AtomicIntegerFieldUpdater<RingOrderQueue> REMOVED =
+            AtomicIntegerFieldUpdater.newUpdater(RingOrderQueue.class, "removed");
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] orders;
+    private final AtomicIntegerArray states;
+
+    // Producers and consumers hammer the two counters, so keep them on separate cache lines
+    long p0, p1, p2, p3, p4, p5, p6;
+    private volatile long enqueuePos = 0;
+    long q0, q1, q2, q3, q4, q5, q6;
+    private volatile long dequeuePos = 0;
+    long r0, r1, r2, r3, r4, r5, r6;
+    // Removed orders still in the ring
+    private volatile int removed = 0;
+
+    RingOrderQueue(int maxOrderNum) {
+        int size = Integer.highestOneBit(Math.max(1, maxOrderNum - 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        orders = new int[size];
+        states = new AtomicIntegerArray(maxOrderNum + 1);
+    }
+
+    public boolean offer(int orderNum) {
+        long pos = enqueuePos;
+        while (true) {
+            int cell = (int) (pos & mask);
+            long turn = sequences.get(cell) - pos;
+            if (turn == 0) {
+                if (ENQUEUE.compareAndSet(this, pos, pos + 1)) {
+                    break;
+                }
+                pos = enqueuePos;
+            } else if (turn < 0) {
+                // The cell still holds the order from a lap ago
+                return false;
+            } else {
+                pos = enqueuePos;
+            }
+        }
+        int cell = (int) (pos & mask);
+        states.set(orderNum, QUEUED);
+        orders[cell] = orderNum;
+        sequences.set(cell, pos + 1);
+        return true;
+    }
+
+    public int poll() {
+        long pos = dequeuePos;
+        while (true) {
+            int cell = (int) (pos & mask);
+            long turn = sequences.get(cell) - (pos + 1);
+            if (turn == 0) {
+                if (DEQUEUE.compareAndSet(this, pos, pos + 1)) {
+                    int orderNum = orders[cell];
+                    sequences.set(cell, pos + mask + 1);
+                    if (states.compareAndSet(orderNum, QUEUED, TAKEN)) {
+                        return orderNum;
+                    }
+                    // Removed while queued; skip it
+                    REMOVED.decrementAndGet(this);
+                }
+                pos = dequeuePos;
+            } else if (turn < 0) {
+                return -1;
+            } else {
+                pos = dequeuePos;
+            }
+        }
+    }
+
+    public boolean remove(int orderNum) {
+        if (orderNum < 0 || orderNum >= states.length()) {
+            return false;
+        }
+        if (states.compareAndSet(orderNum, QUEUED, TAKEN)) {
+            REMOVED.incrementAndGet(this);
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        long queued = enqueuePos - dequeuePos - removed;
+        return (int) Math.max(0, queued);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,226 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Schedule is the order in which actors won the simulation's key
+ * synchronization points during one run:
+ *
+ *   admission    - which customer got each free table,
+ *   order claim  - which cook claimed which order,
+ *   machine slot - which cook got each slot of a machine, for which order and food.
+ *
+ * A new Schedule records a run.  A Schedule loaded from a file replays it:
+ * an actor only wins a synchronization point when it is the next one
+ * recorded there, so the replayed run makes the same decisions in the
+ * same order as the recorded one.  Together with the run's seed, this
+ * reproduces a run exactly, up to timing.
+ *
+ * Each sequence is only touched while holding the monitor of the
+ * synchronization point it records (frontDoor, orderLock, or the Machine),
+ * so Schedule needs no locking of its own.
+ */
+public class Schedule {
+
+    // A growable list of ints, with a replay cursor.
+    private static class IntSequence {
+        private int[] values = new int[64];
+        private int size = 0;
+        private int cursor = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        boolean hasNext(int width) {
+            return cursor + width <= size;
+        }
+
+        int peek(int offset) {
+            return values[cursor + offset];
+        }
+
+        void advance(int width) {
+            cursor += width;
+        }
+    }
+
+    private final boolean replay;
+    private long seed;
+    // Entries: orderNum of the admitted customer
+    private final IntSequence admissions = new IntSequence();
+    // Entries: cook id, orderNum
+    private final IntSequence claims = new IntSequence();
+    // Per machine id. Entries: cook id, orderNum, food id
+    private final List<IntSequence> slots = new ArrayList<IntSequence>();
+
+    /**
+     * Creates a Schedule that records the next run.
+     */
+    public Schedule() {
+        this.replay = false;
+    }
+
+    private Schedule(long seed) {
+        this.replay = true;
+        this.seed = seed;
+    }
+
+    boolean isReplay() {
+        return replay;
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    private IntSequence slots(Machine machine) {
+        while (slots.size() <= machine.id) {
+            slots.add(new IntSequence());
+        }
+        return slots.get(machine.id);
+    }
+
+    /**
+     * Called holding frontDoor when a table is free.  Returns whether the
+     * customer may take it, recording the admission if so.
+     */
+    boolean admit(int orderNum) {
+        if (!replay) {
+            admissions.add(orderNum);
+            return true;
+        }
+        if (!admissions.hasNext(1) || admissions.peek(0) != orderNum) {
+            return false;
+        }
+        admissions.advance(1);
+        return true;
+    }
+
+    /**
+     * Called holding orderLock.  Returns the order this cook is scheduled to
+     * claim next, or -1 if another cook claims the next order.
+     * Only meaningful when replaying.
+     */
+    int nextClaim(Cook cook) {
+        if (!claims.hasNext(2) || claims.peek(0) != cook.id) {
+            return -1;
+        }
+        return claims.peek(1);
+    }
+
+    /**
+     * Called holding orderLock once the cook has claimed the order.
+     */
+    void claimed(Cook cook, int orderNum) {
+        if (replay) {
+            claims.advance(2);
+        } else {
+            claims.add(cook.id);
+            claims.add(orderNum);
+        }
+    }
+
+    /**
+     * Called holding the Machine's monitor when it has a free slot.  Returns
+     * whether the cook may take it for the given item, recording the slot
+     * if so.
+     */
+    boolean takeSlot(Machine machine, Cook cook, int orderNum, Food food) {
+        IntSequence sequence = slots(machine);
+        if (!replay) {
+            sequence.add(cook.id);
+            sequence.add(orderNum);
+            sequence.add(food.id);
+            return true;
+        }
+        if (!sequence.hasNext(3) ||
+                sequence.peek(0) != cook.id ||
+                sequence.peek(1) != orderNum ||
+                sequence.peek(2) != food.id) {
+            return false;
+        }
+        sequence.advance(3);
+        return true;
+    }
+
+    /**
+     * Writes the schedule, one synchronization point per line:
+     *
+     *   seed  <seed>
+     *   admit <orderNum>
+     *   claim <cook> <orderNum>
+     *   slot  <machine> <cook> <orderNum> <food>
+     */
+    public void save(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println("seed " + seed);
+            for (int i = 0; i < admissions.size; i++) {
+                out.println("admit " + admissions.values[i]);
+            }
+            for (int i = 0; i < claims.size; i += 2) {
+                out.println("claim " + claims.values[i] + " " + claims.values[i + 1]);
+            }
+            for (int m = 0; m < slots.size(); m++) {
+                IntSequence sequence = slots.get(m);
+                for (int i = 0; i < sequence.size; i += 3) {
+                    out.println("slot " + m + " " + sequence.values[i] + " " +
+                            sequence.values[i + 1] + " " + sequence.values[i + 2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a recorded schedule for replay.
+     */
+    public static Schedule load(String path) throws IOException {
+        Schedule schedule = new Schedule(0);
+        try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNum = 0;
+            while ((line = in.readLine()) != null) {
+                lineNum++;
+                String[] tokens = line.trim().split("\\s+");
+                try {
+                    if (tokens[0].equals("seed") && tokens.length == 2) {
+                        schedule.seed = Long.parseLong(tokens[1]);
+                    } else if (tokens[0].equals("admit") && tokens.length == 2) {
+                        schedule.admissions.add(Integer.parseInt(tokens[1]));
+                    } else if (tokens[0].equals("claim") && tokens.length == 3) {
+                        schedule.claims.add(Integer.parseInt(tokens[1]));
+                        schedule.claims.add(Integer.parseInt(tokens[2]));
+                    } else if (tokens[0].equals("slot") && tokens.length == 5) {
+                        int machine = Integer.parseInt(tokens[1]);
+                        while (schedule.slots.size() <= machine) {
+                            schedule.slots.add(new IntSequence());
+                        }
+                        IntSequence sequence = schedule.slots.get(machine);
+                        sequence.add(Integer.parseInt(tokens[2]));
+                        sequence.add(Integer.parseInt(tokens[3]));
+                        sequence.add(Integer.parseInt(tokens[4]));
+                    } else if (!tokens[0].isEmpty()) {
+                        throw new IllegalArgumentException("unrecognized entry");
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(path + ":" + lineNum + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return schedule;
+    }
+}
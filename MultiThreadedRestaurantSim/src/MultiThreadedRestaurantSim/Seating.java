@@ -0,0 +1,257 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Seats parties of customers at tables of different sizes.  Each Customer
+ * actor is a party of 1 to maxPartySize guests sharing one order, and the
+ * restaurant has a fixed inventory of tables, each seating some number of
+ * guests.  Parties wait in line in the order they arrived, and are seated
+ * by one of three policies:
+ *
+ *   fifo        - only the party at the head of the line is seated, at
+ *                 the first free table it fits
+ *   bestFit     - only the party at the head of the line is seated, at
+ *                 the smallest free table it fits
+ *   bestFitSkip - any party may be seated at the smallest free table it
+ *                 fits, if no party ahead of it fits that table, passing
+ *                 over the parties that do not; a party passed over
+ *                 SKIP_LIMIT times blocks the line until it is seated
+ *
+ * A Seating's state is guarded by Simulation's frontDoor lock.
+ */
+public class Seating {
+
+    public enum Policy { fifo, bestFit, bestFitSkip }
+
+    /** Times a party may be passed over by bestFitSkip before it must go next. */
+    static final int SKIP_LIMIT = 4;
+
+    final int[] tableSeats;
+    final int maxPartySize;
+    final Policy policy;
+
+    private boolean[] occupied;
+    private final LinkedList<Customer> line = new LinkedList<Customer>();
+    private final HashMap<Customer, Integer> timesSkipped = new HashMap<Customer, Integer>();
+
+    /**
+     * @param tableSeats the seats at each table
+     * @param maxPartySize parties have 1 to this many guests
+     */
+    public Seating(int[] tableSeats, int maxPartySize, Policy policy) {
+        int largest = 0;
+        for (int seats : tableSeats) {
+            if (seats < 1) {
+                throw new IllegalArgumentException("A table needs at least one seat");
+            }
+            largest = Math.max(largest, seats);
+        }
+        if (maxPartySize < 1 || maxPartySize > largest) {
+            throw new IllegalArgumentException("Parties of " + maxPartySize + " do not fit the largest table, of " + largest);
+        }
+        this.tableSeats = tableSeats.clone();
+        this.maxPartySize = maxPartySize;
+        this.policy = policy;
+        this.occupied = new boolean[tableSeats.length];
+    }
+
+    /**
+     * Parses a table inventory given as comma-separated count x seats
+     * terms, e.g. "4x2,4x4,2x6,1x8" for four two-tops, four four-tops,
+     * two six-tops and one eight-top.
+     */
+    public static Seating parse(String tables, int maxPartySize, Policy policy) {
+        List<Integer> seats = new ArrayList<Integer>();
+        for (String term : tables.split(",")) {
+            String[] countSeats = term.trim().split("x");
+            if (countSeats.length != 2) {
+                throw new IllegalArgumentException("Expected count x seats: " + term);
+            }
+            int count = Integer.parseInt(countSeats[0]);
+            for (int i = 0; i < count; i++) {
+                seats.add(Integer.parseInt(countSeats[1]));
+            }
+        }
+        int[] tableSeats = new int[seats.size()];
+        for (int i = 0; i < tableSeats.length; i++) {
+            tableSeats[i] = seats.get(i);
+        }
+        return new Seating(tableSeats, maxPartySize, policy);
+    }
+
+    int totalSeats() {
+        int total = 0;
+        for (int seats : tableSeats) {
+            total += seats;
+        }
+        return total;
+    }
+
+    // Empties the tables and the line, before a run
+    void reset() {
+        occupied = new boolean[tableSeats.length];
+        line.clear();
+        timesSkipped.clear();
+    }
+
+    /**
+     * Called holding frontDoor by a party trying to enter.  The first call
+     * puts the party in line.  Returns the table the policy would seat it
+     * at now, or -1 if it must keep waiting.
+     */
+    int choose(Customer party) {
+        if (!timesSkipped.containsKey(party)) {
+            line.add(party);
+            timesSkipped.put(party, 0);
+        }
+        if (policy != Policy.bestFitSkip) {
+            if (line.getFirst() != party) {
+                return -1;
+            }
+            return policy == Policy.fifo ? firstFit(party.partySize()) : bestFit(party.partySize());
+        }
+
+        int table = bestFit(party.partySize());
+        if (table == -1) {
+            return -1;
+        }
+        for (Customer ahead : line) {
+            if (ahead == party) {
+                break;
+            }
+            if (ahead.partySize() <= tableSeats[table] || timesSkipped.get(ahead) >= SKIP_LIMIT) {
+                return -1;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Called holding frontDoor to seat a party at the table choose() returned.
+     */
+    void take(Customer party, int table) {
+        for (Customer ahead : line) {
+            if (ahead == party) {
+                break;
+            }
+            timesSkipped.put(ahead, timesSkipped.get(ahead) + 1);
+        }
+        line.remove(party);
+        timesSkipped.remove(party);
+        occupied[table] = true;
+    }
+
+    /**
+     * Called holding frontDoor when a party gives up waiting in line.
+     */
+    void leaveLine(Customer party) {
+        if (timesSkipped.remove(party) != null) {
+            line.remove(party);
+        }
+    }
+
+    /**
+     * Called holding frontDoor when a seated party leaves.
+     */
+    void free(int table) {
+        occupied[table] = false;
+    }
+
+    private int firstFit(int partySize) {
+        for (int t = 0; t < tableSeats.length; t++) {
+            if (!occupied[t] && tableSeats[t] >= partySize) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private int bestFit(int partySize) {
+        int best = -1;
+        for (int t = 0; t < tableSeats.length; t++) {
+            if (!occupied[t] && tableSeats[t] >= partySize && (best == -1 || tableSeats[t] < tableSeats[best])) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Summarizes how well a run used its tables: the share of seat-time and
+     * of table-time occupied, the share of seated tables' seats filled, and
+     * the throughput in orders and guests served per second.
+     */
+    String summarize(List<SimulationEvent> events) {
+        long startNs = 0;
+        long endNs = 0;
+        long seatNs = 0;
+        long tableNs = 0;
+        long seatedGuests = 0;
+        long seatedTableSeats = 0;
+        long guestsServed = 0;
+        int ordersServed = 0;
+        HashMap<Customer, SimulationEvent> seated = new HashMap<Customer, SimulationEvent>();
+        synchronized (events) {
+            for (SimulationEvent e : events) {
+                endNs = e.timeNs();
+                if (e.event == SimulationEvent.EventType.SimulationStarting) {
+                    startNs = e.timeNs();
+                } else if (e.event == SimulationEvent.EventType.CustomerEnteredRestaurant && e.simParams != null) {
+                    seated.put(e.customer, e);
+                    seatedGuests += e.simParams[0];
+                    seatedTableSeats += e.simParams[2];
+                } else if (e.event == SimulationEvent.EventType.CustomerLeavingRestaurant) {
+                    SimulationEvent entered = seated.remove(e.customer);
+                    if (entered != null) {
+                        long ns = e.timeNs() - entered.timeNs();
+                        seatNs += ns * entered.simParams[0];
+                        tableNs += ns;
+                    }
+                } else if (e.event == SimulationEvent.EventType.CustomerReceivedOrder) {
+                    ordersServed++;
+                    guestsServed += e.customer.partySize();
+                }
+            }
+        }
+        double spanNs = Math.max(1, endNs - startNs);
+        return String.format("Seating (%s, %d tables, %d seats): seat utilization %.1f%%, table utilization %.1f%%, "
+                        + "%.1f%% of seated tables' seats filled, %.2f orders/s, %.2f guests/s%n",
+                policy, tableSeats.length, totalSeats(),
+                100.0 * seatNs / (spanNs * totalSeats()), 100.0 * tableNs / (spanNs * tableSeats.length),
+                seatedTableSeats > 0 ? 100.0 * seatedGuests / seatedTableSeats : 0,
+                ordersServed / (spanNs / 1e9), guestsServed / (spanNs / 1e9));
+    }
+
+    /**
+     * Runs the same parties against the same tables under each policy and
+     * compares seat utilization and throughput.
+     *
+     * usage: java Seating [tables] [max-party] [parties] [cooks] [seed]
+     */
+    public static void main(String[] args) {
+        String tables = args.length > 0 ? args[0] : "4x2,4x4,2x6,1x8";
+        int maxPartySize = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int numParties = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        int numCooks = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        PrintStream out = System.out;
+        List<String> lines = new ArrayList<String>();
+        for (Policy policy : Policy.values()) {
+            Seating seating = parse(tables, maxPartySize, policy);
+            Simulation.setSeed(seed);
+            Simulation.setSeating(seating);
+            Simulation.QuietRun run = Simulation.runQuietly(Kitchen.standard(4), numParties, numCooks, 0, true);
+            lines.add(seating.summarize(run.events).trim() + (run.valid ? "" : " (INVALID)"));
+        }
+        Simulation.setSeating(null);
+        for (String line : lines) {
+            out.println(line);
+        }
+    }
+}
@@ -1,300 +1,1530 @@
-package MultiThreadedRestaurantSim;
-
-import java.util.*;
-
-public class Simulation {
-	// List to track simulation events during simulation
-    private static List<SimulationEvent> events;
-
-    synchronized static void logEvent(SimulationEvent event) {
-		events.add(event);
-		System.out.println(event);
-	}
-
-    static HashMap<String, Machine> machines;
-    private static int tables;
-
-    // an instanceLock object for synchronizing on entering and leaving customers
-    private static final Object frontDoor = new Object();
-    private static volatile int numCustomers = 0;
-    static boolean enterRestaurant() {
-        synchronized (frontDoor) {
-            if (numCustomers < tables) {
-                numCustomers++;
-                return true;
-            } else {
-                return false;
-            }
-        }
-    }
-    static void leaveRestaurant() {
-        synchronized (frontDoor) {
-            numCustomers--;
-        }
-    }
-
-    // an instanceLock object for synchronizing on placing and removing items. This is like the waiter in a restaurant.
-    private static final Object orderLock = new Object();
-    private static LinkedList<Integer> orderList = new LinkedList<Integer>();
-    private static HashMap<Integer, List<Food>> ordersPlaced = new HashMap<Integer, List<Food>>();
-    private static HashMap<Cook, List<Food>> cookOrderClaim = new HashMap<Cook, List<Food>>();
-    private static HashMap<Cook, Integer> cookOrderNumClaim = new HashMap<Cook, Integer>();
-    static void placeOrder(int orderNum, List<Food> order) {
-        synchronized (orderLock) {
-            orderList.add(orderNum);
-            ordersPlaced.put(orderNum, order);
-        }
-    }
-    static boolean orderAvailable(Cook cook) {
-        synchronized (orderLock) {
-            if (!ordersPlaced.isEmpty()) {
-                int orderNum = orderList.pop();
-                cookOrderClaim.put(cook, ordersPlaced.remove(orderNum));
-                cookOrderNumClaim.put(cook, orderNum);
-                return true;
-            } else {
-                return false;
-            }
-        }
-    }
-    static int cookGetOrderNum(Cook cook) {
-        synchronized (orderLock) {
-            return cookOrderNumClaim.remove(cook);
-        }
-    }
-    static List<Food> cookGetOrder(Cook cook) {
-        synchronized (orderLock) {
-            return cookOrderClaim.remove(cook);
-        }
-    }
-
-    private static final Object customerLock = new Object();
-    private static List<Integer> completedOrders = new ArrayList<Integer>();
-    static void orderCompleted(Cook cook, int orderNum) {
-        synchronized (customerLock) {
-            completedOrders.add(orderNum);
-            Simulation.logEvent(SimulationEvent.cookCompletedOrder(cook, orderNum));
-        }
-    }
-    static boolean checkOrderStatus(int orderNum) {
-        synchronized (customerLock) {
-            return completedOrders.contains(orderNum);
-        }
-    }
-
-    // an instanceLock object for synchronizing on updating cooked items.
-    private static final Object cookingLock = new Object();
-    private static HashMap<Integer, List<Food>> ordersCooked = new HashMap<Integer, List<Food>>();
-    private static HashMap<Integer, List<Food>> checkedOrdersCooked = new HashMap<Integer, List<Food>>();
-    static void updateCookedOrder(Machine machine, int orderNum, Food foodCooked) {
-        synchronized (cookingLock) {
-            if (ordersCooked.containsKey(orderNum)) {
-                ordersCooked.get(orderNum).add(foodCooked);
-            } else {
-                List<Food> cookedFoodList = new ArrayList<Food>();
-                cookedFoodList.add(foodCooked);
-                ordersCooked.put(orderNum, cookedFoodList);
-            }
-            logEvent(SimulationEvent.machineDoneFood(machine, foodCooked));
-        }
-    }
-
-    static boolean checkCookingStatus(Cook cook, int orderNum, Food food) {
-        synchronized (cookingLock) {
-            if (ordersCooked.containsKey(orderNum)) {
-                if(ordersCooked.get(orderNum).contains(food)) {
-                    ordersCooked.get(orderNum).remove(food);
-                    if (checkedOrdersCooked.containsKey(orderNum)) {
-                        checkedOrdersCooked.get(orderNum).add(food);
-                    } else {
-                        List<Food> cookedFoodList = new ArrayList<Food>();
-                        cookedFoodList.add(food);
-                        checkedOrdersCooked.put(orderNum, cookedFoodList);
-                    }
-                    logEvent(SimulationEvent.cookFinishedFood(cook, food, orderNum));
-                    machines.get(food.name).itemsCooking--;
-                    return true;
-                } else {
-                    return false;
-                }
-            } else {
-                return false;
-            }
-
-        }
-    }
-    static List<Food> getCompletedOrder(int orderNum) {
-        synchronized (cookingLock) {
-            return checkedOrdersCooked.remove(orderNum);
-        }
-    }
-
-	public static List<SimulationEvent> runSimulation( int numCustomers, int numCooks, int numTables, int machineCapacity, boolean randomOrders) {
-
-		// This method's signature MUST NOT CHANGE.
-
-        tables = numTables;
-
-
-		// We are providing this events list object for you.  
-		// It is the ONLY PLACE where a concurrent collection object is 
-		// allowed to be used.
-		events = Collections.synchronizedList(new ArrayList<SimulationEvent>());
-
-
-		// Start the simulation
-		logEvent(SimulationEvent.startSimulation(numCustomers,
-				numCooks,
-				numTables,
-				machineCapacity));
-
-
-		// Start up machines
-        machines = new HashMap<String, Machine>();
-		machines.put(FoodType.wings.name, new Machine(Machine.MachineType.fryer, FoodType.wings, machineCapacity));
-        logEvent(SimulationEvent.machineStarting(machines.get(FoodType.wings.name), FoodType.wings, machineCapacity));
-        machines.put(FoodType.pizza.name, new Machine(Machine.MachineType.oven, FoodType.pizza, machineCapacity));
-        logEvent(SimulationEvent.machineStarting(machines.get(FoodType.pizza.name), FoodType.pizza, machineCapacity));
-        machines.put(FoodType.sub.name, new Machine(Machine.MachineType.grillPress, FoodType.sub, machineCapacity));
-        logEvent(SimulationEvent.machineStarting(machines.get(FoodType.sub.name), FoodType.sub, machineCapacity));
-        machines.put(FoodType.soda.name, new Machine(Machine.MachineType.fountain, FoodType.soda, machineCapacity));
-        logEvent(SimulationEvent.machineStarting(machines.get(FoodType.soda.name), FoodType.soda, machineCapacity));
-
-		// Let cooks in
-        Thread[] cooks = new Thread[numCooks];
-        for (int i = 0; i < numCooks; i++) {
-            cooks[i] = new Thread(
-                    new Cook("Cook " + i)
-
-            );
-        }
-        for (int i = 0; i < numCooks; i++) {
-            cooks[i].start();
-        }
-
-
-		// Build the customers.
-		Thread[] customers = new Thread[numCustomers];
-		LinkedList<Food> order;
-		if (!randomOrders) {
-			order = new LinkedList<Food>();
-			order.add(FoodType.wings);
-			order.add(FoodType.pizza);
-			order.add(FoodType.sub);
-			order.add(FoodType.soda);
-			for(int i = 0; i < customers.length; i++) {
-				customers[i] = new Thread(
-						new Customer("Customer " + (i), order)
-						);
-			}
-		}
-		else {
-			for(int i = 0; i < customers.length; i++) {
-				Random rnd = new Random();
-				int wingsCount = rnd.nextInt(4);
-				int pizzaCount = rnd.nextInt(4);
-				int subCount = rnd.nextInt(4);
-				int sodaCount = rnd.nextInt(4);
-				order = new LinkedList<Food>();
-				for (int b = 0; b < wingsCount; b++) {
-					order.add(FoodType.wings);
-				}
-				for (int f = 0; f < pizzaCount; f++) {
-					order.add(FoodType.pizza);
-				}
-				for (int f = 0; f < subCount; f++) {
-					order.add(FoodType.sub);
-				}
-				for (int c = 0; c < sodaCount; c++) {
-					order.add(FoodType.soda);
-				}
-				customers[i] = new Thread(
-						new Customer("Customer " + (i), order)
-				);
-			}
-		}
-
-		for(int i = 0; i < customers.length; i++) {
-			customers[i].start();
-		}
-
-
-		try {
-			// Wait for customers to finish
-			for (int i = 0; i < customers.length; i++) {
-			    customers[i].join();
-            }
-
-
-			for(int i = 0; i < cooks.length; i++) {
-			    cooks[i].interrupt();
-            }
-            for(int i = 0; i < cooks.length; i++) {
-                cooks[i].join();
-            }
-
-		}
-		catch(InterruptedException e) {
-			System.out.println("Simulation thread interrupted.");
-		}
-
-		// Shut down machines
-        Set<String> machinesList = machines.keySet();
-        for (String machine : machinesList) {
-            logEvent(SimulationEvent.machineEnding(machines.get(machine)));
-        }
-
-
-		// Done with simulation		
-		logEvent(SimulationEvent.endSimulation());
-
-		return events;
-	}
-
-	/**
-	 * Entry point for the simulation.
-	 */
-	public static void main(String args[]) throws InterruptedException {
-		// Parameters to the simulation
-		/*
-		if (args.length != 4) {
-			System.err.println("usage: java Simulation <#customers> <#cooks> <#tables> <capacity> <randomorders");
-			System.exit(1);
-		}
-		int numCustomers = new Integer(args[0]).intValue();
-		int numCooks = new Integer(args[1]).intValue();
-		int numTables = new Integer(args[2]).intValue();
-		int machineCapacity = new Integer(args[3]).intValue();
-		boolean randomOrders = new Boolean(args[4]);
-		 */
-
-		//int numCustomers = 40;
-		//int numCooks = 8;
-		//int numTables = 12;
-		//int machineCapacity = 4;
-		//boolean randomOrders = true;
-
-        Random rnd = new Random();
-        int numCustomers = rnd.nextInt(1000);
-        int numCooks = rnd.nextInt(100);
-        int numTables = rnd.nextInt(50);
-        int machineCapacity = rnd.nextInt(20);
-        boolean randomOrders = true;
-
-		// Run the simulation and then 
-		//   feed the result into the method to validate simulation.
-		System.out.println("Did it work? " +
-				Validate.validateSimulation(
-						runSimulation(
-								numCustomers, numCooks,
-								numTables, machineCapacity,
-								randomOrders
-								)
-						)
-				);
-	}
-
-}
-
-
-
+package MultiThreadedRestaurantSim;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+public class Simulation {
+	// List to track simulation events during simulation
+    private static List<SimulationEvent> events;
+    private static long startNanos;
+    private static long lastNanos;
+    private static boolean echoEvents = true;
+
+    /**
+     * Logs an event, stamping it with the time since the simulation started
+     * and the id of the thread that emitted it.  The clock is read before
+     * taking the log's lock, to keep it out of the critical section, and
+     * clamped under the lock so timestamps never decrease along the log.
+     */
+    static void logEvent(SimulationEvent event) {
+		long now = System.nanoTime();
+		LiveMetrics live = metrics;
+		if (live != null) {
+			live.record(event, now);
+		}
+		appendEvent(event, now, Thread.currentThread().getId());
+	}
+
+    private static final LockProfiler.LockStats logEventStats = new LockProfiler.LockStats("logEvent");
+    private synchronized static void appendEvent(SimulationEvent event, long now, long threadId) {
+		// The clock was just read, so it doubles as the time the lock was requested
+		long acquired = logEventStats.acquired(LockProfiler.isEnabled() ? now : 0);
+		try {
+			if (now < lastNanos) {
+				now = lastNanos;
+			}
+			lastNanos = now;
+			event.stamp(now - startNanos, threadId);
+			events.add(event);
+			if (echoEvents) {
+				System.out.println(event);
+			}
+		} finally {
+			logEventStats.released(acquired);
+		}
+	}
+
+    /**
+     * Sets whether logged events are also printed as they happen.
+     */
+    public static void setEchoEvents(boolean echo) {
+        echoEvents = echo;
+    }
+
+    // Starts a fresh event log, with time zero now
+    synchronized static List<SimulationEvent> beginEventLog() {
+		return beginEventLog(0);
+    }
+
+    // Starts a fresh event log, with time zero offsetNs ago
+    private synchronized static List<SimulationEvent> beginEventLog(long offsetNs) {
+		// We are providing this events list object for you.
+		// It is the ONLY PLACE where a concurrent collection object is
+		// allowed to be used.
+		events = Collections.synchronizedList(new ArrayList<SimulationEvent>());
+		lastNanos = System.nanoTime();
+		startNanos = lastNanos - offsetNs;
+		return events;
+    }
+
+    // Master seed for the next run, and the schedule it records or replays
+    private static boolean seedSet = false;
+    private static long seed;
+    static Schedule schedule;
+
+    /**
+     * Fixes the master seed for subsequent runs.  All order generation and
+     * cook item selection is derived from it.  Without a fixed seed, each
+     * run picks its own and prints it so the run can be reproduced.
+     */
+    public static void setSeed(long seedIn) {
+        seed = seedIn;
+        seedSet = true;
+    }
+
+    /**
+     * Records the next run into, or replays it from, the given schedule.
+     * A replayed run uses the schedule's seed, and must be started with
+     * the same parameters as the recorded run.  Pass null to stop.
+     */
+    public static void setSchedule(Schedule scheduleIn) {
+        schedule = scheduleIn;
+    }
+
+    // How long customers wait to enter, and for a cook to take their order, before giving up; 0 waits forever
+    private static long balkPatienceMs = 0;
+    private static long renegePatienceMs = 0;
+    private static TimingWheel patienceTimers;
+
+    /**
+     * Gives customers of subsequent runs limited patience.  A customer who
+     * has not entered within balkMs of arriving leaves without entering,
+     * and one whose order no cook has taken on within renegeMs of placing
+     * it cancels the order and leaves.  Pass 0 to wait forever.
+     */
+    public static void setPatience(long balkMs, long renegeMs) {
+        balkPatienceMs = balkMs;
+        renegePatienceMs = renegeMs;
+    }
+
+    static TimingWheel.Timeout startBalkTimer(Runnable task) {
+        return balkPatienceMs > 0 ? patienceTimers.schedule(balkPatienceMs, task) : null;
+    }
+
+    static TimingWheel.Timeout startRenegeTimer(Runnable task) {
+        return renegePatienceMs > 0 ? patienceTimers.schedule(renegePatienceMs, task) : null;
+    }
+
+    static void cancelTimer(TimingWheel.Timeout timeout) {
+        if (timeout != null) {
+            patienceTimers.cancel(timeout);
+        }
+    }
+
+    private static Kitchen kitchen;
+    // Machines of the current run indexed by id, and by station id
+    static Machine[] machines;
+    private static Machine[][] stationMachines;
+    // How cooks pick among a station's machines, and the stations' round-robin turns
+    private static MachineChoice machineChoice = MachineChoice.powerOfTwo;
+    private static AtomicIntegerArray stationTurns;
+
+    /**
+     * Sets how cooks of subsequent runs pick which of a station's machines
+     * to put a step on, when the station has more than one.
+     */
+    public static void setMachineChoice(MachineChoice choice) {
+        machineChoice = choice;
+    }
+
+    // Picks the machine a cook should try for a step, with the cook's Random, or null if the station's machines are all down
+    static Machine chooseMachine(Kitchen.Step step, Random rnd) {
+        Machine[] candidates = stationMachines[step.station.id];
+        Machine choice = candidates.length == 1 ? candidates[0] : machineChoice.choose(candidates, step, rnd, stationTurns);
+        if (faults == null || choice.available() > 0) {
+            return choice;
+        }
+        // Route around a machine that is down, to one of the station's that is up
+        for (Machine machine : candidates) {
+            if (machine.available() > 0) {
+                return machine;
+            }
+        }
+        return null;
+    }
+
+    // Takeout orders, a channel of orders besides the tables, or null for dine-in only
+    private static Takeout takeout;
+
+    /**
+     * Brings in takeout orders besides the customers at tables in
+     * subsequent runs.  Pass null for dine-in only.
+     */
+    public static void setTakeout(Takeout takeoutIn) {
+        takeout = takeoutIn;
+    }
+
+    // Takes machines down and brings them back up, or null for machines that never fail
+    private static MachineFaults faults;
+
+    /**
+     * Injects the given faults into the machines of subsequent runs.  Pass
+     * null for machines that never fail.
+     */
+    public static void setMachineFaults(MachineFaults faultsIn) {
+        faults = faultsIn;
+    }
+
+    // Serves the run's metrics on localhost while it goes, or null for none
+    private static LiveMetrics metrics;
+
+    /**
+     * Serves the live metrics of subsequent runs while they go.  Pass null
+     * for none.
+     */
+    public static void setMetrics(LiveMetrics metricsIn) {
+        metrics = metricsIn;
+    }
+
+    // Counts a cook's move from one state to another in the live metrics, if served; from is null for a cook starting
+    static void cookStateChanged(Cook.State from, Cook.State to) {
+        LiveMetrics live = metrics;
+        if (live != null) {
+            live.cookState(from, to);
+        }
+    }
+
+    // Orders a cook works on at once
+    private static int cookOrderLimit = 1;
+
+    /**
+     * Lets each cook of subsequent runs work on up to limit orders at once,
+     * starting items of one while items of the others cook.  A limit of 1,
+     * the default, has cooks see each order through before taking the next.
+     */
+    public static void setCookOrderLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("A cook must be able to take an order");
+        }
+        cookOrderLimit = limit;
+    }
+
+    static int cookOrderLimit() {
+        return cookOrderLimit;
+    }
+
+    // Event-loop threads to run the actors on, or 0 for a thread per actor; and the run's loops, if it has them
+    private static int eventLoopThreads = 0;
+    static EventLoop loops;
+
+    /**
+     * Runs the customers and cooks of subsequent runs as state machines on
+     * the given number of event-loop threads, instead of on a thread each.
+     * Pass 0 for a thread per actor, the default.
+     */
+    public static void setEventLoop(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Event-loop threads cannot be negative");
+        }
+        eventLoopThreads = threads;
+    }
+
+    static Kitchen.Step[] recipe(Food food) {
+        return kitchen.recipe(food);
+    }
+
+    private static int tables;
+    // Parties and the tables they are seated at, or null for single customers and numTables one-seat tables
+    private static Seating seating;
+
+    /**
+     * Seats parties of subsequent runs at the given tables, by its policy,
+     * in place of one customer per table.  Each customer becomes a party of
+     * 1 to the seating's maxPartySize guests sharing one order, and the
+     * runs' numTables is ignored.  Pass null to stop.
+     */
+    public static void setSeating(Seating seatingIn) {
+        seating = seatingIn;
+    }
+
+    static int seatsAt(int table) {
+        return seating.tableSeats[table];
+    }
+
+    // Ready-made food idle machines keep hot for orders to come, or null to cook everything on demand
+    private static HotHolding holding;
+
+    /**
+     * Has idle machines of subsequent runs make food ahead of demand into
+     * the given hot holding, which cooks take from before cooking.  Pass
+     * null to stop.
+     */
+    public static void setHotHolding(HotHolding holdingIn) {
+        holding = holdingIn;
+    }
+
+    // Hires and retires cooks by the order backlog, or null for the run's numCooks all day
+    private static ElasticCooks elasticCooks;
+
+    /**
+     * Staffs subsequent runs from the given elastic cook pool, which starts
+     * the runs' numCooks cooks and hires more while orders back up.  Pass
+     * null to keep numCooks cooks for the whole run.
+     */
+    public static void setElasticCooks(ElasticCooks elasticCooksIn) {
+        elasticCooks = elasticCooksIn;
+    }
+
+    // Trace whose tickets arrive as customers, or null to generate orders
+    private static PosTrace workload;
+    // Arrivals between sweeps of customers that have left out of the list of those to wait for
+    private static final int ARRIVAL_SWEEP = 1024;
+
+    /**
+     * Replays the tickets of the given point-of-sale trace as the customers
+     * of subsequent runs, each arriving at its ticket's time, compressed,
+     * with its ticket as its order.  Runs replay up to their numCustomers
+     * tickets, and ignore randomOrders.  Pass null to generate orders.
+     * Customers are created as they arrive, but a run still keeps each
+     * order's items, its place in the order queue and its events, so its
+     * heap grows with the tickets it replays; and it reads the trace
+     * through once first, to count them.
+     */
+    public static void setWorkload(PosTrace workloadIn) {
+        workload = workloadIn;
+    }
+
+    // When into the next run to take a checkpoint, or 0 for none, and where to save it
+    private static long checkpointAtMs = 0;
+    private static String checkpointFile;
+    // Closed while a checkpoint waits for the run to drain: no customer enters and no cook claims an order
+    private static volatile boolean quiescing = false;
+    // Time the last resumed run took to set itself up from its checkpoint
+    private static long restoreNs;
+
+    /**
+     * Takes a Checkpoint of subsequent runs atMs into them, saved to file.
+     * The run stops letting customers in and cooks claim orders until it
+     * has drained, and goes on once the checkpoint is taken.  Pass 0 to stop.
+     */
+    public static void setCheckpoint(long atMs, String file) {
+        if (atMs < 0 || (atMs > 0 && file == null)) {
+            throw new IllegalArgumentException("A checkpoint needs a time and a file");
+        }
+        checkpointAtMs = atMs;
+        checkpointFile = file;
+    }
+
+    static long restoreNs() {
+        return restoreNs;
+    }
+
+    // Takes an item of the order from hot holding, if it has one, as a cooked item of the order
+    static boolean takeHeldFood(Cook cook, Food food, int orderNum) {
+        if (holding == null || !holding.take(cook, food, orderNum)) {
+            return false;
+        }
+        long requested = LockProfiler.request();
+        synchronized (cookingLock) {
+            long acquired = cookingLockStats.acquired(requested);
+            try {
+                addCheckedFood(orderNum, food);
+                return true;
+            } finally {
+                cookingLockStats.released(acquired);
+            }
+        }
+    }
+
+    // an instanceLock object for synchronizing on entering and leaving customers
+    private static final Object frontDoor = new Object();
+    private static final LockProfiler.LockStats frontDoorStats = new LockProfiler.LockStats("frontDoor");
+    private static volatile int numCustomers = 0;
+    // On the event loop, customers waiting in line for a table; guarded by frontDoor
+    private static final ArrayDeque<Customer> tableWaiters = new ArrayDeque<Customer>();
+    static boolean enterRestaurant(Customer customer) {
+        long requested = LockProfiler.request();
+        synchronized (frontDoor) {
+            long acquired = frontDoorStats.acquired(requested);
+            try {
+                if (quiescing) {
+                    return false;
+                }
+                if (seating != null) {
+                    int table = seating.choose(customer);
+                    if (table == -1 || (schedule != null && !schedule.admit(customer.orderNum()))) {
+                        return false;
+                    }
+                    seating.take(customer, table);
+                    customer.table = table;
+                    numCustomers++;
+                    return true;
+                }
+                if (numCustomers < tables && (schedule == null || schedule.admit(customer.orderNum()))) {
+                    numCustomers++;
+                    return true;
+                } else {
+                    if (loops != null) {
+                        tableWaiters.add(customer);
+                    }
+                    return false;
+                }
+            } finally {
+                frontDoorStats.released(acquired);
+            }
+        }
+    }
+    static void leaveRestaurant(Customer customer) {
+        Customer next = null;
+        long requested = LockProfiler.request();
+        synchronized (frontDoor) {
+            long acquired = frontDoorStats.acquired(requested);
+            try {
+                if (seating != null) {
+                    seating.free(customer.table);
+                }
+                numCustomers--;
+                next = tableWaiters.poll();
+            } finally {
+                frontDoorStats.released(acquired);
+            }
+        }
+        // The table goes to the customer first in line, unless one just arriving takes it first
+        if (next != null) {
+            EventLoop.wake(next);
+        }
+    }
+
+    // Takes a party that gave up waiting out of the line
+    static void leaveLine(Customer customer) {
+        if (seating == null && loops == null) {
+            return;
+        }
+        Customer next = null;
+        long requested = LockProfiler.request();
+        synchronized (frontDoor) {
+            long acquired = frontDoorStats.acquired(requested);
+            try {
+                if (seating != null) {
+                    seating.leaveLine(customer);
+                } else if (!tableWaiters.remove(customer)) {
+                    // It was woken for a table it no longer wants, so the next in line gets the wake
+                    next = tableWaiters.poll();
+                }
+            } finally {
+                frontDoorStats.released(acquired);
+            }
+        }
+        if (next != null) {
+            EventLoop.wake(next);
+        }
+    }
+
+    // Placed orders wait in the order queue until a cook claims them. This is like the waiter in a restaurant.
+    private static OrderQueue.Kind orderQueueKind = OrderQueue.Kind.monitor;
+    private static OrderQueue orderQueue;
+    // Items of each placed order, indexed by order number; written before the order is queued
+    private static List<Food>[] orderItems;
+    // Claims are only serialized under orderLock when a schedule records or replays them
+    private static final Object orderLock = new Object();
+    private static final LockProfiler.LockStats orderLockStats = new LockProfiler.LockStats("orderLock");
+
+    /**
+     * Selects the order queue implementation for subsequent runs.
+     */
+    public static void setOrderQueue(OrderQueue.Kind kind) {
+        orderQueueKind = kind;
+    }
+
+    static void placeOrder(int orderNum, List<Food> order) {
+        placeOrder(orderQueue, orderNum, order);
+    }
+    // Takeout orders wait in a queue of their own, which cooks claim from fairly against the tables' orders
+    static void placeTakeoutOrder(int orderNum, List<Food> order) {
+        placeOrder(takeout.queue(), orderNum, order);
+    }
+    private static void placeOrder(OrderQueue queue, int orderNum, List<Food> order) {
+        if (holding != null) {
+            holding.ordered(order);
+        }
+        orderItems[orderNum] = order;
+        if (!queue.offer(orderNum)) {
+            throw new IllegalStateException("Order queue full at order " + orderNum);
+        }
+        if (loops != null) {
+            wakeIdleCook();
+        }
+    }
+
+    // On the event loop, cooks with room for an order waiting for one to be placed
+    private static final ArrayDeque<Cook> idleCooks = new ArrayDeque<Cook>();
+    private static final LockProfiler.LockStats idleCooksStats = new LockProfiler.LockStats("idleCooks");
+
+    // Has a cook waiting for an order woken by the next one placed; returns whether orders are waiting already
+    static boolean awaitOrders(Cook cook) {
+        long requested = LockProfiler.request();
+        synchronized (idleCooks) {
+            long acquired = idleCooksStats.acquired(requested);
+            try {
+                if (!cook.awaitingOrders) {
+                    cook.awaitingOrders = true;
+                    idleCooks.add(cook);
+                }
+            } finally {
+                idleCooksStats.released(acquired);
+            }
+        }
+        return ordersWaiting() > 0;
+    }
+
+    private static void wakeIdleCook() {
+        Cook cook;
+        long requested = LockProfiler.request();
+        synchronized (idleCooks) {
+            long acquired = idleCooksStats.acquired(requested);
+            try {
+                cook = idleCooks.poll();
+                if (cook != null) {
+                    cook.awaitingOrders = false;
+                }
+            } finally {
+                idleCooksStats.released(acquired);
+            }
+        }
+        if (cook != null) {
+            EventLoop.wake(cook);
+        }
+    }
+    // Placed orders no cook has claimed yet
+    static int ordersWaiting() {
+        return orderQueue.size() + (takeout != null ? takeout.waiting() : 0);
+    }
+    static boolean orderAvailable(Cook cook) {
+        if (quiescing) {
+            return false;
+        }
+        if (schedule == null) {
+            int orderNum = takeout == null ? orderQueue.poll() : takeout.claim(orderQueue);
+            if (orderNum == -1) {
+                return false;
+            }
+            cook.claimedOrder = orderNum;
+            return true;
+        }
+        long requested = LockProfiler.request();
+        synchronized (orderLock) {
+            long acquired = orderLockStats.acquired(requested);
+            try {
+                int orderNum;
+                if (schedule.isReplay()) {
+                    // Only claim the order this cook claimed in the recorded run, once it has been placed
+                    orderNum = schedule.nextClaim(cook);
+                    if (orderNum == -1 || !orderQueue.remove(orderNum)) {
+                        return false;
+                    }
+                } else {
+                    orderNum = orderQueue.poll();
+                    if (orderNum == -1) {
+                        return false;
+                    }
+                }
+                cook.claimedOrder = orderNum;
+                schedule.claimed(cook, orderNum);
+                return true;
+            } finally {
+                orderLockStats.released(acquired);
+            }
+        }
+    }
+    static int cookGetOrderNum(Cook cook) {
+        return cook.claimedOrder;
+    }
+    // Withdraws an order no cook has claimed yet; returns false if one has
+    static boolean cancelOrder(int orderNum) {
+        return orderQueue.remove(orderNum);
+    }
+    static List<Food> cookGetOrder(Cook cook) {
+        return orderItems[cook.claimedOrder];
+    }
+
+    private static final Object customerLock = new Object();
+    private static final LockProfiler.LockStats customerLockStats = new LockProfiler.LockStats("customerLock");
+    private static Set<Integer> completedOrders = new HashSet<Integer>();
+    // On the event loop, the customer of each order, by order number less one, to wake once it is complete
+    private static Customer[] orderWaiters;
+    static void orderCompleted(Cook cook, int orderNum) {
+        long requested = LockProfiler.request();
+        synchronized (customerLock) {
+            long acquired = customerLockStats.acquired(requested);
+            try {
+                completedOrders.add(orderNum);
+                Simulation.logEvent(SimulationEvent.cookCompletedOrder(cook, orderNum));
+            } finally {
+                customerLockStats.released(acquired);
+            }
+        }
+        if (loops != null) {
+            EventLoop.wake(orderWaiters[orderNum - 1]);
+        }
+    }
+    static boolean checkOrderStatus(int orderNum) {
+        long requested = LockProfiler.request();
+        synchronized (customerLock) {
+            long acquired = customerLockStats.acquired(requested);
+            try {
+                return completedOrders.contains(orderNum);
+            } finally {
+                customerLockStats.released(acquired);
+            }
+        }
+    }
+
+    // an instanceLock object for synchronizing on updating cooked items.
+    private static final Object cookingLock = new Object();
+    private static final LockProfiler.LockStats cookingLockStats = new LockProfiler.LockStats("cookingLock");
+    // Steps a machine has finished, by order, until a cook collects them
+    private static HashMap<Integer, List<CookedStep>> ordersCooked = new HashMap<Integer, List<CookedStep>>();
+    private static HashMap<Integer, List<Food>> checkedOrdersCooked = new HashMap<Integer, List<Food>>();
+    static void updateCookedOrder(Machine machine, int orderNum, Kitchen.Step stepDone) {
+        long requested = LockProfiler.request();
+        synchronized (cookingLock) {
+            long acquired = cookingLockStats.acquired(requested);
+            try {
+                if (ordersCooked.containsKey(orderNum)) {
+                    ordersCooked.get(orderNum).add(new CookedStep(machine, stepDone));
+                } else {
+                    List<CookedStep> cookedStepList = new ArrayList<CookedStep>();
+                    cookedStepList.add(new CookedStep(machine, stepDone));
+                    ordersCooked.put(orderNum, cookedStepList);
+                }
+                logEvent(SimulationEvent.machineDoneFood(machine, stepDone, orderNum));
+            } finally {
+                cookingLockStats.released(acquired);
+            }
+        }
+    }
+
+    // Steps a fault lost off a machine, by order, until their cook learns of it
+    private static HashMap<Integer, List<CookedStep>> ordersLost = new HashMap<Integer, List<CookedStep>>();
+
+    // Called by a machine holding its monitor when a fault loses a step in progress
+    static void foodLost(Machine machine, Kitchen.Step step, int orderNum) {
+        long requested = LockProfiler.request();
+        synchronized (cookingLock) {
+            long acquired = cookingLockStats.acquired(requested);
+            try {
+                ordersLost.computeIfAbsent(orderNum, k -> new ArrayList<CookedStep>()).add(new CookedStep(machine, step));
+                logEvent(SimulationEvent.machineLostFood(machine, step, orderNum));
+            } finally {
+                cookingLockStats.released(acquired);
+            }
+        }
+    }
+
+    // A cook learns whether a step it put on a machine was lost, to start it again
+    static boolean takeLostStep(int orderNum, Kitchen.Step step, Machine machine) {
+        if (faults == null) {
+            return false;
+        }
+        long requested = LockProfiler.request();
+        synchronized (cookingLock) {
+            long acquired = cookingLockStats.acquired(requested);
+            try {
+                List<CookedStep> lost = ordersLost.get(orderNum);
+                return lost != null && removeCookedStep(lost, machine, step);
+            } finally {
+                cookingLockStats.released(acquired);
+            }
+        }
+    }
+
+    // On the event loop, has a cook that found a step's station full woken when a slot of it frees; returns whether one is free already
+    static boolean awaitSlot(Kitchen.Step step, Cook cook) {
+        boolean free = false;
+        for (Machine machine : stationMachines[step.station.id]) {
+            if (machine.awaitSlot(cook)) {
+                free = true;
+            }
+        }
+        return free;
+    }
+
+    // A step done on a machine
+    private static class CookedStep {
+        final Machine machine;
+        final Kitchen.Step step;
+
+        CookedStep(Machine machine, Kitchen.Step step) {
+            this.machine = machine;
+            this.step = step;
+        }
+    }
+
+    // A cook collects a step it put on a machine, once done, and frees its slot; only an item's last step adds it to the order
+    static boolean checkCookingStatus(Cook cook, int orderNum, Kitchen.Step step, Machine machine) {
+        long requested = LockProfiler.request();
+        synchronized (cookingLock) {
+            long acquired = cookingLockStats.acquired(requested);
+            try {
+                List<CookedStep> cooked = ordersCooked.get(orderNum);
+                if (cooked == null || !removeCookedStep(cooked, machine, step)) {
+                    return false;
+                }
+                if (step.last) {
+                    addCheckedFood(orderNum, step.food);
+                }
+                logEvent(SimulationEvent.cookFinishedFood(cook, machine, step, orderNum));
+            } finally {
+                cookingLockStats.released(acquired);
+            }
+        }
+        machine.release();
+        return true;
+    }
+
+    private static boolean removeCookedStep(List<CookedStep> cooked, Machine machine, Kitchen.Step step) {
+        for (int i = 0; i < cooked.size(); i++) {
+            if (cooked.get(i).machine == machine && cooked.get(i).step == step) {
+                cooked.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Called holding cookingLock when an item of an order is done
+    private static void addCheckedFood(int orderNum, Food food) {
+        if (checkedOrdersCooked.containsKey(orderNum)) {
+            checkedOrdersCooked.get(orderNum).add(food);
+        } else {
+            List<Food> cookedFoodList = new ArrayList<Food>();
+            cookedFoodList.add(food);
+            checkedOrdersCooked.put(orderNum, cookedFoodList);
+        }
+    }
+
+    static List<Food> getCompletedOrder(int orderNum) {
+        long requested = LockProfiler.request();
+        synchronized (cookingLock) {
+            long acquired = cookingLockStats.acquired(requested);
+            try {
+                return checkedOrdersCooked.remove(orderNum);
+            } finally {
+                cookingLockStats.released(acquired);
+            }
+        }
+    }
+
+	public static List<SimulationEvent> runSimulation( int numCustomers, int numCooks, int numTables, int machineCapacity, boolean randomOrders) {
+
+		// This method's signature MUST NOT CHANGE.
+
+		return runSimulation(Kitchen.standard(machineCapacity), numCustomers, numCooks, numTables, randomOrders);
+	}
+
+	/**
+	 * A run made by runQuietly: its log, whether the log validated, and the
+	 * wall and process CPU time the run took, not counting validation.
+	 */
+	static class QuietRun {
+		final List<SimulationEvent> events;
+		final boolean valid;
+		final long wallNs;
+		final long cpuNs;
+
+		QuietRun(List<SimulationEvent> events, boolean valid, long wallNs, long cpuNs) {
+			this.events = events;
+			this.valid = valid;
+			this.wallNs = wallNs;
+			this.cpuNs = cpuNs;
+		}
+	}
+
+	/**
+	 * Runs a simulation and validates its log without echoing events or
+	 * printing anything, as the tools and benchmarks that make many runs do.
+	 * Echo is turned back on and System.out put back however the run ends;
+	 * any other setting is left to the caller.
+	 */
+	static QuietRun runQuietly(Kitchen kitchenIn, int numCustomers, int numCooks, int numTables, boolean randomOrders) {
+		return runQuietly(() -> runSimulation(kitchenIn, numCustomers, numCooks, numTables, randomOrders));
+	}
+
+	/**
+	 * Makes a run as runQuietly above, however run makes it, such as by
+	 * resuming a checkpoint.
+	 */
+	static QuietRun runQuietly(Supplier<List<SimulationEvent>> run) {
+		com.sun.management.OperatingSystemMXBean os =
+				(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		PrintStream out = System.out;
+		setEchoEvents(false);
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			long cpuStart = os.getProcessCpuTime();
+			long wallStart = System.nanoTime();
+			List<SimulationEvent> events = run.get();
+			long wallNs = System.nanoTime() - wallStart;
+			long cpuNs = os.getProcessCpuTime() - cpuStart;
+			return new QuietRun(events, Validate.validateSimulation(events), wallNs, cpuNs);
+		} finally {
+			System.setOut(out);
+			setEchoEvents(true);
+		}
+	}
+
+	/**
+	 * Runs a simulation against the given kitchen.  Each station of the
+	 * kitchen gets its own Machine with the station's capacity.
+	 */
+	public static List<SimulationEvent> runSimulation(Kitchen kitchenIn, int numCustomers, int numCooks, int numTables, boolean randomOrders) {
+		return run(kitchenIn, numCustomers, numCooks, numTables, randomOrders, null, 0);
+	}
+
+	// Resumes a checkpointed run, with addedCooks more cooks than it had
+	static List<SimulationEvent> resume(Checkpoint checkpoint, int addedCooks) {
+		return run(Kitchen.standard(checkpoint.stationCapacities), checkpoint.numCustomers,
+				checkpoint.numCooks + addedCooks, checkpoint.numTables, false, checkpoint, addedCooks);
+	}
+
+	// Runs a simulation from the start, or from a checkpoint if one is given
+	private static List<SimulationEvent> run(Kitchen kitchenIn, int numCustomers, int numCooks, int numTables, boolean randomOrders,
+			Checkpoint from, int addedCooks) {
+
+        long runStart = System.nanoTime();
+        kitchen = kitchenIn;
+        if (seating != null) {
+            seating.reset();
+            numTables = seating.tableSeats.length;
+        }
+        tables = numTables;
+
+        // Which customers give up depends on timing, which a schedule does not capture
+        boolean patient = balkPatienceMs == 0 && renegePatienceMs == 0;
+        if (!patient && schedule != null) {
+            throw new IllegalStateException("Runs with limited patience cannot be recorded or replayed");
+        }
+        if (holding != null && schedule != null) {
+            throw new IllegalStateException("Runs with hot holding cannot be recorded or replayed");
+        }
+        if (elasticCooks != null && schedule != null) {
+            throw new IllegalStateException("Runs with elastic cooks cannot be recorded or replayed");
+        }
+        if (faults != null && schedule != null) {
+            throw new IllegalStateException("Runs with machine faults cannot be recorded or replayed");
+        }
+        if (takeout != null && schedule != null) {
+            throw new IllegalStateException("Runs with takeout cannot be recorded or replayed");
+        }
+        // Which machine of a station a cook picks depends on timing too
+        if (kitchen.machineCount() > kitchen.stations.length && schedule != null) {
+            throw new IllegalStateException("Kitchens with several machines at a station cannot be recorded or replayed");
+        }
+        // A drained restaurant only sums up runs without timers, held food, parties or a changing staff
+        boolean checkpointed = checkpointAtMs > 0 || from != null;
+        if (checkpointed && (!patient || holding != null || seating != null || elasticCooks != null || schedule != null
+                || workload != null || faults != null || takeout != null)) {
+            throw new IllegalStateException("Runs with patience, hot holding, seating, elastic cooks, a schedule, a workload trace, machine faults or takeout cannot be checkpointed");
+        }
+        // Only the plain restaurant's waits and the patience timers wake the actors on the event loop; actor accounting is per thread
+        if (eventLoopThreads > 0 && (holding != null || seating != null || elasticCooks != null || schedule != null
+                || workload != null || faults != null || takeout != null || checkpointed || ActorProfiler.isEnabled())) {
+            throw new IllegalStateException("Runs with hot holding, seating, elastic cooks, a schedule, a workload trace, machine faults, takeout, checkpoints or actor accounting cannot run on the event loop");
+        }
+
+        // A trace's customers are only created as they arrive, but the run declares how many there will be,
+        // and sizes its per-order state by it
+        PosTrace.Reader arrivals = null;
+        if (workload != null) {
+            try {
+                numCustomers = Math.min(numCustomers, workload.countTickets(kitchen));
+                arrivals = workload.open(kitchen);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read workload trace " + workload.path, e);
+            }
+        }
+        if (checkpointed && kitchen.standardCapacities() == null) {
+            throw new IllegalStateException("Only runs in the standard kitchen can be checkpointed");
+        }
+
+        // Takeout orders are numbered, and counted as customers, after the customers at tables
+        int numOrders = numCustomers + (takeout != null ? takeout.orders : 0);
+
+        // Order numbers restart at 1 every run, so clear what earlier runs left behind
+        Customer.resetOrderNumbers();
+        orderQueue = OrderQueue.create(orderQueueKind, numOrders);
+        orderItems = newOrderItems(numOrders + 1);
+        completedOrders.clear();
+        tableWaiters.clear();
+        idleCooks.clear();
+        ordersCooked.clear();
+        checkedOrdersCooked.clear();
+        ordersLost.clear();
+
+        // Every random choice in the run is derived from the master seed
+        long runSeed;
+        if (schedule != null && schedule.isReplay()) {
+            runSeed = schedule.seed();
+        } else if (from != null && !seedSet) {
+            runSeed = from.seed;
+        } else if (seedSet) {
+            runSeed = seed;
+        } else {
+            runSeed = new Random().nextLong();
+        }
+        if (schedule != null && !schedule.isReplay()) {
+            schedule.setSeed(runSeed);
+        }
+        Random master = new Random(runSeed);
+
+
+		for (LockProfiler.LockStats lock : profiledLocks()) {
+			lock.reset();
+		}
+		ActorProfiler.reset();
+		quiescing = false;
+		if (metrics != null) {
+			metrics.open(numOrders);
+		}
+		beginEventLog(from != null ? from.timeNs : 0);
+
+
+		// Start the simulation; a resumed run started in its checkpoint
+		if (from == null && elasticCooks == null) {
+			logEvent(SimulationEvent.startSimulation(numOrders,
+					numCooks,
+					numTables,
+					kitchen.uniformCapacity(),
+					kitchen.machineCount()));
+		} else if (from == null) {
+			logEvent(SimulationEvent.startSimulation(numOrders,
+					numCooks,
+					numTables,
+					kitchen.uniformCapacity(),
+					kitchen.machineCount(),
+					elasticCooks.maxCooks(numCooks)));
+		}
+
+
+		System.out.println("Simulation seed: " + runSeed);
+
+		// Start up machines
+        machines = kitchen.createMachines();
+        stationMachines = new Machine[kitchen.stations.length][];
+        for (Kitchen.Station station : kitchen.stations) {
+            List<Machine> atStation = new ArrayList<Machine>();
+            for (Machine machine : machines) {
+                if (machine.station == station) {
+                    atStation.add(machine);
+                }
+            }
+            stationMachines[station.id] = atStation.toArray(new Machine[0]);
+        }
+        stationTurns = new AtomicIntegerArray(kitchen.stations.length);
+        if (metrics != null) {
+            metrics.watch(machines);
+        }
+        if (from == null) {
+            for (Machine machine : machines) {
+                logEvent(SimulationEvent.machineStarting(machine, machine.capacity()));
+            }
+        }
+
+		if (holding != null) {
+			holding.open(kitchen, machines);
+		}
+		if (faults != null) {
+			faults.open(machines, new Random(master.nextLong()));
+		}
+
+		// Patience timers tick every 10 ms; a turn of the wheel covers about 5 s
+		if (!patient) {
+			patienceTimers = new TimingWheel(10, 512);
+			patienceTimers.start();
+		}
+
+		// Let cooks in; on the event loop they have no threads of their own
+        loops = eventLoopThreads > 0 ? new EventLoop(eventLoopThreads) : null;
+        Cook[] cookList = new Cook[elasticCooks == null ? numCooks : 0];
+        Thread[] cooks = new Thread[loops == null ? cookList.length : 0];
+        for (int i = 0; i < cookList.length; i++) {
+            cookList[i] = new Cook(i, new Random(master.nextLong()));
+            cookList[i].resumed = from != null && i < numCooks - addedCooks && from.cookStarted(i);
+            if (loops == null) {
+                cooks[i] = new Thread(
+                        cookList[i]
+
+                );
+            }
+        }
+
+
+		// Build the customers.
+		Customer[] customerList = new Customer[numCustomers];
+		// A party's order has what each of its guests orders
+		if (from != null) {
+			customerList = from.customers(kitchen);
+		}
+		else if (arrivals != null) {
+			// Created as they arrive
+			customerList = new Customer[0];
+		}
+		else {
+			for(int i = 0; i < customerList.length; i++) {
+				int partySize = seating != null ? 1 + master.nextInt(seating.maxPartySize) : 1;
+				customerList[i] = new Customer("Customer " + (i), newOrder(partySize, randomOrders, master), partySize);
+			}
+		}
+		Customer[] takeoutList = new Customer[takeout != null ? takeout.orders : 0];
+		for (int i = 0; i < takeoutList.length; i++) {
+			takeoutList[i] = new Customer("Takeout " + (i), newOrder(1, randomOrders, master));
+			takeoutList[i].channel = Customer.Channel.takeout;
+		}
+
+		// A resumed run picks up with the checkpoint's events, seated customers and queued orders
+		if (from != null) {
+			events.addAll(from.events(kitchen, machines, cookList, customerList, numCooks));
+			int seated = 0;
+			for (Customer customer : customerList) {
+				if (customer.stage == Customer.Stage.seated) {
+					seated++;
+				}
+			}
+			Simulation.numCustomers = seated;
+			for (int orderNum : from.queued()) {
+				placeOrder(orderNum, customerList[orderNum - 1].order());
+			}
+			restoreNs = System.nanoTime() - runStart;
+		}
+
+        // Takeout's queue is there before the cooks claim from it
+        if (takeout != null) {
+            takeout.open(takeoutList, OrderQueue.create(orderQueueKind, numOrders), new Random(master.nextLong()));
+        }
+        for (int i = 0; i < cooks.length; i++) {
+            cooks[i].start();
+        }
+        CountDownLatch cooksDone = new CountDownLatch(loops != null ? cookList.length : 0);
+        CountDownLatch customersDone = new CountDownLatch(loops != null ? customerList.length : 0);
+        if (loops != null) {
+            orderWaiters = customerList;
+            loops.open();
+            for (Cook cook : cookList) {
+                loops.start(cook, cooksDone);
+            }
+        }
+        if (elasticCooks != null) {
+            elasticCooks.open(numCooks, machines, new Random(master.nextLong()));
+        }
+
+		// Customers gone by the checkpoint have nothing left to do
+		List<Thread> customers = new ArrayList<Thread>();
+		for (Customer customer : customerList) {
+			if (loops != null) {
+				loops.start(customer, customersDone);
+			} else if (customer.stage != Customer.Stage.gone) {
+				customers.add(new Thread(customer));
+			}
+		}
+		for (Thread customer : customers) {
+			customer.start();
+		}
+		if (arrivals != null) {
+			customers = arrive(arrivals, numCustomers, master);
+		}
+
+		Thread checkpointer = null;
+		if (checkpointAtMs > 0) {
+			long atMs = checkpointAtMs;
+			String file = checkpointFile;
+			int runCustomers = numCustomers;
+			int runCooks = numCooks;
+			int runTables = numTables;
+			long checkpointSeed = runSeed;
+			Customer[] checkpointCustomers = customerList;
+			checkpointer = new Thread(() -> checkpointAt(atMs, file, runCustomers, runCooks, runTables,
+					checkpointSeed, cookList, checkpointCustomers), "Checkpoint");
+			checkpointer.start();
+		}
+
+
+		try {
+			// On the event loop, wait for the customers, then let the cooks go once their orders are complete
+			if (loops != null) {
+				customersDone.await();
+				for (Cook cook : cookList) {
+					cook.retire();
+					EventLoop.wake(cook);
+				}
+				cooksDone.await();
+				loops.close();
+			}
+
+			// Wait for customers to finish
+			for (Thread customer : customers) {
+			    customer.join();
+            }
+            if (takeout != null) {
+                takeout.close();
+            }
+            if (checkpointer != null) {
+                checkpointer.interrupt();
+                checkpointer.join();
+            }
+
+
+			for(int i = 0; i < cooks.length; i++) {
+			    cooks[i].interrupt();
+            }
+            for(int i = 0; i < cooks.length; i++) {
+                cooks[i].join();
+            }
+            if (elasticCooks != null) {
+                elasticCooks.close();
+            }
+            if (!patient) {
+                patienceTimers.stop();
+            }
+            if (holding != null) {
+                holding.close();
+            }
+            if (arrivals != null) {
+                arrivals.close();
+            }
+            if (faults != null) {
+                faults.close();
+            }
+
+		}
+		catch(InterruptedException e) {
+			System.out.println("Simulation thread interrupted.");
+		}
+		catch(IOException e) {
+			System.out.println("Workload trace not closed: " + e.getMessage());
+		}
+
+		// Shut down machines
+        for (Machine machine : machines) {
+            logEvent(SimulationEvent.machineEnding(machine));
+        }
+
+
+		// Done with simulation		
+		logEvent(SimulationEvent.endSimulation());
+		if (metrics != null) {
+			metrics.close();
+		}
+
+		if (LockProfiler.isEnabled()) {
+			System.out.print(LockProfiler.summarize(profiledLocks()));
+		}
+		if (ActorProfiler.isEnabled()) {
+			System.out.print(ActorProfiler.summarize(completedOrders.size()));
+		}
+		if (seating != null) {
+			System.out.print(seating.summarize(events));
+		}
+		if (!patient) {
+			System.out.print(abandonment(events, numCustomers));
+		}
+		if (holding != null) {
+			System.out.print(holding.summarize());
+		}
+		if (elasticCooks != null) {
+			System.out.print(elasticCooks.summarize(events));
+		}
+		if (workload != null) {
+			System.out.print(workload.summarize());
+		}
+		if (faults != null) {
+			System.out.print(faults.summarize(events));
+		}
+		if (takeout != null) {
+			System.out.print(takeout.summarize(events));
+		}
+
+		return events;
+	}
+
+    /*
+     * Starts count customers off the trace, each once its ticket's time has
+     * come, relative to the first ticket and compressed by the workload's
+     * factor.  Tickets already due start at once.  Returns the customers
+     * that have not left yet, to wait for.
+     */
+    private static List<Thread> arrive(PosTrace.Reader arrivals, int count, Random master) {
+        List<Thread> arrived = new ArrayList<Thread>();
+        long startNs = System.nanoTime();
+        long firstMs = 0;
+        boolean waiting = true;
+        try {
+            for (int i = 0; i < count; i++) {
+                PosTrace.Ticket ticket = arrivals.next();
+                if (i == 0) {
+                    firstMs = ticket.timeMs;
+                }
+                long dueNs = startNs + (long) ((ticket.timeMs - firstMs) * 1e6 / workload.compression);
+                long waitNs = dueNs - System.nanoTime();
+                if (waiting && waitNs > 0) {
+                    try {
+                        Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+                    } catch (InterruptedException e) {
+                        // Let the rest arrive at once
+                        System.out.println("Simulation thread interrupted.");
+                        waiting = false;
+                    }
+                }
+                int partySize = seating != null ? 1 + master.nextInt(seating.maxPartySize) : 1;
+                Thread customer = new Thread(new Customer("Customer " + i, ticket.order, partySize));
+                customer.start();
+                arrived.add(customer);
+                if (arrived.size() % ARRIVAL_SWEEP == 0) {
+                    arrived.removeIf(thread -> !thread.isAlive());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read workload trace " + workload.path, e);
+        }
+        return arrived;
+    }
+
+    /*
+     * Waits atMs into the run, then closes the front door and the order
+     * queue until the run drains, captures it, and opens them again.  The
+     * checkpoint is saved once the run is going again.
+     */
+    private static void checkpointAt(long atMs, String file, int numCustomers, int numCooks, int numTables,
+            long runSeed, Cook[] cookList, Customer[] customerList) {
+        List<SimulationEvent> prefix;
+        int[] queued;
+        long timeNs;
+        try {
+            Thread.sleep(atMs);
+            quiescing = true;
+            while (true) {
+                while (!drained(cookList)) {
+                    Thread.sleep(1);
+                }
+                // A cook that passed the gate just before it closed may still claim an order, so check again after
+                queued = queuedOrders();
+                synchronized (events) {
+                    prefix = new ArrayList<SimulationEvent>(events);
+                }
+                timeNs = System.nanoTime() - startNanos;
+                if (drained(cookList) && queued.length == orderQueue.size()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The run ended first
+            return;
+        } finally {
+            quiescing = false;
+        }
+        Checkpoint checkpoint = Checkpoint.capture(kitchen.standardCapacities(), numCustomers, numCooks, numTables,
+                cookOrderLimit, runSeed, timeNs, prefix, customerList, queued);
+        try {
+            checkpoint.save(file);
+            System.out.println("Checkpoint saved to " + file);
+        } catch (IOException e) {
+            System.out.println("Checkpoint not saved: " + e.getMessage());
+        }
+    }
+
+    // Whether every seated customer's order waits for a cook, and no cook or machine has work on hand
+    private static boolean drained(Cook[] cookList) {
+        for (Cook cook : cookList) {
+            if (cook.idleSinceNs == 0) {
+                return false;
+            }
+        }
+        for (Machine machine : machines) {
+            if (machine.itemsCooking > 0) {
+                return false;
+            }
+        }
+        synchronized (frontDoor) {
+            return numCustomers == orderQueue.size();
+        }
+    }
+
+    // The orders in the queue, in queue order, taken out and put back while no cook claims any
+    private static int[] queuedOrders() {
+        List<Integer> queued = new ArrayList<Integer>();
+        int orderNum;
+        while ((orderNum = orderQueue.poll()) != -1) {
+            queued.add(orderNum);
+        }
+        int[] orders = new int[queued.size()];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = queued.get(i);
+            orderQueue.offer(orders[i]);
+        }
+        return orders;
+    }
+
+    // Share of customers who balked, and of orders that were cancelled
+    private static String abandonment(List<SimulationEvent> events, int numCustomers) {
+        int balked = 0;
+        int placed = 0;
+        int cancelled = 0;
+        synchronized (events) {
+            for (SimulationEvent e : events) {
+                if (e.event == SimulationEvent.EventType.CustomerBalked) {
+                    balked++;
+                } else if (e.event == SimulationEvent.EventType.CustomerPlacedOrder) {
+                    placed++;
+                } else if (e.event == SimulationEvent.EventType.CustomerCancelledOrder) {
+                    cancelled++;
+                }
+            }
+        }
+        return String.format("Abandonment: %d of %d customers balked (%.1f%%); %d of %d orders cancelled (%.1f%%)%n",
+                balked, numCustomers, numCustomers > 0 ? 100.0 * balked / numCustomers : 0,
+                cancelled, placed, placed > 0 ? 100.0 * cancelled / placed : 0);
+    }
+
+    // What a party orders: one of each food per guest, or up to 3 of each at random
+    private static LinkedList<Food> newOrder(int partySize, boolean randomOrders, Random rnd) {
+        LinkedList<Food> order = new LinkedList<Food>();
+        for (int g = 0; g < partySize; g++) {
+            for (Food food : kitchen.foods) {
+                int count = randomOrders ? rnd.nextInt(4) : 1;
+                for (int f = 0; f < count; f++) {
+                    order.add(food);
+                }
+            }
+        }
+        return order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Food>[] newOrderItems(int size) {
+        return (List<Food>[]) new List<?>[size];
+    }
+
+    // Counters of every monitor of the current run
+    private static List<LockProfiler.LockStats> profiledLocks() {
+        List<LockProfiler.LockStats> locks = new ArrayList<LockProfiler.LockStats>(Arrays.asList(
+                frontDoorStats, orderLockStats, customerLockStats, cookingLockStats, logEventStats));
+        if (orderQueue instanceof MonitorOrderQueue) {
+            locks.add(((MonitorOrderQueue) orderQueue).monitorStats);
+        }
+        if (holding != null) {
+            locks.add(holding.monitorStats);
+        }
+        if (takeout != null) {
+            locks.add(takeout.claimLockStats);
+        }
+        if (loops != null) {
+            locks.add(idleCooksStats);
+        }
+        if (machines != null) {
+            for (Machine machine : machines) {
+                locks.add(machine.monitorStats);
+            }
+        }
+        return locks;
+    }
+
+	/**
+	 * Entry point for the simulation.  An optional argument names a kitchen
+	 * definition file to run against instead of the standard kitchen.
+	 *
+	 * --seed <n>       draws the parameters and the run from the given seed
+	 * --record <file>  saves the run's schedule to file
+	 * --replay <file>  replays a recorded schedule, with its seed
+	 * --trace <file>   writes the run as a Chrome/Perfetto trace
+	 * --store <file>   saves the run as a columnar EventStore
+	 * --lock-profile   prints wait and hold times of every lock after the run
+	 * --seating <fifo|bestFit|bestFitSkip> <tables> <max-party>
+	 *                  seats parties of up to max-party guests at tables
+	 *                  given as count x seats, e.g. 4x2,4x4,2x6,1x8
+	 * --order-queue <monitor|lockFree>
+	 *                  selects the queue orders wait in for a cook
+	 * --actor-profile  prints polling spin, CPU time and allocation of the actors after the run
+	 * --patience <balk-ms> <renege-ms>
+	 *                  customers give up after waiting this long to enter,
+	 *                  or for a cook to take their order
+	 * --machine-choice <random|roundRobin|powerOfTwo|leastFinish>
+	 *                  how cooks pick among a station's machines
+	 * --cook-orders <n>
+	 *                  each cook works on up to n orders at once
+	 * --hot-holding <per-food> <total> <hold-ms>
+	 *                  idle machines make food ahead of demand, keeping up to
+	 *                  per-food items of a food and total in all for hold-ms
+	 * --elastic-cooks <max> <hire-backlog> <retire-idle-ms>
+	 *                  hires cooks up to max while hire-backlog orders wait,
+	 *                  and lets hired cooks go after retire-idle-ms idle
+	 * --checkpoint <ms> <file>
+	 *                  saves a checkpoint of the run ms into it to file
+	 * --workload <trace> <compression>
+	 *                  replays the tickets of a point-of-sale CSV as the
+	 *                  customers, compression times faster than they came
+	 * --workload-aliases <file>
+	 *                  maps the trace's item names onto foods, item = food
+	 * --takeout <orders> <per-sec> <sla-ms>
+	 *                  brings in takeout orders at random at the given
+	 *                  mean rate, bypassing the tables, with a latency
+	 *                  target, none if 0
+	 * --takeout-weights <dine-in> <takeout>
+	 *                  weights the channels' shares of cook claims
+	 * --dine-in-sla <ms>
+	 *                  the latency target of dine-in orders
+	 * --faults <lose|hold> <machine@at-ms+for-ms[:slots-left],...>
+	 *                  takes machines down, or leaves them slots-left slots,
+	 *                  at the given times; items cooking are lost or held
+	 * --random-faults <lose|hold> <mtbf-ms> <mttr-ms>
+	 *                  takes each machine down at random, with the given
+	 *                  mean times between failures and to repair
+	 * --metrics <port> serves live metrics on localhost:port while the run goes,
+	 *                  a page at /, and Prometheus text at /metrics
+	 * --event-loop     runs the customers and cooks as state machines on a
+	 *                  thread per core, instead of on a thread each
+	 */
+	public static void main(String args[]) throws InterruptedException, IOException {
+		// Parameters to the simulation
+		/*
+		if (args.length != 4) {
+			System.err.println("usage: java Simulation <#customers> <#cooks> <#tables> <capacity> <randomorders");
+			System.exit(1);
+		}
+		int numCustomers = new Integer(args[0]).intValue();
+		int numCooks = new Integer(args[1]).intValue();
+		int numTables = new Integer(args[2]).intValue();
+		int machineCapacity = new Integer(args[3]).intValue();
+		boolean randomOrders = new Boolean(args[4]);
+		 */
+
+		//int numCustomers = 40;
+		//int numCooks = 8;
+		//int numTables = 12;
+		//int machineCapacity = 4;
+		//boolean randomOrders = true;
+
+        String kitchenFile = null;
+        String recordFile = null;
+        String traceFile = null;
+        String storeFile = null;
+        PosTrace trace = null;
+        String aliasesFile = null;
+        Takeout takeoutIn = null;
+        int[] takeoutWeights = null;
+        long dineInSlaMs = 0;
+        Schedule replay = null;
+        long runSeed = new Random().nextLong();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--seed")) {
+                runSeed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--record")) {
+                recordFile = args[++i];
+            } else if (args[i].equals("--lock-profile")) {
+                LockProfiler.setEnabled(true);
+            } else if (args[i].equals("--seating")) {
+                Seating.Policy policy = Seating.Policy.valueOf(args[++i]);
+                String tableSpec = args[++i];
+                setSeating(Seating.parse(tableSpec, Integer.parseInt(args[++i]), policy));
+            } else if (args[i].equals("--order-queue")) {
+                setOrderQueue(OrderQueue.Kind.valueOf(args[++i]));
+            } else if (args[i].equals("--actor-profile")) {
+                ActorProfiler.setEnabled(true);
+            } else if (args[i].equals("--patience")) {
+                setPatience(Long.parseLong(args[++i]), Long.parseLong(args[++i]));
+            } else if (args[i].equals("--machine-choice")) {
+                setMachineChoice(MachineChoice.valueOf(args[++i]));
+            } else if (args[i].equals("--cook-orders")) {
+                setCookOrderLimit(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--hot-holding")) {
+                setHotHolding(new HotHolding(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]), Long.parseLong(args[++i])));
+            } else if (args[i].equals("--elastic-cooks")) {
+                setElasticCooks(new ElasticCooks(Integer.parseInt(args[++i]), Integer.parseInt(args[++i]), Long.parseLong(args[++i])));
+            } else if (args[i].equals("--workload")) {
+                trace = new PosTrace(args[++i], Double.parseDouble(args[++i]));
+            } else if (args[i].equals("--workload-aliases")) {
+                aliasesFile = args[++i];
+            } else if (args[i].equals("--takeout")) {
+                takeoutIn = new Takeout(Integer.parseInt(args[++i]), Double.parseDouble(args[++i]), Long.parseLong(args[++i]));
+            } else if (args[i].equals("--takeout-weights")) {
+                takeoutWeights = new int[] { Integer.parseInt(args[++i]), Integer.parseInt(args[++i]) };
+            } else if (args[i].equals("--dine-in-sla")) {
+                dineInSlaMs = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--faults")) {
+                MachineFaults.InProgress policy = MachineFaults.InProgress.valueOf(args[++i]);
+                setMachineFaults(MachineFaults.parse(args[++i], policy));
+            } else if (args[i].equals("--random-faults")) {
+                MachineFaults.InProgress policy = MachineFaults.InProgress.valueOf(args[++i]);
+                setMachineFaults(MachineFaults.random(Long.parseLong(args[++i]), Long.parseLong(args[++i]), policy));
+            } else if (args[i].equals("--metrics")) {
+                setMetrics(new LiveMetrics(Integer.parseInt(args[++i])));
+            } else if (args[i].equals("--event-loop")) {
+                setEventLoop(Runtime.getRuntime().availableProcessors());
+            } else if (args[i].equals("--checkpoint")) {
+                setCheckpoint(Long.parseLong(args[++i]), args[++i]);
+            } else if (args[i].equals("--trace")) {
+                traceFile = args[++i];
+            } else if (args[i].equals("--store")) {
+                storeFile = args[++i];
+            } else if (args[i].equals("--replay")) {
+                replay = Schedule.load(args[++i]);
+                runSeed = replay.seed();
+            } else {
+                kitchenFile = args[i];
+            }
+        }
+        if (trace != null && aliasesFile != null) {
+            trace.loadAliases(aliasesFile);
+        }
+        setWorkload(trace);
+        if (takeoutIn != null) {
+            if (takeoutWeights != null) {
+                takeoutIn.weights(takeoutWeights[0], takeoutWeights[1]);
+            }
+            takeoutIn.dineInSla(dineInSlaMs);
+        }
+        setTakeout(takeoutIn);
+        setSeed(runSeed);
+        Schedule recording = recordFile != null ? new Schedule() : null;
+        setSchedule(replay != null ? replay : recording);
+
+        Random rnd = new Random(runSeed);
+        int numCustomers = rnd.nextInt(1000);
+        int numCooks = rnd.nextInt(100);
+        int numTables = rnd.nextInt(50);
+        int machineCapacity = rnd.nextInt(20);
+        boolean randomOrders = true;
+        Kitchen kitchen = kitchenFile != null ? Kitchen.load(kitchenFile) : Kitchen.standard(machineCapacity);
+
+		// Run the simulation and then 
+		//   feed the result into the method to validate simulation.
+		List<SimulationEvent> events = runSimulation(
+								kitchen,
+								numCustomers, numCooks,
+								numTables,
+								randomOrders
+								);
+		boolean valid = Validate.validateSimulation(events);
+		if (recording != null) {
+			recording.save(recordFile);
+		}
+		if (traceFile != null) {
+			TraceExporter.export(events, traceFile);
+		}
+		if (storeFile != null) {
+			EventStore.of(events).save(Paths.get(storeFile));
+		}
+		System.out.print(BottleneckAnalyzer.analyze(events));
+		System.out.println("Did it work? " + valid);
+	}
+
+}
+
+
+
@@ -1,285 +1,523 @@
-package MultiThreadedRestaurantSim;
-
-import java.util.List;
-
-/**
- * This class represents each of the salient events that occur during the
- * simulation.
- */
-public class SimulationEvent {
-    public enum EventType {
-    	/* General events */
-    	SimulationStarting,
-    	SimulationEnded,
-    	/* Customer events */
-		CustomerStarting,
-		CustomerEnteredRestaurant,
-    	CustomerPlacedOrder,
-    	CustomerReceivedOrder,
-		CustomerLeavingRestaurant,
-    	/* Cook Events */
-    	CookStarting,
-    	CookReceivedOrder,
-    	CookStartedFood,
-		CookFinishedFood,
-    	CookCompletedOrder,
-    	CookEnding,
-    	/* Machine events */
-    	MachineStarting,
-    	MachineStartingFood,
-    	MachineDoneFood,
-    	MachineEnding
-    };
-    public final EventType event;
-    /* Not all of these fields are relevant for every event;
-       see factory methods below */
-    public final Cook cook;
-    public final Customer customer;
-    public final Machine machine;
-    public final Food food;
-    public final List<Food> orderFood;
-    public final int orderNumber;
-    public final int[] simParams;
-
-    private SimulationEvent(EventType event,
-			    Cook cook,
-			    Customer customer,
-			    Machine machine,
-			    Food food,
-			    List<Food> orderFood,
-			    int orderNumber,
-			    int[] simParams) {
-	this.event = event;
-	this.cook = cook;
-	this.customer = customer;
-	this.machine = machine;
-	this.food = food;
-	this.orderFood = orderFood;
-	this.orderNumber = orderNumber;
-	this.simParams = simParams;
-    }
-
-    /* Factory methods */
-
-    /* Simulation events */
-    public static SimulationEvent startSimulation(int numCustomers,
-					   int numCooks,
-					   int numTables,
-					   int capacity) {
-	int[] params = new int[4];
-	params[0] = numCustomers;
-	params[1] = numCooks;
-	params[2] = numTables;
-	params[3] = capacity;
-	return new SimulationEvent(EventType.SimulationStarting,
-				   null,null,null,null,null,0,
-				   params);
-    }
-
-    public static SimulationEvent endSimulation() {
-	return new SimulationEvent(EventType.SimulationEnded,
-				   null,null,null,null,null,0,null);
-    }
-
-    /* Customer events */
-    public static SimulationEvent customerStarting(Customer customer) {
-	return new SimulationEvent(EventType.CustomerStarting,
-				   null,
-				   customer,
-				   null,null,null,0,null);
-    }
-
-    public static SimulationEvent customerEnteredRestaurant(Customer customer) {
-	return new SimulationEvent(EventType.CustomerEnteredRestaurant,
-				   null,
-				   customer,
-				   null,null,null,0,null);
-    }
-
-    public static SimulationEvent customerPlacedOrder(Customer customer,
-					    List<Food> order,
-					    int orderNumber) {
-	return new SimulationEvent(EventType.CustomerPlacedOrder,
-				   null,
-				   customer,
-				   null, null,
-				   order, orderNumber,
-				   null);
-    }
-
-    public static SimulationEvent customerReceivedOrder(Customer customer,
-					    List<Food> order,
-					    int orderNumber) {
-	return new SimulationEvent(EventType.CustomerReceivedOrder,
-				   null,
-				   customer,
-				   null, null,
-				   order, orderNumber,
-				   null);
-    }
-
-    public static SimulationEvent customerLeavingRestaurant(Customer customer) {
-	return new SimulationEvent(EventType.CustomerLeavingRestaurant,
-				   null,
-				   customer,
-				   null, null, null, 0, null);
-    }
-
-    /* Cook events */
-    public static SimulationEvent cookStarting(Cook cook) {
-	return new SimulationEvent(EventType.CookStarting,
-				   cook,
-				   null,null,null,null,0,null);
-    }
-
-    public static SimulationEvent cookReceivedOrder(Cook cook,
-					     List<Food> order,
-					     int orderNumber) {
-	return new SimulationEvent(EventType.CookReceivedOrder,
-				   cook,
-				   null,null, null,
-				   order, orderNumber,
-				   null);
-    }
-
-    public static SimulationEvent cookStartedFood(Cook cook, Food food,
-					   int orderNumber) {
-	return new SimulationEvent(EventType.CookStartedFood,
-				   cook,
-				   null,null,
-				   food,
-				   null,
-				   orderNumber,
-				   null);
-    }
-
-    public static SimulationEvent cookFinishedFood(Cook cook, Food food,
-					   int orderNumber) {
-	return new SimulationEvent(EventType.CookFinishedFood,
-				   cook,
-				   null,null,
-				   food,
-				   null,
-				   orderNumber,
-				   null);
-    }
-
-    public static SimulationEvent cookCompletedOrder(Cook cook, int orderNumber) {
-	return new SimulationEvent(EventType.CookCompletedOrder,
-				   cook,
-				   null,null,null,null,
-				   orderNumber,
-				   null);
-    }
-
-    public static SimulationEvent cookEnding(Cook cook) {
-	return new SimulationEvent(EventType.CookEnding, cook,
-				   null,null,null,null,0,null);
-    }
-
-    /* Machine events */
-    public static SimulationEvent machineStarting(Machine machine,
-					   Food food,
-					   int capacity) {
-    	int[] params = new int[1];
-    	params[0] = capacity;
-    	return new SimulationEvent(EventType.MachineStarting,
-				   null, null,
-				   machine,
-				   food,null,0,params);
-    }
-
-    public static SimulationEvent machineCookingFood(Machine machine,
-					      Food food) {
-	return new SimulationEvent(EventType.MachineStartingFood,
-				   null,null,
-				   machine,
-				   food,
-				   null,0,null);
-    }
-
-    public static SimulationEvent machineDoneFood(Machine machine,
-					   Food food) {
-	return new SimulationEvent(EventType.MachineDoneFood,
-				   null,null,
-				   machine,
-				   food,
-				   null,0,null);
-    }
-
-    public static SimulationEvent machineEnding(Machine machine) {
-	return new SimulationEvent(EventType.MachineEnding,
-				   null,null,
-				   machine,
-				   null,null,0,null);
-    }
-
-    public String toString() {
-	switch (event) {
-	/* Simulation events */
-    	case SimulationStarting:
-	    int numCustomers = simParams[0];
-	    int numCooks = simParams[1];
-	    int numTables = simParams[2];
-	    int capacity = simParams[3];
-	    return "Starting simulation: "+numCustomers+" customers; "+
-		numCooks+" cooks; "+numTables+" tables; "+
-		"machine capacity "+capacity+".";
-
-	case SimulationEnded:
-	    return "Simulation ended.";
-
-    	/* Customer events */
-	case CustomerStarting:
-	    return customer + " going to Restaurant.";
-
-	case CustomerEnteredRestaurant:
-	    return customer + " entered Restaurant.";
-
-	case CustomerPlacedOrder:
-	    return customer + " placing order " + orderNumber + " " + orderFood;
-
-	case CustomerReceivedOrder:
-	    return customer + " received order " + orderNumber + " " + orderFood;
-
-	case CustomerLeavingRestaurant:
-	    return customer + " leaving Restaurant.";
-
-    	/* Cook Events */
-	case CookStarting:
-	    return cook + " reporting for work.";
-
-	case CookReceivedOrder:
-	    return cook + " starting order "+ orderNumber + " " + orderFood;
-
-	case CookStartedFood:
-	    return cook + " preparing " + food + " for order " + orderNumber;
-
-	case CookFinishedFood:
-	    return cook + " finished " + food + " for order " + orderNumber;
-
-	case CookCompletedOrder:
-	    return cook + " completed order "+orderNumber;
-
-	case CookEnding:
-	    return cook + " going home for the night.";
-
-    	/* Machine events */
-	case MachineStarting:
-	    return machine + " starting up for making " +
-		food + "; " + simParams[0] +".";
-
-	case MachineStartingFood:
-	    return machine + " making " + food + ".";
-
-	case MachineDoneFood:
-	    return machine + " completed " + food + ".";
-
-	case MachineEnding:
-	    return machine + " shutting down.";
-
-	default:
-	    throw new Error("Illegal event; can't be stringified");
-	}
-    }
-}
+package MultiThreadedRestaurantSim;
+
+import java.util.List;
+
+/**
+ * This class represents each of the salient events that occur during the
+ * simulation.
+ */
+public class SimulationEvent {
+    public enum EventType {
+    	/* General events */
+    	SimulationStarting,
+    	SimulationEnded,
+    	/* Customer events */
+		CustomerStarting,
+		CustomerEnteredRestaurant,
+    	CustomerPlacedOrder,
+    	CustomerReceivedOrder,
+		CustomerLeavingRestaurant,
+		CustomerBalked,
+		CustomerCancelledOrder,
+    	/* Cook Events */
+    	CookStarting,
+    	CookReceivedOrder,
+    	CookStartedFood,
+		CookFinishedFood,
+    	CookCompletedOrder,
+    	CookEnding,
+    	/* Machine events */
+    	MachineStarting,
+    	MachineStartingFood,
+    	MachineDoneFood,
+    	MachineEnding,
+    	/* Hot-holding events */
+    	FoodHeld,
+    	CookTookHeldFood,
+    	HeldFoodExpired,
+    	HeldFoodEvicted,
+    	/* Fault events */
+    	MachineFault,
+    	MachineLostFood,
+    	MachineRecovered
+    };
+    public final EventType event;
+    /* Not all of these fields are relevant for every event;
+       see factory methods below */
+    public final Cook cook;
+    public final Customer customer;
+    public final Machine machine;
+    public final Food food;
+    public final List<Food> orderFood;
+    public final int orderNumber;
+    public final int[] simParams;
+    /* The recipe step of food a cook or machine is working on */
+    final Kitchen.Step step;
+    /* Nanoseconds since the simulation started, and the id of the thread
+       that logged the event; set once, when the event is logged */
+    private long timeNs;
+    private long threadId;
+
+    private SimulationEvent(EventType event,
+			    Cook cook,
+			    Customer customer,
+			    Machine machine,
+			    Food food,
+			    List<Food> orderFood,
+			    int orderNumber,
+			    int[] simParams) {
+	this(event, cook, customer, machine, food, orderFood, orderNumber, simParams, null);
+    }
+
+    private SimulationEvent(EventType event,
+			    Cook cook,
+			    Customer customer,
+			    Machine machine,
+			    Food food,
+			    List<Food> orderFood,
+			    int orderNumber,
+			    int[] simParams,
+			    Kitchen.Step step) {
+	this.event = event;
+	this.cook = cook;
+	this.customer = customer;
+	this.machine = machine;
+	this.food = food;
+	this.orderFood = orderFood;
+	this.orderNumber = orderNumber;
+	this.simParams = simParams;
+	this.step = step;
+    }
+
+    /* Factory methods */
+
+    /* Simulation events */
+    public static SimulationEvent startSimulation(int numCustomers,
+					   int numCooks,
+					   int numTables,
+					   int capacity,
+					   int numMachines) {
+	int[] params = new int[5];
+	params[0] = numCustomers;
+	params[1] = numCooks;
+	params[2] = numTables;
+	params[3] = capacity;
+	params[4] = numMachines;
+	return new SimulationEvent(EventType.SimulationStarting,
+				   null,null,null,null,null,0,
+				   params);
+    }
+
+    /* A simulation whose cooks are hired as needed, from numCooks up to maxCooks */
+    public static SimulationEvent startSimulation(int numCustomers,
+					   int numCooks,
+					   int numTables,
+					   int capacity,
+					   int numMachines,
+					   int maxCooks) {
+	int[] params = new int[6];
+	params[0] = numCustomers;
+	params[1] = numCooks;
+	params[2] = numTables;
+	params[3] = capacity;
+	params[4] = numMachines;
+	params[5] = maxCooks;
+	return new SimulationEvent(EventType.SimulationStarting,
+				   null,null,null,null,null,0,
+				   params);
+    }
+
+    public static SimulationEvent endSimulation() {
+	return new SimulationEvent(EventType.SimulationEnded,
+				   null,null,null,null,null,0,null);
+    }
+
+    /* Customer events */
+    public static SimulationEvent customerStarting(Customer customer) {
+	return new SimulationEvent(EventType.CustomerStarting,
+				   null,
+				   customer,
+				   null,null,null,0,null);
+    }
+
+    public static SimulationEvent customerEnteredRestaurant(Customer customer) {
+	return new SimulationEvent(EventType.CustomerEnteredRestaurant,
+				   null,
+				   customer,
+				   null,null,null,0,null);
+    }
+
+    public static SimulationEvent customerEnteredRestaurant(Customer customer,
+					    int partySize,
+					    int table,
+					    int seats) {
+	int[] params = new int[3];
+	params[0] = partySize;
+	params[1] = table;
+	params[2] = seats;
+	return new SimulationEvent(EventType.CustomerEnteredRestaurant,
+				   null,
+				   customer,
+				   null,null,null,0,params);
+    }
+
+    public static SimulationEvent customerPlacedOrder(Customer customer,
+					    List<Food> order,
+					    int orderNumber) {
+	return new SimulationEvent(EventType.CustomerPlacedOrder,
+				   null,
+				   customer,
+				   null, null,
+				   order, orderNumber,
+				   null);
+    }
+
+    public static SimulationEvent customerReceivedOrder(Customer customer,
+					    List<Food> order,
+					    int orderNumber) {
+	return new SimulationEvent(EventType.CustomerReceivedOrder,
+				   null,
+				   customer,
+				   null, null,
+				   order, orderNumber,
+				   null);
+    }
+
+    public static SimulationEvent customerLeavingRestaurant(Customer customer) {
+	return new SimulationEvent(EventType.CustomerLeavingRestaurant,
+				   null,
+				   customer,
+				   null, null, null, 0, null);
+    }
+
+    public static SimulationEvent customerBalked(Customer customer) {
+	return new SimulationEvent(EventType.CustomerBalked,
+				   null,
+				   customer,
+				   null, null, null, 0, null);
+    }
+
+    public static SimulationEvent customerCancelledOrder(Customer customer,
+					    int orderNumber) {
+	return new SimulationEvent(EventType.CustomerCancelledOrder,
+				   null,
+				   customer,
+				   null, null, null,
+				   orderNumber, null);
+    }
+
+    /* Cook events */
+    public static SimulationEvent cookStarting(Cook cook) {
+	return new SimulationEvent(EventType.CookStarting,
+				   cook,
+				   null,null,null,null,0,null);
+    }
+
+    public static SimulationEvent cookReceivedOrder(Cook cook,
+					     List<Food> order,
+					     int orderNumber) {
+	return new SimulationEvent(EventType.CookReceivedOrder,
+				   cook,
+				   null,null, null,
+				   order, orderNumber,
+				   null);
+    }
+
+    static SimulationEvent cookStartedFood(Cook cook, Machine machine,
+					   Kitchen.Step step,
+					   int orderNumber) {
+	return new SimulationEvent(EventType.CookStartedFood,
+				   cook,
+				   null,
+				   machine,
+				   step.food,
+				   null,
+				   orderNumber,
+				   null,
+				   step);
+    }
+
+    static SimulationEvent cookFinishedFood(Cook cook, Machine machine,
+					   Kitchen.Step step,
+					   int orderNumber) {
+	return new SimulationEvent(EventType.CookFinishedFood,
+				   cook,
+				   null,
+				   machine,
+				   step.food,
+				   null,
+				   orderNumber,
+				   null,
+				   step);
+    }
+
+    public static SimulationEvent cookCompletedOrder(Cook cook, int orderNumber) {
+	return new SimulationEvent(EventType.CookCompletedOrder,
+				   cook,
+				   null,null,null,null,
+				   orderNumber,
+				   null);
+    }
+
+    public static SimulationEvent cookEnding(Cook cook) {
+	return new SimulationEvent(EventType.CookEnding, cook,
+				   null,null,null,null,0,null);
+    }
+
+    /* Machine events */
+    public static SimulationEvent machineStarting(Machine machine,
+					   int capacity) {
+    	int[] params = new int[1];
+    	params[0] = capacity;
+    	return new SimulationEvent(EventType.MachineStarting,
+				   null, null,
+				   machine,
+				   null,machine.foods,0,params);
+    }
+
+    static SimulationEvent machineCookingFood(Machine machine,
+					      Kitchen.Step step,
+					      int orderNumber) {
+	return new SimulationEvent(EventType.MachineStartingFood,
+				   null,null,
+				   machine,
+				   step.food,
+				   null,orderNumber,null,
+				   step);
+    }
+
+    static SimulationEvent machineDoneFood(Machine machine,
+					   Kitchen.Step step,
+					   int orderNumber) {
+	return new SimulationEvent(EventType.MachineDoneFood,
+				   null,null,
+				   machine,
+				   step.food,
+				   null,orderNumber,null,
+				   step);
+    }
+
+    public static SimulationEvent machineEnding(Machine machine) {
+	return new SimulationEvent(EventType.MachineEnding,
+				   null,null,
+				   machine,
+				   null,null,0,null);
+    }
+
+    /* Hot-holding events */
+    static SimulationEvent foodHeld(Machine machine, Food food) {
+	return new SimulationEvent(EventType.FoodHeld,
+				   null,null,
+				   machine,
+				   food,
+				   null,0,null);
+    }
+
+    static SimulationEvent cookTookHeldFood(Cook cook, Food food,
+					    int orderNumber) {
+	return new SimulationEvent(EventType.CookTookHeldFood,
+				   cook,
+				   null,null,
+				   food,
+				   null,
+				   orderNumber,
+				   null);
+    }
+
+    static SimulationEvent heldFoodExpired(Food food) {
+	return new SimulationEvent(EventType.HeldFoodExpired,
+				   null,null,null,
+				   food,
+				   null,0,null);
+    }
+
+    static SimulationEvent heldFoodEvicted(Food food) {
+	return new SimulationEvent(EventType.HeldFoodEvicted,
+				   null,null,null,
+				   food,
+				   null,0,null);
+    }
+
+    /* Fault events */
+    static SimulationEvent machineFault(Machine machine, int capacityLeft) {
+	int[] params = new int[1];
+	params[0] = capacityLeft;
+	return new SimulationEvent(EventType.MachineFault,
+				   null,null,
+				   machine,
+				   null,null,0,
+				   params);
+    }
+
+    static SimulationEvent machineLostFood(Machine machine, Kitchen.Step step,
+					   int orderNumber) {
+	return new SimulationEvent(EventType.MachineLostFood,
+				   null,null,
+				   machine,
+				   step.food,
+				   null,
+				   orderNumber,
+				   null,
+				   step);
+    }
+
+    static SimulationEvent machineRecovered(Machine machine, int capacity) {
+	int[] params = new int[1];
+	params[0] = capacity;
+	return new SimulationEvent(EventType.MachineRecovered,
+				   null,null,
+				   machine,
+				   null,null,0,
+				   params);
+    }
+
+    /* An event of a checkpointed run, restored with its original stamp */
+    static SimulationEvent restored(EventType event,
+				    Cook cook,
+				    Customer customer,
+				    Machine machine,
+				    Food food,
+				    List<Food> orderFood,
+				    int orderNumber,
+				    int[] simParams,
+				    Kitchen.Step step,
+				    long timeNs,
+				    long threadId) {
+	SimulationEvent restored = new SimulationEvent(event, cook, customer, machine,
+						       food, orderFood, orderNumber, simParams, step);
+	restored.stamp(timeNs, threadId);
+	return restored;
+    }
+
+    void stamp(long timeNs, long threadId) {
+	this.timeNs = timeNs;
+	this.threadId = threadId;
+    }
+
+    public long timeNs() {
+	return timeNs;
+    }
+
+    public long threadId() {
+	return threadId;
+    }
+
+    /* Formats nanoseconds as milliseconds with six decimals, without String.format */
+    static String formatMs(long ns) {
+	String fraction = Long.toString(1000000 + ns % 1000000).substring(1);
+	return (ns / 1000000) + "." + fraction;
+    }
+
+    /* Machines make items for hot holding under order 0 */
+    private String forOrder() {
+	return orderNumber > 0 ? " for order " + orderNumber : " for hot holding";
+    }
+
+    public String toString() {
+	return "[" + formatMs(timeNs) + " ms t" + threadId + "] " + describe();
+    }
+
+    /* What happened, without the timestamp and thread */
+    public String describe() {
+	switch (event) {
+	/* Simulation events */
+    	case SimulationStarting:
+	    int numCustomers = simParams[0];
+	    int numCooks = simParams[1];
+	    int numTables = simParams[2];
+	    int capacity = simParams[3];
+	    int numMachines = simParams[4];
+	    return "Starting simulation: "+numCustomers+" customers; "+
+		numCooks+(simParams.length > 5 ? " to "+simParams[5] : "")+" cooks; "+numTables+" tables; "+numMachines+" machines; "+
+		(capacity < 0 ? "per-machine capacity." : "machine capacity "+capacity+".");
+
+	case SimulationEnded:
+	    return "Simulation ended.";
+
+    	/* Customer events */
+	case CustomerStarting:
+	    return customer + " going to Restaurant.";
+
+	case CustomerEnteredRestaurant:
+	    if (simParams != null) {
+		return customer + " entered Restaurant: party of " + simParams[0] +
+		    " at table " + simParams[1] + " of " + simParams[2] + " seats.";
+	    }
+	    return customer + " entered Restaurant.";
+
+	case CustomerPlacedOrder:
+	    return customer + " placing order " + orderNumber + " " + orderFood;
+
+	case CustomerReceivedOrder:
+	    return customer + " received order " + orderNumber + " " + orderFood;
+
+	case CustomerLeavingRestaurant:
+	    return customer + " leaving Restaurant.";
+
+	case CustomerBalked:
+	    return customer + " gave up waiting to enter Restaurant.";
+
+	case CustomerCancelledOrder:
+	    return customer + " cancelled order " + orderNumber;
+
+    	/* Cook Events */
+	case CookStarting:
+	    return cook + " reporting for work.";
+
+	case CookReceivedOrder:
+	    return cook + " starting order "+ orderNumber + " " + orderFood;
+
+	case CookStartedFood:
+	    return cook + " preparing " + step + " for order " + orderNumber;
+
+	case CookFinishedFood:
+	    return cook + " finished " + step + " for order " + orderNumber;
+
+	case CookCompletedOrder:
+	    return cook + " completed order "+orderNumber;
+
+	case CookEnding:
+	    return cook + " going home for the night.";
+
+    	/* Machine events */
+	case MachineStarting:
+	    return machine + " starting up for making " +
+		orderFood + "; " + simParams[0] +".";
+
+	case MachineStartingFood:
+	    return machine + " making " + step + forOrder() + ".";
+
+	case MachineDoneFood:
+	    return machine + " completed " + step + forOrder() + ".";
+
+	case MachineEnding:
+	    return machine + " shutting down.";
+
+	/* Hot-holding events */
+	case FoodHeld:
+	    return machine + " put " + food + " in hot holding.";
+
+	case CookTookHeldFood:
+	    return cook + " took " + food + " from hot holding for order " + orderNumber;
+
+	case HeldFoodExpired:
+	    return food + " expired in hot holding.";
+
+	case HeldFoodEvicted:
+	    return food + " evicted from hot holding.";
+
+	/* Fault events */
+	case MachineFault:
+	    return machine + (simParams[0] == 0 ? " went down." : " degraded to " + simParams[0] + " slots.");
+
+	case MachineLostFood:
+	    return machine + " lost " + step + " for order " + orderNumber + " in a fault.";
+
+	case MachineRecovered:
+	    return machine + " recovered; " + simParams[0] + ".";
+
+	default:
+	    throw new Error("Illegal event; can't be stringified");
+	}
+    }
+}
@@ -0,0 +1,274 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs fixed stress scenarios, each at the edge of one dimension of the
+ * simulation, and holds each to recorded budgets for wall time, peak heap
+ * and peak thread count.  A scenario fails if its run does not validate,
+ * does not finish within the timeout, or goes over any of its budgets by
+ * more than the tolerance of that measure.  The suite exits with 1 if any
+ * scenario fails, so a change that breaks correctness or scale does not
+ * go unnoticed.
+ *
+ * Each scenario runs in a child JVM of its own, so its heap and threads
+ * are measured alone, and a scenario that runs out of memory or threads,
+ * or hangs, fails without taking the suite down.
+ *
+ * Budgets are kept in a properties file, as scenario.measure = value,
+ * with tolerance.measure giving the share a measure may go over, or
+ * scenario.tolerance.measure for a scenario noisier than most.  Running
+ * with --record writes the measured values as the new budgets, along with
+ * scenario.recordedOn describing the machine they were measured on; wall
+ * time especially only holds on a machine like it.  A check on a different
+ * machine says so next to the result.
+ *
+ * A scenario runs with its customers divided by its scale; its cooks are
+ * never divided, as they are what the scenario is about as much as the
+ * customers.  The scale is 1 for all but the crowd.  Its two tables serve
+ * under two customers a second whatever runs them, so its 100000
+ * customers would take most of a day, and a thousand customers spinning
+ * at the door slow each table turning over enough that one core runs
+ * past the timeout; it runs at 1000, 100 customers, in about a minute.  --scale n runs every scenario at
+ * scale n instead, for a quick run on a small machine.  Budgets of a scale
+ * are kept as scenario.xn.measure and only checked against runs at that
+ * scale.
+ *
+ * usage: java StressSuite [--budgets file] [--record] [--scale n] [--timeout s] [scenario...]
+ */
+public class StressSuite {
+
+    /** Measures every scenario is held to. */
+    static final String[] MEASURES = { "wallMs", "heapMb", "threads" };
+    /** Share a measure may go over its budget when the budgets file gives none. */
+    static final double DEFAULT_TOLERANCE = 0.25;
+
+    /** A fixed configuration of the simulation. */
+    static class Scenario {
+        final String name;
+        final int customers;
+        final int cooks;
+        final int tables;
+        final int capacity;
+        final boolean randomOrders;
+        /** What the customers are divided by unless --scale says otherwise. */
+        final int scale;
+
+        Scenario(String name, int customers, int cooks, int tables, int capacity, boolean randomOrders, int scale) {
+            this.name = name;
+            this.customers = customers;
+            this.cooks = cooks;
+            this.tables = tables;
+            this.capacity = capacity;
+            this.randomOrders = randomOrders;
+            this.scale = scale;
+        }
+    }
+
+    /** The scenarios; customers of all but the last order one of every food. */
+    static final Scenario[] SCENARIOS = {
+            // A huge line of customers for very few tables
+            new Scenario("crowd", 100000, 4, 2, 4, false, 1000),
+            // One cook for every order of the day
+            new Scenario("loneCook", 500, 1, 10, 4, false, 1),
+            // Every machine cooking one item at a time
+            new Scenario("capacityOne", 100, 4, 10, 1, false, 1),
+            // Far more cooks than orders, all polling for them
+            new Scenario("manyCooks", 10, 1000, 10, 4, false, 1),
+            // Random orders of 0 to 3 of each food
+            new Scenario("randomMix", 200, 8, 20, 4, true, 1)
+    };
+
+    /** What a scenario's child JVM measured. */
+    static class Measured {
+        boolean valid;
+        long wallMs;
+        long heapMb;
+        long threads;
+
+        long get(String measure) {
+            switch (measure) {
+                case "wallMs":
+                    return wallMs;
+                case "heapMb":
+                    return heapMb;
+                default:
+                    return threads;
+            }
+        }
+    }
+
+    // The key of a scenario's budget for a measure at a scale
+    static String budgetKey(String scenario, int scale, String measure) {
+        return scenario + (scale == 1 ? "" : ".x" + scale) + "." + measure;
+    }
+
+    // This machine, as budgets recorded on it are noted
+    static String machine() {
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        return String.format("%d cpus, %d MB, %s %s, Java %s", Runtime.getRuntime().availableProcessors(),
+                os.getTotalMemorySize() / (1024 * 1024), System.getProperty("os.name"), System.getProperty("os.arch"),
+                System.getProperty("java.version"));
+    }
+
+    // Runs a scenario in this JVM and prints what it measured as one line
+    private static void runOne(String[] args) {
+        int customers = Integer.parseInt(args[1]);
+        int cooks = Integer.parseInt(args[2]);
+        int tables = Integer.parseInt(args[3]);
+        int capacity = Integer.parseInt(args[4]);
+        boolean randomOrders = Boolean.parseBoolean(args[5]);
+
+        Simulation.setSeed(1);
+        Simulation.QuietRun run = Simulation.runQuietly(Kitchen.standard(capacity), customers, cooks, tables, randomOrders);
+        long heapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        int threads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+        System.out.println("measured " + run.valid + " " + run.wallNs / 1000000 + " " + heapBytes / (1024 * 1024) + " " + threads);
+    }
+
+    // Runs a scenario in a child JVM; null if it failed, timed out, or did not report
+    private static Measured runChild(Scenario scenario, int scale, long timeoutS) throws InterruptedException {
+        String[] fields;
+        try {
+            fields = ChildJvm.run(StressSuite.class, "measured", timeoutS, "--run",
+                    Integer.toString(Math.max(1, scenario.customers / scale)),
+                    Integer.toString(scenario.cooks),
+                    Integer.toString(scenario.tables), Integer.toString(scenario.capacity),
+                    Boolean.toString(scenario.randomOrders));
+        } catch (IOException e) {
+            System.out.println(scenario.name + ": " + e.getMessage());
+            return null;
+        }
+        Measured measured = new Measured();
+        measured.valid = Boolean.parseBoolean(fields[0]);
+        measured.wallMs = Long.parseLong(fields[1]);
+        measured.heapMb = Long.parseLong(fields[2]);
+        measured.threads = Long.parseLong(fields[3]);
+        return measured;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--run")) {
+            runOne(args);
+            return;
+        }
+        String budgetsFile = "stress-budgets.properties";
+        boolean record = false;
+        // Zero runs each scenario at its own scale
+        int scaleAll = 0;
+        long timeoutS = 1800;
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--budgets")) {
+                budgetsFile = args[++i];
+            } else if (args[i].equals("--record")) {
+                record = true;
+            } else if (args[i].equals("--scale")) {
+                scaleAll = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--timeout")) {
+                timeoutS = Long.parseLong(args[++i]);
+            } else {
+                names.add(args[i]);
+            }
+        }
+
+        Properties budgets = new Properties();
+        File file = new File(budgetsFile);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                budgets.load(in);
+            }
+        }
+
+        PrintStream out = System.out;
+        out.println(String.format("%-12s %6s %9s %8s %6s %18s %16s %16s  %s",
+                "scenario", "scale", "customers", "cooks", "valid", "wall ms (budget)", "heap MB (budget)", "threads (budget)", "result"));
+        boolean passed = true;
+        int ran = 0;
+        for (Scenario scenario : SCENARIOS) {
+            if (!names.isEmpty() && !names.contains(scenario.name)) {
+                continue;
+            }
+            ran++;
+            int scale = scaleAll > 0 ? scaleAll : scenario.scale;
+            Measured measured = runChild(scenario, scale, timeoutS);
+            if (measured == null) {
+                out.println(String.format("%-12s %6d %42s  FAIL (no result)", scenario.name, scale, ""));
+                passed = false;
+                continue;
+            }
+            List<String> over = new ArrayList<String>();
+            String recordedOnKey = budgetKey(scenario.name, scale, "recordedOn");
+            String recordedOn = budgets.getProperty(recordedOnKey);
+            if (record) {
+                budgets.setProperty(recordedOnKey, machine());
+            }
+            String[] columns = new String[MEASURES.length];
+            for (int m = 0; m < MEASURES.length; m++) {
+                String key = budgetKey(scenario.name, scale, MEASURES[m]);
+                long value = measured.get(MEASURES[m]);
+                String budget = budgets.getProperty(key);
+                columns[m] = value + " (" + (budget != null ? budget : "-") + ")";
+                if (record) {
+                    budgets.setProperty(key, Long.toString(value));
+                } else if (budget != null) {
+                    double tolerance = Double.parseDouble(budgets.getProperty(scenario.name + ".tolerance." + MEASURES[m],
+                            budgets.getProperty("tolerance." + MEASURES[m], Double.toString(DEFAULT_TOLERANCE))));
+                    if (value > Long.parseLong(budget) * (1 + tolerance)) {
+                        over.add(MEASURES[m]);
+                    }
+                }
+            }
+            String result;
+            if (!measured.valid) {
+                result = "FAIL (invalid)";
+            } else if (!over.isEmpty()) {
+                result = "FAIL (over " + String.join(", ", over) + ")";
+            } else {
+                result = record ? "recorded" : "ok";
+            }
+            passed &= result.equals("ok") || result.equals("recorded");
+            if (!record && recordedOn != null && !recordedOn.equals(machine())) {
+                result += " (budgets recorded on " + recordedOn + ")";
+            }
+            out.println(String.format("%-12s %6d %9d %8d %6s %18s %16s %16s  %s",
+                    scenario.name, scale, Math.max(1, scenario.customers / scale), scenario.cooks,
+                    measured.valid, columns[0], columns[1], columns[2], result));
+        }
+        if (ran == 0) {
+            out.println("No scenario named " + names);
+            System.exit(2);
+        }
+        if (record) {
+            for (String measure : MEASURES) {
+                if (budgets.getProperty("tolerance." + measure) == null) {
+                    budgets.setProperty("tolerance." + measure, Double.toString(DEFAULT_TOLERANCE));
+                }
+            }
+            try (OutputStream stream = new FileOutputStream(file)) {
+                budgets.store(stream, "StressSuite budgets; wall times hold only on a machine like their recordedOn");
+            }
+            out.println("Budgets written to " + budgetsFile);
+        }
+        out.println(passed ? "All scenarios passed" : "Some scenarios failed");
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -0,0 +1,355 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Takeout and delivery orders, a channel of orders besides the customers
+ * at tables.  Takeout orders come in at random at a mean rate, and are
+ * placed straight with the kitchen without waiting for a table, so the
+ * tables no longer cap what the kitchen is asked to make.  A takeout
+ * customer waits for its order and leaves with it, and never cancels.
+ *
+ * Both channels share the cooks and machines.  Each channel queues its
+ * own orders, and a cook claims from them by weighted fair queueing: each
+ * claim moves its channel's virtual time on by one over the channel's
+ * weight, and the channel furthest behind goes next.  With weights 3 to
+ * 1, dine-in gets three claims for every takeout claim while both have
+ * orders waiting, and either gets every claim while the other has none,
+ * without banking claims for later while it is idle.
+ *
+ * Each channel has a latency target, its SLA, on the time from the
+ * customer arriving to receiving the order.  Dine-in latency includes the
+ * wait for a table, which is what off-premise volume costs a customer at
+ * the door.
+ */
+public class Takeout implements Runnable {
+
+    final int orders;
+    final double ordersPerSec;
+    final long slaMs;
+    private int dineInWeight = 1;
+    private int takeoutWeight = 1;
+    private long dineInSlaMs;
+
+    // Takeout orders waiting for a cook, created per run
+    private OrderQueue queue;
+    // Claims take from both channels' queues under the claim lock
+    private final Object claimLock = new Object();
+    final LockProfiler.LockStats claimLockStats = new LockProfiler.LockStats("channels");
+    // Virtual time of each channel, moved on by each claim from it; guarded by the claim lock
+    private double dineInTime;
+    private double takeoutTime;
+
+    private Random rnd;
+    private Customer[] customers;
+    // Threads of the takeout customers started so far
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private Thread sourceThread;
+
+    /**
+     * @param orders takeout orders in a run
+     * @param ordersPerSec mean rate at which they come in
+     * @param slaMs latency target of a takeout order, none if 0
+     */
+    public Takeout(int orders, double ordersPerSec, long slaMs) {
+        if (orders < 1 || !(ordersPerSec > 0) || slaMs < 0) {
+            throw new IllegalArgumentException("Takeout needs orders, a positive rate and a non-negative SLA");
+        }
+        this.orders = orders;
+        this.ordersPerSec = ordersPerSec;
+        this.slaMs = slaMs;
+    }
+
+    /**
+     * Sets the weights of the channels' shares of claims while both have
+     * orders waiting; 1 to 1 unless set.
+     */
+    public Takeout weights(int dineIn, int takeout) {
+        if (dineIn < 1 || takeout < 1) {
+            throw new IllegalArgumentException("Channel weights must be positive");
+        }
+        dineInWeight = dineIn;
+        takeoutWeight = takeout;
+        return this;
+    }
+
+    /**
+     * Sets the latency target of a dine-in order, none if 0, which is
+     * unless set.
+     */
+    public Takeout dineInSla(long slaMsIn) {
+        if (slaMsIn < 0) {
+            throw new IllegalArgumentException("An SLA cannot be negative");
+        }
+        dineInSlaMs = slaMsIn;
+        return this;
+    }
+
+    /**
+     * Starts bringing in the run's takeout customers, each once its time
+     * has come.  Times between orders are drawn from rndIn.
+     */
+    void open(Customer[] customersIn, OrderQueue queueIn, Random rndIn) {
+        customers = customersIn;
+        queue = queueIn;
+        rnd = rndIn;
+        synchronized (claimLock) {
+            dineInTime = takeoutTime = 0;
+        }
+        synchronized (threads) {
+            threads.clear();
+        }
+        sourceThread = new Thread(this, "Takeout");
+        sourceThread.start();
+    }
+
+    /**
+     * Waits for every takeout order to have come in and been picked up.
+     */
+    void close() throws InterruptedException {
+        sourceThread.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    public void run() {
+        long dueNs = System.nanoTime();
+        try {
+            for (Customer customer : customers) {
+                // Orders come in at random, exponentially distributed gaps apart
+                dueNs += (long) (-1e9 / ordersPerSec * Math.log(1 - rnd.nextDouble()));
+                long waitNs = dueNs - System.nanoTime();
+                if (waitNs > 0) {
+                    Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+                }
+                Thread thread = new Thread(customer);
+                synchronized (threads) {
+                    threads.add(thread);
+                }
+                thread.start();
+            }
+        } catch (InterruptedException e) {
+            System.out.println("Takeout thread interrupted.");
+        }
+    }
+
+    OrderQueue queue() {
+        return queue;
+    }
+
+    // Takeout orders waiting for a cook
+    int waiting() {
+        return queue.size();
+    }
+
+    /**
+     * Claims the next order for a cook, from the dine-in queue or the
+     * takeout queue, whichever channel is behind.  Returns -1 if neither
+     * has an order waiting.
+     */
+    int claim(OrderQueue dineIn) {
+        long requested = LockProfiler.request();
+        synchronized (claimLock) {
+            long acquired = claimLockStats.acquired(requested);
+            try {
+                boolean dineInFirst = dineInTime <= takeoutTime;
+                int orderNum = (dineInFirst ? dineIn : queue).poll();
+                boolean fromDineIn = dineInFirst;
+                if (orderNum == -1) {
+                    orderNum = (dineInFirst ? queue : dineIn).poll();
+                    fromDineIn = !dineInFirst;
+                }
+                if (orderNum == -1) {
+                    return -1;
+                }
+                // A channel with nothing waiting catches up, so it never has claims to make up later
+                if (fromDineIn) {
+                    if (queue.isEmpty()) {
+                        takeoutTime = Math.max(takeoutTime, dineInTime);
+                    }
+                    dineInTime += 1.0 / dineInWeight;
+                } else {
+                    if (dineIn.isEmpty()) {
+                        dineInTime = Math.max(dineInTime, takeoutTime);
+                    }
+                    takeoutTime += 1.0 / takeoutWeight;
+                }
+                return orderNum;
+            } finally {
+                claimLockStats.released(acquired);
+            }
+        }
+    }
+
+    /** Latency of a channel's orders over a run. */
+    public static class ChannelStats {
+        public final String channel;
+        public final int orders;
+        public final double meanMs;
+        public final double p50Ms;
+        public final double p95Ms;
+        public final double p99Ms;
+        // From the order being placed to a cook claiming it
+        public final double meanClaimWaitMs;
+        public final long slaMs;
+        // Share of orders received within the SLA, or NaN without one
+        public final double withinSla;
+
+        ChannelStats(String channel, long[] latenciesNs, long claimWaitNs, long slaMs) {
+            this.channel = channel;
+            this.orders = latenciesNs.length;
+            Arrays.sort(latenciesNs);
+            long total = 0;
+            int within = 0;
+            for (long latency : latenciesNs) {
+                total += latency;
+                if (latency <= slaMs * 1000000L) {
+                    within++;
+                }
+            }
+            this.meanMs = orders > 0 ? total / 1e6 / orders : 0;
+            this.p50Ms = percentile(latenciesNs, 0.50);
+            this.p95Ms = percentile(latenciesNs, 0.95);
+            this.p99Ms = percentile(latenciesNs, 0.99);
+            this.meanClaimWaitMs = orders > 0 ? claimWaitNs / 1e6 / orders : 0;
+            this.slaMs = slaMs;
+            this.withinSla = slaMs > 0 && orders > 0 ? (double) within / orders : Double.NaN;
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            return sorted.length > 0 ? sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6 : 0;
+        }
+
+        public String toString() {
+            return String.format("%10s %7d %10.1f %10.1f %10.1f %10.1f %12.1f %8s %8s", channel, orders, meanMs,
+                    p50Ms, p95Ms, p99Ms, meanClaimWaitMs, slaMs > 0 ? slaMs : "-",
+                    Double.isNaN(withinSla) ? "-" : String.format("%.1f%%", 100 * withinSla));
+        }
+    }
+
+    /**
+     * Works out each channel's latency, dine-in first, from the orders
+     * customers received in a run's event log.
+     */
+    ChannelStats[] channelStats(List<SimulationEvent> events) {
+        HashMap<Integer, Long> started = new HashMap<Integer, Long>();
+        HashMap<Integer, Long> placed = new HashMap<Integer, Long>();
+        HashMap<Integer, Long> claimed = new HashMap<Integer, Long>();
+        List<Long>[] latencies = newLists(Customer.Channel.values().length);
+        long[] claimWaits = new long[latencies.length];
+        synchronized (events) {
+            for (SimulationEvent e : events) {
+                switch (e.event) {
+                    case CustomerStarting:
+                        started.put(e.customer.orderNum(), e.timeNs());
+                        break;
+                    case CustomerPlacedOrder:
+                        placed.put(e.orderNumber, e.timeNs());
+                        break;
+                    case CookReceivedOrder:
+                        claimed.put(e.orderNumber, e.timeNs());
+                        break;
+                    case CustomerReceivedOrder: {
+                        int c = e.customer.channel.ordinal();
+                        latencies[c].add(e.timeNs() - started.getOrDefault(e.orderNumber, e.timeNs()));
+                        claimWaits[c] += claimed.getOrDefault(e.orderNumber, 0L) - placed.getOrDefault(e.orderNumber, 0L);
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            }
+        }
+        ChannelStats[] stats = new ChannelStats[latencies.length];
+        for (Customer.Channel channel : Customer.Channel.values()) {
+            int c = channel.ordinal();
+            long[] channelLatencies = new long[latencies[c].size()];
+            for (int i = 0; i < channelLatencies.length; i++) {
+                channelLatencies[i] = latencies[c].get(i);
+            }
+            stats[c] = new ChannelStats(channel == Customer.Channel.dineIn ? "dine-in" : "takeout", channelLatencies,
+                    claimWaits[c], channel == Customer.Channel.dineIn ? dineInSlaMs : slaMs);
+        }
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long>[] newLists(int size) {
+        List<Long>[] lists = (List<Long>[]) new List<?>[size];
+        for (int i = 0; i < size; i++) {
+            lists[i] = new ArrayList<Long>();
+        }
+        return lists;
+    }
+
+    /**
+     * Summarizes each channel's latency over a run.
+     */
+    String summarize(List<SimulationEvent> events) {
+        StringBuilder out = new StringBuilder(String.format(
+                "Channels: %d takeout orders at %.2f/s, claims weighted dine-in %d : takeout %d%n",
+                orders, ordersPerSec, dineInWeight, takeoutWeight));
+        out.append(String.format("%10s %7s %10s %10s %10s %10s %12s %8s %8s%n", "channel", "orders", "mean ms",
+                "p50 ms", "p95 ms", "p99 ms", "to cook ms", "SLA ms", "in SLA"));
+        for (ChannelStats stats : channelStats(events)) {
+            out.append(stats).append(String.format("%n"));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Runs the same dine-in customers, from the same seed, alone and then
+     * with takeout orders coming in at rising rates, under claims weighted
+     * evenly and weighted towards dine-in, and reports each channel's mean
+     * and 95th percentile latency, to show how much off-premise volume
+     * costs the dine-in experience.
+     *
+     * usage: java Takeout [customers] [cooks] [tables] [capacity] [takeout-orders] [takeout-sla-ms] [seed]
+     */
+    public static void main(String[] args) {
+        int numCustomers = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int numCooks = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int numTables = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int takeoutOrders = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        long slaMs = args.length > 5 ? Long.parseLong(args[5]) : 5000;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+
+        double[] rates = { 0, 1, 4 };
+        int[][] weights = { { 1, 1 }, { 3, 1 } };
+        PrintStream out = System.out;
+        out.println(String.format("%d customers, %d cooks, %d tables, machine capacity %d, %d takeout orders, SLA %d ms, seed %d",
+                numCustomers, numCooks, numTables, capacity, takeoutOrders, slaMs, seed));
+        out.println(String.format("%8s %8s %14s %14s %14s %14s %8s %6s", "orders/s", "weights",
+                "dine-in ms", "dine-in p95", "takeout ms", "takeout p95", "in SLA", "valid"));
+        try {
+            for (double rate : rates) {
+                for (int[] weight : weights) {
+                    if (rate == 0 && weight != weights[0]) {
+                        continue;
+                    }
+                    Takeout takeout = rate == 0 ? null : new Takeout(takeoutOrders, rate, slaMs).weights(weight[0], weight[1]);
+                    Simulation.setTakeout(takeout);
+                    Simulation.setSeed(seed);
+                    Simulation.QuietRun run = Simulation.runQuietly(Kitchen.standard(capacity), numCustomers, numCooks, numTables, true);
+                    ChannelStats[] stats = (takeout != null ? takeout : new Takeout(1, 1, slaMs)).channelStats(run.events);
+                    ChannelStats dineIn = stats[Customer.Channel.dineIn.ordinal()];
+                    ChannelStats off = stats[Customer.Channel.takeout.ordinal()];
+                    out.println(String.format("%8.1f %8s %14.1f %14.1f %14s %14s %8s %6s", rate,
+                            takeout == null ? "-" : weight[0] + ":" + weight[1], dineIn.meanMs, dineIn.p95Ms,
+                            takeout == null ? "-" : String.format("%.1f", off.meanMs),
+                            takeout == null ? "-" : String.format("%.1f", off.p95Ms),
+                            takeout == null ? "-" : String.format("%.1f%%", 100 * off.withinSla), run.valid));
+                }
+            }
+        } finally {
+            Simulation.setTakeout(null);
+        }
+    }
+}
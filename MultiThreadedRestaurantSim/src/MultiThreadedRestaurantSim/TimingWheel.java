@@ -0,0 +1,150 @@
+package MultiThreadedRestaurantSim;
+
+/**
+ * A hashed timing wheel: a ring of slots, each holding a doubly linked list
+ * of the timeouts due when the wheel's hand reaches it.  A timeout further
+ * away than one turn of the wheel waits for as many extra turns as needed.
+ *
+ * Scheduling and cancelling a timeout are O(1), so many thousands of
+ * timers cost no more each than a few.  A single thread advances the hand
+ * once per tick and runs the tasks of the timeouts that are due, so tasks
+ * must be short.  Timeouts fire up to one tick late, never early.
+ */
+public class TimingWheel implements Runnable {
+
+    /**
+     * A scheduled task.  Belongs to at most one slot's list.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private long remainingTurns;
+        private int slot = -1;
+        private Timeout prev, next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    private final long tickMs;
+    private final Timeout[] slots;
+    private final int mask;
+    private long tick = 0;
+    private Thread thread;
+
+    /**
+     * @param tickMs resolution of the wheel
+     * @param wheelSize slots in the wheel; rounded up to a power of two
+     */
+    public TimingWheel(long tickMs, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMs = tickMs;
+        this.slots = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs the task once delayMs has passed, unless cancelled first.
+     */
+    public synchronized Timeout schedule(long delayMs, Runnable task) {
+        Timeout timeout = new Timeout(task);
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        long due = tick + ticks;
+        timeout.remainingTurns = (ticks - 1) / slots.length;
+        link((int) (due & mask), timeout);
+        return timeout;
+    }
+
+    /**
+     * Cancels a timeout.  Returns false if it already fired or was cancelled.
+     */
+    public synchronized boolean cancel(Timeout timeout) {
+        if (timeout == null || timeout.slot < 0) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    private void link(int slot, Timeout timeout) {
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].prev = timeout;
+        }
+        slots[slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.slot = -1;
+        timeout.prev = timeout.next = null;
+    }
+
+    // Advances the hand one tick, returning the timeouts now due as a linked list
+    private synchronized Timeout advance() {
+        tick++;
+        int slot = (int) (tick & mask);
+        Timeout due = null;
+        Timeout timeout = slots[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingTurns > 0) {
+                timeout.remainingTurns--;
+            } else {
+                unlink(timeout);
+                timeout.next = due;
+                due = timeout;
+            }
+            timeout = next;
+        }
+        return due;
+    }
+
+    /**
+     * Starts the wheel's thread.
+     */
+    public void start() {
+        thread = new Thread(this, "Timing wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the wheel's thread.  Pending timeouts never fire.
+     */
+    public void stop() throws InterruptedException {
+        thread.interrupt();
+        thread.join();
+    }
+
+    public void run() {
+        long next = System.nanoTime();
+        try {
+            while (!Thread.interrupted()) {
+                next += tickMs * 1000000;
+                long sleepNs = next - System.nanoTime();
+                if (sleepNs > 0) {
+                    Thread.sleep(sleepNs / 1000000, (int) (sleepNs % 1000000));
+                }
+                // Tasks run outside the wheel's lock, so they may schedule or cancel
+                for (Timeout timeout = advance(); timeout != null; ) {
+                    Timeout following = timeout.next;
+                    timeout.next = null;
+                    timeout.task.run();
+                    timeout = following;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+}
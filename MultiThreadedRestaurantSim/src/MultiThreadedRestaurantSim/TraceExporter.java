@@ -0,0 +1,332 @@
+package MultiThreadedRestaurantSim;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Writes an event log as Trace Event Format JSON, which chrome://tracing
+ * and Perfetto open as a timeline.
+ *
+ * Every cook, every slot of every machine and every table is a track.
+ * Spans show each item on a machine slot (MachineStartingFood to
+ * MachineDoneFood, or to MachineLostFood) and each customer at a table
+ * (CustomerEnteredRestaurant to CustomerLeavingRestaurant).  A cook with
+ * room for several orders finishes them in any order, so each order it
+ * works (CookReceivedOrder to CookCompletedOrder) is an async span with
+ * the order number as its id, shown under the cook's track.  Counter
+ * tracks show the order queue depth, the items cooking on each machine,
+ * the slots a faulted machine has up, and the customers seated.
+ *
+ * Trace events are written as the log is read, and the exporter only keeps
+ * state for what is in progress (seated customers, items cooking), so its
+ * memory does not grow with the length of the log.
+ */
+public class TraceExporter {
+
+    // Process ids of the timeline's groups of tracks
+    private static final int COOKS = 1;
+    private static final int MACHINES = 2;
+    private static final int TABLES = 3;
+    // Machine slot tracks are numbered machine id * SLOT_TRACKS + slot
+    private static final int SLOT_TRACKS = 10000;
+
+    private final Writer out;
+    private boolean first = true;
+    private final HashSet<Long> namedTracks = new HashSet<Long>();
+
+    // Free slots of each machine, lowest first, and the slots in use by (order, food)
+    private final List<boolean[]> slotsInUse = new ArrayList<boolean[]>();
+    private final List<Integer> itemsCooking = new ArrayList<Integer>();
+    private final HashMap<Long, ArrayDeque<Integer>> itemSlots = new HashMap<Long, ArrayDeque<Integer>>();
+    // Tables in use, and the table of each seated customer
+    private boolean[] tablesInUse = new boolean[0];
+    private final HashMap<Customer, Integer> customerTables = new HashMap<Customer, Integer>();
+    private int seated = 0;
+    private int queueDepth = 0;
+
+    private TraceExporter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the events as a trace to the given file.
+     */
+    public static void export(Iterable<SimulationEvent> events, String path) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+            export(events, out);
+        }
+    }
+
+    /**
+     * Writes the events as a trace.  The writer is not closed.
+     */
+    public static void export(Iterable<SimulationEvent> events, Writer out) throws IOException {
+        TraceExporter exporter = new TraceExporter(out);
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        exporter.metadata(COOKS, -1, "process_name", "Cooks");
+        exporter.metadata(MACHINES, -1, "process_name", "Machines");
+        exporter.metadata(TABLES, -1, "process_name", "Tables");
+        for (SimulationEvent e : events) {
+            exporter.write(e);
+        }
+        out.write("\n]}\n");
+        out.flush();
+    }
+
+    private void write(SimulationEvent e) throws IOException {
+        switch (e.event) {
+            case CustomerPlacedOrder:
+                counter(COOKS, e, "order queue", "orders", ++queueDepth);
+                break;
+
+            case CustomerCancelledOrder:
+                counter(COOKS, e, "order queue", "orders", --queueDepth);
+                break;
+
+            case CookReceivedOrder:
+                counter(COOKS, e, "order queue", "orders", --queueDepth);
+                track(COOKS, e.cook.id, e.cook.toString());
+                orderSpan("b", e);
+                break;
+
+            case CookCompletedOrder:
+                orderSpan("e", e);
+                break;
+
+            case MachineStarting: {
+                while (slotsInUse.size() <= e.machine.id) {
+                    slotsInUse.add(new boolean[0]);
+                    itemsCooking.add(0);
+                }
+                slotsInUse.set(e.machine.id, new boolean[e.simParams[0]]);
+                break;
+            }
+
+            case MachineStartingFood: {
+                int slot = takeSlot(e.machine.id);
+                Long key = itemKey(e);
+                ArrayDeque<Integer> slots = itemSlots.get(key);
+                if (slots == null) {
+                    slots = new ArrayDeque<Integer>(2);
+                    itemSlots.put(key, slots);
+                }
+                slots.add(slot);
+
+                int tid = e.machine.id * SLOT_TRACKS + slot;
+                track(MACHINES, tid, e.machine + " slot " + slot);
+                span("B", MACHINES, tid, e, e.food + (e.orderNumber > 0 ? " for order " + e.orderNumber : " for holding"));
+                itemsCooking.set(e.machine.id, itemsCooking.get(e.machine.id) + 1);
+                counter(MACHINES, e, e.machine + " cooking", "items", itemsCooking.get(e.machine.id));
+                break;
+            }
+
+            case MachineDoneFood:
+            case MachineLostFood: {
+                Long key = itemKey(e);
+                ArrayDeque<Integer> slots = itemSlots.get(key);
+                if (slots == null) {
+                    break;
+                }
+                // A fault loses the latest item started
+                int slot = e.event == SimulationEvent.EventType.MachineLostFood ? slots.pollLast() : slots.poll();
+                if (slots.isEmpty()) {
+                    itemSlots.remove(key);
+                }
+                slotsInUse.get(e.machine.id)[slot] = false;
+
+                span("E", MACHINES, e.machine.id * SLOT_TRACKS + slot, e, null);
+                itemsCooking.set(e.machine.id, itemsCooking.get(e.machine.id) - 1);
+                counter(MACHINES, e, e.machine + " cooking", "items", itemsCooking.get(e.machine.id));
+                break;
+            }
+
+            case MachineFault:
+            case MachineRecovered:
+                counter(MACHINES, e, e.machine + " slots up", "slots", e.simParams[0]);
+                break;
+
+            case CustomerEnteredRestaurant: {
+                // Seated parties carry their table; otherwise take the lowest free one
+                int table = e.simParams != null ? takeTable(e.simParams[1]) : takeTable();
+                customerTables.put(e.customer, table);
+                track(TABLES, table, "Table " + table);
+                span("B", TABLES, table, e, e.customer.toString());
+                counter(TABLES, e, "seated", "customers", ++seated);
+                break;
+            }
+
+            case CustomerLeavingRestaurant: {
+                Integer table = customerTables.remove(e.customer);
+                if (table == null) {
+                    break;
+                }
+                tablesInUse[table] = false;
+                span("E", TABLES, table, e, null);
+                counter(TABLES, e, "seated", "customers", --seated);
+                break;
+            }
+
+            default:
+                break;
+        }
+    }
+
+    // Identifies a step of an item of an order on one machine; a station's machines each keep their own
+    private static Long itemKey(SimulationEvent e) {
+        return ((long) e.orderNumber << 32) | ((long) e.machine.id << 20) | ((long) e.food.id << 8)
+                | (e.step != null ? e.step.index : 0);
+    }
+
+    // Lowest free slot of a machine, growing the machine if its capacity is exceeded
+    private int takeSlot(int machineId) {
+        boolean[] slots = slotsInUse.get(machineId);
+        for (int i = 0; i < slots.length; i++) {
+            if (!slots[i]) {
+                slots[i] = true;
+                return i;
+            }
+        }
+        boolean[] grown = Arrays.copyOf(slots, slots.length + 1);
+        grown[slots.length] = true;
+        slotsInUse.set(machineId, grown);
+        return slots.length;
+    }
+
+    private int takeTable(int table) {
+        if (table >= tablesInUse.length) {
+            tablesInUse = Arrays.copyOf(tablesInUse, Math.max(table + 1, 2 * tablesInUse.length));
+        }
+        tablesInUse[table] = true;
+        return table;
+    }
+
+    private int takeTable() {
+        for (int i = 0; i < tablesInUse.length; i++) {
+            if (!tablesInUse[i]) {
+                tablesInUse[i] = true;
+                return i;
+            }
+        }
+        int table = tablesInUse.length;
+        tablesInUse = Arrays.copyOf(tablesInUse, Math.max(4, 2 * table));
+        tablesInUse[table] = true;
+        return table;
+    }
+
+    // Names a track the first time it is used
+    private void track(int pid, int tid, String name) throws IOException {
+        if (namedTracks.add(((long) pid << 32) | tid)) {
+            metadata(pid, tid, "thread_name", name);
+        }
+    }
+
+    private void metadata(int pid, int tid, String kind, String name) throws IOException {
+        begin();
+        out.write("{\"ph\":\"M\",\"name\":\"");
+        out.write(kind);
+        out.write("\",\"pid\":");
+        out.write(Integer.toString(pid));
+        if (tid >= 0) {
+            out.write(",\"tid\":");
+            out.write(Integer.toString(tid));
+        }
+        out.write(",\"args\":{\"name\":");
+        string(name);
+        out.write("}}");
+    }
+
+    private void span(String phase, int pid, int tid, SimulationEvent e, String name) throws IOException {
+        begin();
+        out.write("{\"ph\":\"");
+        out.write(phase);
+        out.write("\",");
+        if (name != null) {
+            out.write("\"name\":");
+            string(name);
+            out.write(",");
+        }
+        out.write("\"pid\":");
+        out.write(Integer.toString(pid));
+        out.write(",\"tid\":");
+        out.write(Integer.toString(tid));
+        out.write(",\"ts\":");
+        timestamp(e);
+        out.write(",\"args\":{\"thread\":");
+        out.write(Long.toString(e.threadId()));
+        out.write("}}");
+    }
+
+    // An async span of a cook's order, begun and ended by the order's number
+    private void orderSpan(String phase, SimulationEvent e) throws IOException {
+        begin();
+        out.write("{\"ph\":\"");
+        out.write(phase);
+        out.write("\",\"cat\":\"order\",\"name\":");
+        string("order " + e.orderNumber);
+        out.write(",\"id\":");
+        out.write(Integer.toString(e.orderNumber));
+        out.write(",\"pid\":");
+        out.write(Integer.toString(COOKS));
+        out.write(",\"tid\":");
+        out.write(Integer.toString(e.cook.id));
+        out.write(",\"ts\":");
+        timestamp(e);
+        out.write(",\"args\":{\"thread\":");
+        out.write(Long.toString(e.threadId()));
+        out.write("}}");
+    }
+
+    private void counter(int pid, SimulationEvent e, String name, String series, int value) throws IOException {
+        begin();
+        out.write("{\"ph\":\"C\",\"name\":");
+        string(name);
+        out.write(",\"pid\":");
+        out.write(Integer.toString(pid));
+        out.write(",\"ts\":");
+        timestamp(e);
+        out.write(",\"args\":{");
+        string(series);
+        out.write(":");
+        out.write(Integer.toString(value));
+        out.write("}}");
+    }
+
+    // Microseconds with nanosecond precision, as the format expects
+    private void timestamp(SimulationEvent e) throws IOException {
+        long ns = e.timeNs();
+        out.write(Long.toString(ns / 1000));
+        out.write(".");
+        out.write(Long.toString(1000 + ns % 1000).substring(1));
+    }
+
+    private void string(String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private void begin() throws IOException {
+        if (!first) {
+            out.write(",\n");
+        }
+        first = false;
+    }
+}